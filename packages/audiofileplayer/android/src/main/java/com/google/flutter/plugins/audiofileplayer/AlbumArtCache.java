@@ -0,0 +1,102 @@
+package com.google.flutter.plugins.audiofileplayer;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Decodes album art for the media session and notification, keeping recently decoded bitmaps.
+ *
+ * <p>Art is downsampled as it is decoded, to no less than {@link #MAX_ART_SIZE_PX} on its shorter
+ * edge, which covers the notification's large icon and the lock screen. Switching between tracks
+ * sends the same art over and over, so bitmaps are kept in an LRU cache keyed by a hash of the
+ * encoded bytes, and evicted once their total size exceeds {@link #MAX_SIZE_BYTES}.
+ *
+ * <p>Hashing and decoding run on a background thread. Methods must be called on the main thread,
+ * and callbacks are run on it.
+ */
+final class AlbumArtCache {
+  private static final String TAG = AlbumArtCache.class.getSimpleName();
+  private static final int MAX_ART_SIZE_PX = 512;
+  private static final int MAX_SIZE_BYTES = 8 * 1024 * 1024;
+
+  /** Receives a decoded bitmap, or null if the art could not be decoded. */
+  interface Callback {
+    void onArt(Bitmap bitmap);
+  }
+
+  private final ExecutorService executor = Executors.newSingleThreadExecutor();
+  private final Handler handler = new Handler(Looper.getMainLooper());
+  private final LruCache<String, Bitmap> bitmaps =
+      new LruCache<String, Bitmap>(MAX_SIZE_BYTES) {
+        @Override
+        protected int sizeOf(String key, Bitmap bitmap) {
+          return bitmap.getByteCount();
+        }
+      };
+
+  /** Decodes art, or takes it from the cache, and passes it to {@code callback}. */
+  void get(byte[] artBytes, Callback callback) {
+    executor.execute(
+        () -> {
+          String key = hash(artBytes);
+          Bitmap bitmap = bitmaps.get(key);
+          if (bitmap == null) {
+            bitmap = decode(artBytes);
+            if (bitmap != null) {
+              bitmaps.put(key, bitmap);
+            } else {
+              Log.w(TAG, "Could not decode album art of " + artBytes.length + " bytes.");
+            }
+          }
+          Bitmap result = bitmap;
+          handler.post(() -> callback.onArt(result));
+        });
+  }
+
+  /** Stops decoding, and empties the cache. Art being decoded may still be called back. */
+  void shutdown() {
+    executor.shutdownNow();
+    bitmaps.evictAll();
+  }
+
+  private static Bitmap decode(byte[] artBytes) {
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inJustDecodeBounds = true;
+    BitmapFactory.decodeByteArray(artBytes, 0, artBytes.length, options);
+    if (options.outWidth <= 0 || options.outHeight <= 0) {
+      return null;
+    }
+    // Halve the size while both edges stay at least the maximum, as inSampleSize is a power of 2.
+    int sampleSize = 1;
+    while (options.outWidth / (sampleSize * 2) >= MAX_ART_SIZE_PX
+        && options.outHeight / (sampleSize * 2) >= MAX_ART_SIZE_PX) {
+      sampleSize *= 2;
+    }
+    options.inJustDecodeBounds = false;
+    options.inSampleSize = sampleSize;
+    return BitmapFactory.decodeByteArray(artBytes, 0, artBytes.length, options);
+  }
+
+  private static String hash(byte[] artBytes) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      byte[] hash = digest.digest(artBytes);
+      StringBuilder key = new StringBuilder();
+      for (byte b : hash) {
+        key.append(String.format("%02x", b));
+      }
+      return key.toString();
+    } catch (NoSuchAlgorithmException e) {
+      // SHA-1 is always available on Android.
+      throw new IllegalStateException(e);
+    }
+  }
+}
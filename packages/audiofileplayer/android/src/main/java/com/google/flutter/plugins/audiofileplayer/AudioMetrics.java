@@ -0,0 +1,101 @@
+package com.google.flutter.plugins.audiofileplayer;
+
+import android.os.SystemClock;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Counters and latency histograms of the plugin's hot paths, for reporting to Dart.
+ *
+ * <p>Latencies are kept in fixed, roughly logarithmic buckets, so that recording one costs a few
+ * comparisons and no allocation, and percentiles are reported as the upper bound of the bucket
+ * they fall in. Gauges, such as the number of live players, are read when a snapshot is taken.
+ *
+ * <p>All methods must be called on the main thread.
+ */
+final class AudioMetrics {
+  // Upper bounds of the latency buckets, in milliseconds. A last bucket holds longer latencies.
+  private static final long[] BUCKET_BOUNDS_MS = {
+    1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000
+  };
+
+  /** A histogram of the latencies of one operation. */
+  private static final class Latency {
+    final long[] bucketCounts = new long[BUCKET_BOUNDS_MS.length + 1];
+    long count;
+    long totalMs;
+    long maxMs;
+
+    void record(long ms) {
+      int bucket = 0;
+      while (bucket < BUCKET_BOUNDS_MS.length && ms > BUCKET_BOUNDS_MS[bucket]) {
+        bucket++;
+      }
+      bucketCounts[bucket]++;
+      count++;
+      totalMs += ms;
+      maxMs = Math.max(maxMs, ms);
+    }
+
+    // The upper bound of the bucket holding the given fraction of latencies, or the maximum.
+    long percentileMs(double fraction) {
+      long rank = (long) Math.ceil(count * fraction);
+      long seen = 0;
+      for (int bucket = 0; bucket < BUCKET_BOUNDS_MS.length; bucket++) {
+        seen += bucketCounts[bucket];
+        if (seen >= rank) {
+          return Math.min(BUCKET_BOUNDS_MS[bucket], maxMs);
+        }
+      }
+      return maxMs;
+    }
+
+    Map<String, Object> toMap() {
+      Map<String, Object> map = new HashMap<>();
+      map.put("count", count);
+      map.put("totalMs", totalMs);
+      map.put("maxMs", maxMs);
+      map.put("p50Ms", percentileMs(0.5));
+      map.put("p90Ms", percentileMs(0.9));
+      map.put("p99Ms", percentileMs(0.99));
+      return map;
+    }
+  }
+
+  private final long startMs = SystemClock.elapsedRealtime();
+  private final Map<String, Long> counters = new HashMap<>();
+  private final Map<String, Latency> latencies = new HashMap<>();
+
+  /** Adds one to a counter. */
+  void increment(String counter) {
+    Long value = counters.get(counter);
+    counters.put(counter, value == null ? 1 : value + 1);
+  }
+
+  /** Records the latency of an operation which started at {@code startMs}, per elapsedRealtime. */
+  void recordLatencySince(String operation, long startMs) {
+    Latency latency = latencies.get(operation);
+    if (latency == null) {
+      latency = new Latency();
+      latencies.put(operation, latency);
+    }
+    latency.record(Math.max(0, SystemClock.elapsedRealtime() - startMs));
+  }
+
+  /**
+   * Returns a snapshot of the metrics, holding the time since they started being recorded, the
+   * counters, a histogram summary per operation, and the given gauges.
+   */
+  Map<String, Object> getSnapshot(Map<String, Object> gauges) {
+    Map<String, Object> latencyMaps = new HashMap<>();
+    for (Map.Entry<String, Latency> entry : latencies.entrySet()) {
+      latencyMaps.put(entry.getKey(), entry.getValue().toMap());
+    }
+    Map<String, Object> snapshot = new HashMap<>();
+    snapshot.put("elapsedMs", SystemClock.elapsedRealtime() - startMs);
+    snapshot.put("counters", new HashMap<>(counters));
+    snapshot.put("latencies", latencyMaps);
+    snapshot.put("gauges", gauges);
+    return snapshot;
+  }
+}
@@ -9,10 +9,15 @@ import android.content.Intent;
 import android.content.res.AssetFileDescriptor;
 import android.content.res.AssetManager;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.media.AudioManager;
+import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.RemoteException;
+import android.os.SystemClock;
+import android.os.Trace;
 import android.support.v4.media.MediaBrowserCompat;
 import android.support.v4.media.MediaMetadataCompat;
 import android.support.v4.media.session.MediaControllerCompat;
@@ -28,12 +33,18 @@ import io.flutter.embedding.engine.loader.FlutterLoader;
 import io.flutter.embedding.engine.plugins.FlutterPlugin;
 import io.flutter.embedding.engine.plugins.activity.ActivityAware;
 import io.flutter.embedding.engine.plugins.activity.ActivityPluginBinding;
+import io.flutter.plugin.common.BasicMessageChannel;
+import io.flutter.plugin.common.BinaryCodec;
 import io.flutter.plugin.common.BinaryMessenger;
 import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
 import io.flutter.plugin.common.MethodChannel.MethodCallHandler;
 import io.flutter.plugin.common.MethodChannel.Result;
+import java.io.File;
 import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -43,9 +54,8 @@ import java.util.Map;
 /**
  * Flutter audio file player plugin.
  *
- * <p>Receives messages which a) create, trigger, and destroy instances of {@link
- * ManagedMediaPlayer}, or b) communicate with the OS to control and respond to background audio
- * interaction.
+ * <p>Receives messages which a) create, trigger, and destroy instances of {@link ManagedPlayer},
+ * or b) communicate with the OS to control and respond to background audio interaction.
  */
 public class AudiofileplayerPlugin
     implements MethodCallHandler,
@@ -61,9 +71,17 @@ public class AudiofileplayerPlugin
   private static final String ABSOLUTE_PATH = "absolutePath";
   private static final String AUDIO_BYTES = "audioBytes";
   private static final String REMOTE_URL = "remoteUrl";
+  private static final String STREAMED = "streamed";
+  private static final String APPEND_BYTES_METHOD = "appendBytes";
+  private static final String END_BYTES_METHOD = "endBytes";
   private static final String AUDIO_ID = "audioId";
   private static final String LOOPING = "looping";
   private static final String PLAY_IN_BACKGROUND = "playInBackground";
+  private static final String LOW_LATENCY = "lowLatency";
+  private static final String LOAD_BATCH_METHOD = "loadBatch";
+  private static final String LOAD_SPECS = "loadSpecs";
+  private static final String LOAD_SUCCESS = "success";
+  private static final String LOAD_ERROR_MESSAGE = "errorMessage";
   private static final String RELEASE_METHOD = "release";
   private static final String PLAY_METHOD = "play";
   private static final String PLAY_FROM_START = "playFromStart";
@@ -75,10 +93,71 @@ public class AudiofileplayerPlugin
   private static final String ON_COMPLETE_CALLBACK = "onComplete";
   private static final String ON_DURATION_CALLBACK = "onDuration";
   private static final String DURATION_SECONDS = "duration_seconds";
-  private static final String ON_POSITION_CALLBACK = "onPosition";
   private static final String POSITION_SECONDS = "position_seconds";
+  private static final String ON_POSITIONS_CALLBACK = "onPositions";
+  private static final String POSITIONS = "positions";
+  private static final String POSITION_INTERVAL_SECONDS = "positionIntervalSeconds";
   private static final String STOP_BACKGROUND_DISPLAY_METHOD = "stopBackgroundDisplay";
   private static final String ERROR_CODE = "AudioPluginError";
+  private static final String PLAYER_HANDLE = "playerHandle";
+
+  // Constants for the binary channel, which carries the hot playback commands and position events
+  // in a fixed little-endian layout, with players referred to by their integer handle.
+  //
+  // A command is 16 bytes: the command byte, a flag byte, 2 bytes of padding, the int32 player
+  // handle, and a float64 value, NaN if absent. The reply is empty on success, or else a UTF-8
+  // error message.
+  //
+  // A positions event is the event byte, 3 bytes of padding, an int32 count, then count float64
+  // positions in seconds, then the count int32 handles of their players.
+  private static final String BINARY_CHANNEL = "audiofileplayer/binary";
+  // Plays; the flag is playFromStart, and the value is the endpoint in seconds.
+  private static final byte PLAY_COMMAND = 1;
+  private static final byte PAUSE_COMMAND = 2;
+  // Seeks to the value, in seconds; replies once the seek is complete.
+  private static final byte SEEK_COMMAND = 3;
+  private static final byte SET_VOLUME_COMMAND = 4;
+  // Sets the playback state of the media session, with no player; the flag is isPlaying, and the
+  // value is the position in seconds.
+  private static final byte SET_PLAYBACK_STATE_COMMAND = 5;
+  private static final byte ON_POSITIONS_EVENT = 1;
+
+  // Constants for configuring and inspecting the MediaPlayer pool from Dart.
+  private static final String SET_PLAYER_POOL_OPTIONS_METHOD = "setPlayerPoolOptions";
+  private static final String PLAYER_POOL_MAX_SIZE = "playerPoolMaxSize";
+  private static final String PLAYER_POOL_IDLE_TIMEOUT_SECONDS = "playerPoolIdleTimeoutSeconds";
+  private static final String GET_PLAYER_POOL_STATS_METHOD = "getPlayerPoolStats";
+
+  // Constants for configuring automatic selection of SoundPool playback.
+  private static final String SET_LOW_LATENCY_THRESHOLD_METHOD = "setLowLatencyThreshold";
+  private static final String LOW_LATENCY_THRESHOLD_BYTES = "lowLatencyThresholdBytes";
+
+  // Constants for the gapless playback queue.
+  private static final String QUEUE_INSERT_METHOD = "queueInsert";
+  private static final String QUEUE_REMOVE_METHOD = "queueRemove";
+  private static final String QUEUE_SKIP_METHOD = "queueSkip";
+  private static final String QUEUE_CLEAR_METHOD = "queueClear";
+  private static final String QUEUE_AUDIO_IDS = "queueAudioIds";
+  private static final String QUEUE_INDEX = "queueIndex";
+  private static final String QUEUE_OFFSET = "queueOffset";
+  private static final String ON_QUEUE_ADVANCE_CALLBACK = "onQueueAdvance";
+  private static final String QUEUE_STOPPED_AUDIO_ID = "queueStoppedAudioId";
+  private static final String QUEUE_PLAYING = "queuePlaying";
+
+  // Constants for the remote audio cache.
+  private static final String SET_REMOTE_CACHE_OPTIONS_METHOD = "setRemoteCacheOptions";
+  private static final String REMOTE_CACHE_MAX_SIZE_BYTES = "remoteCacheMaxSizeBytes";
+  private static final String GET_REMOTE_CACHE_STATS_METHOD = "getRemoteCacheStats";
+  private static final String PREFETCH_METHOD = "prefetch";
+  private static final String PREFETCH_URLS = "prefetchUrls";
+  private static final String PREFETCH_PRIORITY = "prefetchPriority";
+  private static final String CANCEL_PREFETCH_METHOD = "cancelPrefetch";
+
+  // Constants for reporting metrics to Dart.
+  private static final String GET_METRICS_METHOD = "getMetrics";
+  private static final String SET_METRICS_PUSH_INTERVAL_METHOD = "setMetricsPushInterval";
+  private static final String METRICS_PUSH_INTERVAL_SECONDS = "metricsPushIntervalSeconds";
+  private static final String ON_METRICS_CALLBACK = "onMetrics";
 
   // Constants for updating playback state from Dart.
   private static final String SET_PLAYBACK_STATE_METHOD = "setPlaybackState";
@@ -118,12 +197,38 @@ public class AudiofileplayerPlugin
   private static final String MEDIA_CUSTOM_EVENT_ID = "customEventId";
   private static final String MEDIA_CUSTOM_DRAWABLE_RESOURCE = "customDrawableResource";
 
+  // Prefix of the names of trace sections.
+  static final String TRACE_SECTION_PREFIX = "audiofileplayer.";
+  private static final String BINARY_COMMAND_TRACE_SECTION =
+      TRACE_SECTION_PREFIX + "binaryCommand";
+
   // Used when defining an Intent from a custom media button.
   public static final String CUSTOM_MEDIA_BUTTON_EXTRA_KEY = "customMediaButton";
 
   private Activity activity;
-  private Map<String, ManagedMediaPlayer> mediaPlayers;
+  private Map<String, ManagedPlayer> mediaPlayers;
+  // The players which have handles, keyed by handle.
+  private Map<Integer, ManagedPlayer> playersByHandle;
+  // Data sources of streamed players which are still receiving bytes, keyed by audioId.
+  private Map<String, StreamingMediaDataSource> streamingDataSources;
+  private MediaPlayerPool playerPool;
+  private SharedSoundPool sharedSoundPool;
+  private PositionTicker positionTicker;
+  private RemoteAudioCache remoteAudioCache;
+  private PlaybackQueue playbackQueue;
+  // Kept for the plugin's lifetime, as callbacks of players may record metrics after detaching.
+  private final AudioMetrics metrics = new AudioMetrics();
+  private AlbumArtCache albumArtCache;
+  // Incremented by each setMetadata call, so that art decoded for an earlier call is dropped.
+  private int metadataGeneration;
+  private final Handler handler = new Handler(Looper.getMainLooper());
+  // Zero if metrics are not pushed to Dart.
+  private long metricsPushIntervalMs;
+  // Local clips smaller than this many bytes are played via SoundPool, unless the load call
+  // specifies otherwise. Zero disables automatic selection.
+  private long lowLatencyThresholdBytes = 0;
   private MethodChannel methodChannel;
+  private BasicMessageChannel<ByteBuffer> binaryChannel;
   private Context context;
 
   private MediaBrowserCompat mediaBrowser;
@@ -134,11 +239,22 @@ public class AudiofileplayerPlugin
     activity.getApplication().registerActivityLifecycleCallbacks(callbacks);
   }
 
-  private void initInstance(BinaryMessenger messenger, Context context) {
+  // Package-private for the tests and benchmarks, which attach the plugin to a fake messenger.
+  void initInstance(BinaryMessenger messenger, Context context) {
     this.context = context;
     methodChannel = new MethodChannel(messenger, CHANNEL);
     methodChannel.setMethodCallHandler(this);
+    binaryChannel = new BasicMessageChannel<>(messenger, BINARY_CHANNEL, BinaryCodec.INSTANCE);
+    binaryChannel.setMessageHandler(this::onBinaryMessage);
     mediaPlayers = new HashMap<>();
+    playersByHandle = new HashMap<>();
+    streamingDataSources = new HashMap<>();
+    playerPool = new MediaPlayerPool();
+    sharedSoundPool = new SharedSoundPool();
+    positionTicker = new PositionTicker(this);
+    remoteAudioCache = new RemoteAudioCache(context.getCacheDir());
+    playbackQueue = new PlaybackQueue(this::handleQueueAdvance);
+    albumArtCache = new AlbumArtCache();
     Context activeContext = activity != null ? activity : context;
     mediaBrowser =
         new MediaBrowserCompat(
@@ -157,9 +273,26 @@ public class AudiofileplayerPlugin
   public void onDetachedFromEngine(@NonNull FlutterPluginBinding binding) {
     methodChannel.setMethodCallHandler(null);
     methodChannel = null;
+    binaryChannel.setMessageHandler(null);
+    binaryChannel = null;
     mediaBrowser = null;
-    mediaPlayers.clear();
+    // Players which are still loading are released once they have prepared, and their load
+    // callbacks then find the plugin detached.
+    onDestroy();
     mediaPlayers = null;
+    playersByHandle = null;
+    streamingDataSources = null;
+    playerPool = null;
+    sharedSoundPool = null;
+    positionTicker = null;
+    remoteAudioCache.shutdown();
+    remoteAudioCache = null;
+    playbackQueue = null;
+    handler.removeCallbacks(pushMetricsRunnable);
+    metricsPushIntervalMs = 0;
+    albumArtCache.shutdown();
+    albumArtCache = null;
+    metadataGeneration++;
     context = null;
   }
 
@@ -194,9 +327,40 @@ public class AudiofileplayerPlugin
 
   @Override
   public void onMethodCall(MethodCall call, Result result) {
+    // Each call is traced, so that the cost of its dispatch and synchronous work (e.g. creating a
+    // player on load, decoding album art) shows in systrace and Perfetto captures.
+    beginTraceSection(TRACE_SECTION_PREFIX + call.method);
+    try {
+      handleMethodCall(call, result);
+    } finally {
+      endTraceSection();
+    }
+  }
+
+  private void handleMethodCall(MethodCall call, Result result) {
     Log.i(TAG, "onMethodCall: method = " + call.method);
+    metrics.increment("messagesReceived");
     if (call.method.equals(LOAD_METHOD)) {
-      onLoad(call, result);
+      onLoad(call, result, true);
+      return;
+    } else if (call.method.equals(LOAD_BATCH_METHOD)) {
+      onLoadBatch(call, result);
+      return;
+    } else if (call.method.equals(APPEND_BYTES_METHOD)) {
+      String audioId = call.argument(AUDIO_ID);
+      StreamingMediaDataSource dataSource = streamingDataSources.get(audioId);
+      if (dataSource == null) {
+        result.error(ERROR_CODE, "Called appendBytes on a non-streaming player: " + audioId, null);
+        return;
+      }
+      byte[] audioBytes = call.argument(AUDIO_BYTES);
+      dataSource.append(audioBytes);
+      result.success(null);
+      return;
+    } else if (call.method.equals(END_BYTES_METHOD)) {
+      String audioId = call.argument(AUDIO_ID);
+      endStreamingDataSource(audioId);
+      result.success(null);
       return;
     } else if (call.method.equals(SET_PLAYBACK_STATE_METHOD)) {
       Boolean isPlayingBoolean = call.argument(PLAYBACK_IS_PLAYING);
@@ -205,15 +369,25 @@ public class AudiofileplayerPlugin
           positionSecondsDouble == null
               ? PlaybackStateCompat.PLAYBACK_POSITION_UNKNOWN
               : (long) Math.floor(positionSecondsDouble * 1000);
-      AudiofileplayerService.instance.setPlaybackStateState(
-          isPlayingBoolean ? PlaybackStateCompat.STATE_PLAYING : PlaybackStateCompat.STATE_PAUSED,
-          positionMs,
-          1.0f);
+      setPlaybackState(isPlayingBoolean, positionMs);
       result.success(null);
       return;
     } else if (call.method.equals(SET_METADATA_METHOD)) {
-      MediaMetadataCompat metadata = mapToMetadata((Map<String, ?>) call.arguments);
-      AudiofileplayerService.instance.setMetadata(metadata);
+      Map<String, ?> metadataMap = (Map<String, ?>) call.arguments;
+      int generation = ++metadataGeneration;
+      byte[] artBytes = (byte[]) metadataMap.get(METADATA_ART_BYTES);
+      if (artBytes == null) {
+        AudiofileplayerService.instance.setMetadata(mapToMetadata(metadataMap, null));
+      } else {
+        // Decode off the main thread, then set the metadata unless it has been set again since.
+        albumArtCache.get(
+            artBytes,
+            bitmap -> {
+              if (generation == metadataGeneration && AudiofileplayerService.instance != null) {
+                AudiofileplayerService.instance.setMetadata(mapToMetadata(metadataMap, bitmap));
+              }
+            });
+      }
       result.success(null);
       return;
     } else if (call.method.equals(SET_SUPPORTED_MEDIA_ACTIONS_METHOD)) {
@@ -240,10 +414,86 @@ public class AudiofileplayerPlugin
       AudiofileplayerService.instance.stop();
       result.success(null);
       return;
+    } else if (call.method.equals(SET_PLAYER_POOL_OPTIONS_METHOD)) {
+      Integer maxSizeInteger = call.argument(PLAYER_POOL_MAX_SIZE);
+      if (maxSizeInteger != null) {
+        playerPool.setMaxSize(maxSizeInteger);
+      }
+      Double idleTimeoutSecondsDouble = call.argument(PLAYER_POOL_IDLE_TIMEOUT_SECONDS);
+      if (idleTimeoutSecondsDouble != null) {
+        playerPool.setIdleTimeoutMs((long) Math.floor(idleTimeoutSecondsDouble * 1000));
+      }
+      result.success(null);
+      return;
+    } else if (call.method.equals(GET_PLAYER_POOL_STATS_METHOD)) {
+      result.success(playerPool.getStats());
+      return;
+    } else if (call.method.equals(SET_LOW_LATENCY_THRESHOLD_METHOD)) {
+      Number thresholdBytesNumber = call.argument(LOW_LATENCY_THRESHOLD_BYTES);
+      lowLatencyThresholdBytes =
+          thresholdBytesNumber == null ? 0 : thresholdBytesNumber.longValue();
+      result.success(null);
+      return;
+    } else if (call.method.equals(SET_REMOTE_CACHE_OPTIONS_METHOD)) {
+      Number maxSizeBytesNumber = call.argument(REMOTE_CACHE_MAX_SIZE_BYTES);
+      remoteAudioCache.setMaxSizeBytes(
+          maxSizeBytesNumber == null ? 0 : maxSizeBytesNumber.longValue());
+      result.success(null);
+      return;
+    } else if (call.method.equals(GET_REMOTE_CACHE_STATS_METHOD)) {
+      result.success(remoteAudioCache.getStats());
+      return;
+    } else if (call.method.equals(PREFETCH_METHOD)) {
+      if (!remoteAudioCache.isEnabled()) {
+        result.error(ERROR_CODE, "Called prefetch without enabling the remote cache.", null);
+        return;
+      }
+      List<String> urls = call.argument(PREFETCH_URLS);
+      Integer priorityInteger = call.argument(PREFETCH_PRIORITY);
+      remoteAudioCache.prefetch(urls, priorityInteger == null ? 0 : priorityInteger);
+      result.success(null);
+      return;
+    } else if (call.method.equals(QUEUE_INSERT_METHOD)) {
+      onQueueInsert(call, result);
+      return;
+    } else if (call.method.equals(QUEUE_SKIP_METHOD)) {
+      Integer offsetInteger = call.argument(QUEUE_OFFSET);
+      try {
+        playbackQueue.skip(offsetInteger);
+      } catch (IndexOutOfBoundsException e) {
+        result.error(ERROR_CODE, e.getMessage(), null);
+        return;
+      }
+      result.success(null);
+      return;
+    } else if (call.method.equals(QUEUE_CLEAR_METHOD)) {
+      playbackQueue.clear();
+      result.success(null);
+      return;
+    } else if (call.method.equals(GET_METRICS_METHOD)) {
+      result.success(getMetricsSnapshot());
+      return;
+    } else if (call.method.equals(SET_METRICS_PUSH_INTERVAL_METHOD)) {
+      // Null or zero stops pushing metrics.
+      Double intervalSecondsDouble = call.argument(METRICS_PUSH_INTERVAL_SECONDS);
+      handler.removeCallbacks(pushMetricsRunnable);
+      metricsPushIntervalMs =
+          intervalSecondsDouble == null ? 0 : (long) Math.floor(intervalSecondsDouble * 1000);
+      if (metricsPushIntervalMs > 0) {
+        handler.postDelayed(pushMetricsRunnable, metricsPushIntervalMs);
+      }
+      result.success(null);
+      return;
+    } else if (call.method.equals(CANCEL_PREFETCH_METHOD)) {
+      // Null cancels all prefetches.
+      List<String> urls = call.argument(PREFETCH_URLS);
+      remoteAudioCache.cancelPrefetches(urls);
+      result.success(null);
+      return;
     }
 
     // All subsequent calls need a valid player.
-    ManagedMediaPlayer player = getAndVerifyPlayer(call, result);
+    ManagedPlayer player = getAndVerifyPlayer(call, result);
 
     if (call.method.equals(PLAY_METHOD)) {
       Boolean playFromStartBoolean = call.argument(PLAY_FROM_START);
@@ -251,21 +501,24 @@ public class AudiofileplayerPlugin
       Double endpointSecondsDouble = call.argument(ENDPOINT_SECONDS);
       int endpointMs =
           endpointSecondsDouble == null
-              ? ManagedMediaPlayer.PLAY_TO_END
+              ? ManagedPlayer.PLAY_TO_END
               : (int) Math.floor(endpointSecondsDouble * 1000);
-      player.play(playFromStart, endpointMs);
-
-      // Calls the MediaSessionCompat.Callback.onPlay() in the AudiofileplayerService
-      // Note that without this, the service doesn't start, but the audio still continues to
-      // play in the background; it appears that using MediaBrowserService keeps this context
-      // active.
-      if (player.playInBackground) {
-        mediaController.getTransportControls().play();
-      }
+      play(player, playFromStart, endpointMs);
       result.success(null);
     } else if (call.method.equals(RELEASE_METHOD)) {
+      // Unblock any loading which is waiting for bytes, so that release can proceed.
+      endStreamingDataSource(player.getAudioId());
+      if (player instanceof ManagedMediaPlayer) {
+        playbackQueue.remove((ManagedMediaPlayer) player);
+      }
       player.release();
       mediaPlayers.remove(player.getAudioId());
+      removePlayerHandle(player);
+      result.success(null);
+    } else if (call.method.equals(QUEUE_REMOVE_METHOD)) {
+      if (player instanceof ManagedMediaPlayer) {
+        playbackQueue.remove((ManagedMediaPlayer) player);
+      }
       result.success(null);
     } else if (call.method.equals(SEEK_METHOD)) {
       Double positionSecondsDouble = call.argument(POSITION_SECONDS);
@@ -290,7 +543,108 @@ public class AudiofileplayerPlugin
     }
   }
 
-  private void onLoad(MethodCall call, Result result) {
+  private void play(ManagedPlayer player, boolean playFromStart, int endpointMs) {
+    player.play(playFromStart, endpointMs);
+
+    // Calls the MediaSessionCompat.Callback.onPlay() in the AudiofileplayerService
+    // Note that without this, the service doesn't start, but the audio still continues to
+    // play in the background; it appears that using MediaBrowserService keeps this context
+    // active.
+    if (player.playInBackground) {
+      mediaController.getTransportControls().play();
+    }
+  }
+
+  private void setPlaybackState(boolean isPlaying, long positionMs) {
+    AudiofileplayerService.instance.setPlaybackStateState(
+        isPlaying ? PlaybackStateCompat.STATE_PLAYING : PlaybackStateCompat.STATE_PAUSED,
+        positionMs,
+        1.0f);
+  }
+
+  private void onBinaryMessage(ByteBuffer command, BasicMessageChannel.Reply<ByteBuffer> reply) {
+    beginTraceSection(BINARY_COMMAND_TRACE_SECTION);
+    try {
+      handleBinaryCommand(command.order(ByteOrder.LITTLE_ENDIAN), reply);
+    } finally {
+      endTraceSection();
+    }
+  }
+
+  /**
+   * Handles a command from the binary channel, as laid out above.
+   *
+   * <p>Unlike method calls, commands are not logged, as they are sent for every play, seek, and
+   * volume change.
+   */
+  private void handleBinaryCommand(
+      ByteBuffer command, BasicMessageChannel.Reply<ByteBuffer> reply) {
+    metrics.increment("messagesReceived");
+    byte commandType = command.get(0);
+    boolean flag = command.get(1) != 0;
+    int handle = command.getInt(4);
+    double value = command.getDouble(8);
+    if (commandType == SET_PLAYBACK_STATE_COMMAND) {
+      setPlaybackState(
+          flag,
+          Double.isNaN(value)
+              ? PlaybackStateCompat.PLAYBACK_POSITION_UNKNOWN
+              : (long) Math.floor(value * 1000));
+      reply.reply(null);
+      return;
+    }
+
+    // All subsequent commands need a valid player.
+    ManagedPlayer player = playersByHandle.get(handle);
+    if (player == null) {
+      replyError(
+          reply,
+          String.format("Sent command %d to an unloaded player handle: %d", commandType, handle));
+      return;
+    }
+
+    if (commandType == PLAY_COMMAND) {
+      play(
+          player,
+          flag,
+          Double.isNaN(value) ? ManagedPlayer.PLAY_TO_END : (int) Math.floor(value * 1000));
+      reply.reply(null);
+    } else if (commandType == PAUSE_COMMAND) {
+      player.pause();
+      reply.reply(null);
+    } else if (commandType == SEEK_COMMAND) {
+      player.setOnSeekCompleteListener(
+          () -> {
+            reply.reply(null);
+            // Remove listener to avoid additional calls to reply.
+            player.setOnSeekCompleteListener(null);
+          });
+      player.seek(value);
+    } else if (commandType == SET_VOLUME_COMMAND) {
+      player.setVolume(value);
+      reply.reply(null);
+    } else {
+      replyError(reply, "Unknown binary command: " + commandType);
+    }
+  }
+
+  // Replies to a binary command with an error, which Dart throws as a PlatformException.
+  private static void replyError(BasicMessageChannel.Reply<ByteBuffer> reply, String message) {
+    byte[] messageBytes = message.getBytes(Charset.forName("UTF-8"));
+    // The position of the buffer is the length of the reply.
+    ByteBuffer buffer = ByteBuffer.allocateDirect(messageBytes.length);
+    buffer.put(messageBytes);
+    reply.reply(buffer);
+  }
+
+  /**
+   * Creates and starts loading a player, as specified by the arguments of a load call.
+   *
+   * @param sendDurationCallback if true, the duration is sent via an onDuration callback and the
+   *     result completes with null; otherwise, the result completes with the duration.
+   */
+  private void onLoad(MethodCall call, Result result, boolean sendDurationCallback) {
+    long loadStartMs = SystemClock.elapsedRealtime();
     String audioId = call.argument(AUDIO_ID);
     if (audioId == null) {
       result.error(ERROR_CODE, "Received load() call without an audioId", null);
@@ -313,7 +667,19 @@ public class AudiofileplayerPlugin
       playInBackground = playInBackgroundBoolean.booleanValue();
     }
 
+    // Null if unspecified, in which case the clip size decides.
+    Boolean lowLatency = call.argument(LOW_LATENCY);
+
+    Double positionIntervalSecondsDouble = call.argument(POSITION_INTERVAL_SECONDS);
+
+    // Null if Dart does not send commands over the binary channel.
+    Integer playerHandle = call.argument(PLAYER_HANDLE);
+
     try {
+      ManagedPlayer newPlayer;
+      String loadFailureMessage;
+      // The source type, by which load times are recorded.
+      String source;
       if (call.argument(FLUTTER_PATH) != null) {
         String flutterPath = call.argument(FLUTTER_PATH).toString();
         AssetManager assetManager = context.getAssets();
@@ -321,64 +687,237 @@ public class AudiofileplayerPlugin
         flutterLoader.startInitialization(context);
         String key = flutterLoader.getLookupKeyForAsset(flutterPath);
         AssetFileDescriptor fd = assetManager.openFd(key);
-        ManagedMediaPlayer newPlayer =
-            new LocalManagedMediaPlayer(audioId, fd, this, looping, playInBackground);
-        fd.close();
-        mediaPlayers.put(audioId, newPlayer);
-        handleDurationForPlayer(newPlayer, audioId);
-        result.success(null);
+        if (shouldUseSoundPool(lowLatency, fd.getLength())) {
+          // Closes the descriptor once it has read the clip.
+          newPlayer = new SoundPoolManagedPlayer(audioId, fd, this, looping, playInBackground);
+        } else {
+          newPlayer = new LocalManagedMediaPlayer(audioId, fd, this, looping, playInBackground);
+          fd.close();
+        }
+        loadFailureMessage = "Loading failed for flutterPath: " + flutterPath;
+        source = FLUTTER_PATH;
       } else if (call.argument(ABSOLUTE_PATH) != null) {
         String absolutePath = call.argument(ABSOLUTE_PATH);
-        ManagedMediaPlayer newPlayer =
-            new LocalManagedMediaPlayer(audioId, absolutePath, this, looping, playInBackground);
-        mediaPlayers.put(audioId, newPlayer);
-        handleDurationForPlayer(newPlayer, audioId);
-        result.success(null);
+        newPlayer =
+            shouldUseSoundPool(lowLatency, new File(absolutePath).length())
+                ? new SoundPoolManagedPlayer(
+                    audioId, absolutePath, this, looping, playInBackground)
+                : new LocalManagedMediaPlayer(
+                    audioId, absolutePath, this, looping, playInBackground);
+        loadFailureMessage = "Loading failed for absolutePath: " + absolutePath;
+        source = ABSOLUTE_PATH;
       } else if (call.argument(AUDIO_BYTES) != null) {
         byte[] audioBytes = call.argument(AUDIO_BYTES);
-        ManagedMediaPlayer newPlayer =
-            new LocalManagedMediaPlayer(
-                audioId, audioBytes, this, looping, playInBackground, context);
-        mediaPlayers.put(audioId, newPlayer);
-        handleDurationForPlayer(newPlayer, audioId);
-        result.success(null);
+        newPlayer =
+            shouldUseSoundPool(lowLatency, audioBytes.length)
+                ? new SoundPoolManagedPlayer(
+                    audioId, audioBytes, this, looping, playInBackground, context)
+                : new LocalManagedMediaPlayer(
+                    audioId, audioBytes, this, looping, playInBackground, context);
+        loadFailureMessage = "Loading failed for audioBytes of audio: " + audioId;
+        source = AUDIO_BYTES;
       } else if (call.argument(REMOTE_URL) != null) {
         String remoteUrl = call.argument(REMOTE_URL);
         // Note that this will throw an exception on invalid URL or lack of network connectivity.
-        RemoteManagedMediaPlayer newPlayer =
+        newPlayer =
             new RemoteManagedMediaPlayer(audioId, remoteUrl, this, looping, playInBackground);
-        newPlayer.setOnRemoteLoadListener(
-            (success) -> {
-              if (success) {
-                handleDurationForPlayer(newPlayer, audioId);
-                result.success(null);
-              } else {
-                mediaPlayers.remove(audioId);
-                result.error(ERROR_CODE, "Remote URL loading failed for URL: " + remoteUrl, null);
-              }
-            });
-        // Add player to data structure immediately; will be removed if async loading fails.
-        mediaPlayers.put(audioId, newPlayer);
+        loadFailureMessage = "Remote URL loading failed for URL: " + remoteUrl;
+        source = REMOTE_URL;
+      } else if (Boolean.TRUE.equals(call.argument(STREAMED))) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+          result.error(ERROR_CODE, "Streamed loading requires Android M or later.", null);
+          return;
+        }
+        StreamingMediaDataSource dataSource = new StreamingMediaDataSource();
+        newPlayer =
+            new LocalManagedMediaPlayer(audioId, dataSource, this, looping, playInBackground);
+        streamingDataSources.put(audioId, dataSource);
+        loadFailureMessage = "Loading failed for streamed bytes of audio: " + audioId;
+        source = STREAMED;
       } else {
         result.error(
             ERROR_CODE,
-            "Could not create ManagedMediaPlayer with no flutterPath, audioBytes, nor remoteUrl.",
+            "Could not create ManagedMediaPlayer with no flutterPath, audioBytes, remoteUrl, nor "
+                + "streamed bytes.",
             null);
         return;
       }
+      if (playerHandle != null) {
+        newPlayer.setHandle(playerHandle);
+      }
+      if (positionIntervalSecondsDouble != null) {
+        if (newPlayer instanceof ManagedMediaPlayer) {
+          ((ManagedMediaPlayer) newPlayer)
+              .setPositionIntervalMs((long) Math.floor(positionIntervalSecondsDouble * 1000));
+        } else {
+          // SoundPool players send no positions.
+          Log.w(TAG, "Ignoring the position interval of low-latency player " + audioId);
+        }
+      }
+      addLoadingPlayer(
+          newPlayer, result, loadFailureMessage, sendDurationCallback, source, loadStartMs);
     } catch (Exception e) {
       result.error(ERROR_CODE, "Could not create ManagedMediaPlayer:" + e.getMessage(), null);
     }
   }
 
-  private ManagedMediaPlayer getAndVerifyPlayer(MethodCall call, Result result) {
+  /**
+   * Loads a list of players, each specified by a map of load call arguments, in one round trip.
+   *
+   * <p>All players load concurrently. The result completes once every load has finished, with a
+   * list holding, for each spec, its audioId, success, and either its duration or an error message.
+   * No onDuration callbacks are sent.
+   */
+  private void onLoadBatch(MethodCall call, Result result) {
+    List<Map<String, Object>> loadSpecs = call.argument(LOAD_SPECS);
+    if (loadSpecs == null) {
+      result.error(ERROR_CODE, "Received loadBatch() call without loadSpecs", null);
+      return;
+    }
+    BatchLoadResults batchLoadResults = new BatchLoadResults(loadSpecs.size(), result);
+    for (int i = 0; i < loadSpecs.size(); i++) {
+      Map<String, Object> loadSpec = loadSpecs.get(i);
+      onLoad(
+          new MethodCall(LOAD_METHOD, loadSpec),
+          batchLoadResults.resultForItem(i, (String) loadSpec.get(AUDIO_ID)),
+          false);
+    }
+  }
+
+  /**
+   * Whether a local clip should be played via SoundPool rather than MediaPlayer.
+   *
+   * @param lowLatency the caller's explicit choice, or null to decide by size.
+   * @param sizeBytes the clip size, or a negative value if unknown.
+   */
+  private boolean shouldUseSoundPool(Boolean lowLatency, long sizeBytes) {
+    if (lowLatency != null) {
+      return lowLatency;
+    }
+    return sizeBytes >= 0 && sizeBytes < lowLatencyThresholdBytes;
+  }
+
+  /**
+   * Adds a player whose loading has started, completing the load call once its async loading has
+   * finished.
+   *
+   * <p>Loading runs off the platform thread, so several loads proceed in parallel.
+   *
+   * @param source the source type of the player, by which its load time is recorded.
+   * @param loadStartMs when the load call was received, per {@link SystemClock#elapsedRealtime}.
+   */
+  private void addLoadingPlayer(
+      ManagedPlayer newPlayer,
+      Result result,
+      String failureMessage,
+      boolean sendDurationCallback,
+      String source,
+      long loadStartMs) {
+    String audioId = newPlayer.getAudioId();
+    newPlayer.setOnLoadListener(
+        (success) -> {
+          if (methodChannel == null) {
+            // The plugin has been detached, and has released the player.
+            return;
+          }
+          if (success) {
+            metrics.recordLatencySince("load." + source, loadStartMs);
+          } else {
+            metrics.increment("loadFailures." + source);
+          }
+          if (success && sendDurationCallback) {
+            handleDurationForPlayer(newPlayer, audioId);
+            result.success(null);
+          } else if (success) {
+            result.success(newPlayer.getDurationSeconds());
+          } else {
+            // The player may have been queued while it was loading.
+            if (newPlayer instanceof ManagedMediaPlayer) {
+              playbackQueue.remove((ManagedMediaPlayer) newPlayer);
+            }
+            mediaPlayers.remove(audioId);
+            removePlayerHandle(newPlayer);
+            endStreamingDataSource(audioId);
+            result.error(ERROR_CODE, failureMessage, null);
+          }
+        });
+    // Add player to data structure immediately; will be removed if async loading fails.
+    mediaPlayers.put(audioId, newPlayer);
+    if (newPlayer.getHandle() != 0) {
+      ManagedPlayer previousPlayer = playersByHandle.put(newPlayer.getHandle(), newPlayer);
+      if (previousPlayer != null) {
+        // Dart numbers handles from 1 again after a hot restart, while the players it loaded before
+        // may still be alive. The newest player takes the handle.
+        Log.w(
+            TAG,
+            "Player handle "
+                + newPlayer.getHandle()
+                + " of "
+                + audioId
+                + " replaces that of "
+                + previousPlayer.getAudioId());
+      }
+    }
+  }
+
+  // Removes the handle of a player, unless another player has since taken it.
+  private void removePlayerHandle(ManagedPlayer player) {
+    if (player.getHandle() != 0 && playersByHandle.get(player.getHandle()) == player) {
+      playersByHandle.remove(player.getHandle());
+    }
+  }
+
+  /** Inserts loaded players into the playback queue; a null index appends them. */
+  private void onQueueInsert(MethodCall call, Result result) {
+    List<String> audioIds = call.argument(QUEUE_AUDIO_IDS);
+    List<ManagedMediaPlayer> players = new ArrayList<>();
+    for (String audioId : audioIds) {
+      ManagedPlayer player = mediaPlayers.get(audioId);
+      if (!(player instanceof ManagedMediaPlayer)) {
+        result.error(
+            ERROR_CODE, "Can only queue loaded, non-low-latency players: " + audioId, null);
+        return;
+      }
+      if (((ManagedMediaPlayer) player).isLooping()) {
+        // A looping player never completes, so the queue would never advance past it.
+        result.error(ERROR_CODE, "Cannot queue a looping player: " + audioId, null);
+        return;
+      }
+      players.add((ManagedMediaPlayer) player);
+    }
+    Integer indexInteger = call.argument(QUEUE_INDEX);
+    try {
+      playbackQueue.insert(indexInteger == null ? playbackQueue.size() : indexInteger, players);
+    } catch (IndexOutOfBoundsException e) {
+      result.error(ERROR_CODE, e.getMessage(), null);
+      return;
+    }
+    result.success(null);
+  }
+
+  /** Marks the end of a streamed player's bytes, if it is still receiving them. */
+  private void endStreamingDataSource(String audioId) {
+    StreamingMediaDataSource dataSource = streamingDataSources.remove(audioId);
+    if (dataSource != null) {
+      dataSource.end();
+    }
+  }
+
+  private void endStreamingDataSources() {
+    for (StreamingMediaDataSource dataSource : streamingDataSources.values()) {
+      dataSource.end();
+    }
+    streamingDataSources.clear();
+  }
+
+  private ManagedPlayer getAndVerifyPlayer(MethodCall call, Result result) {
     String audioId = call.argument(AUDIO_ID);
     if (audioId == null) {
       result.error(
           ERROR_CODE, String.format("Received %s call without an audioId", call.method), null);
       return null;
     }
-    ManagedMediaPlayer player = mediaPlayers.get(audioId);
+    ManagedPlayer player = mediaPlayers.get(audioId);
     if (player == null) {
       result.error(
           ERROR_CODE,
@@ -388,42 +927,204 @@ public class AudiofileplayerPlugin
     return player;
   }
 
-  /** Called by {@link ManagedMediaPlayer} when (non-looping) file has finished playback. */
+  /** The pool from which {@link ManagedMediaPlayer}s acquire their underlying MediaPlayer. */
+  MediaPlayerPool getPlayerPool() {
+    return playerPool;
+  }
+
+  /** The SoundPool shared by all {@link SoundPoolManagedPlayer}s. */
+  SharedSoundPool getSharedSoundPool() {
+    return sharedSoundPool;
+  }
+
+  /** The disk cache from which {@link RemoteManagedMediaPlayer}s load, if enabled. */
+  RemoteAudioCache getRemoteAudioCache() {
+    return remoteAudioCache;
+  }
+
+  /** The gapless queue of {@link ManagedMediaPlayer}s. */
+  PlaybackQueue getPlaybackQueue() {
+    return playbackQueue;
+  }
+
+  /** The ticker which sends the positions of all playing {@link ManagedMediaPlayer}s. */
+  PositionTicker getPositionTicker() {
+    return positionTicker;
+  }
+
+  /** Begins a trace section, on versions of Android which support them. */
+  static void beginTraceSection(String sectionName) {
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+      Trace.beginSection(sectionName);
+    }
+  }
+
+  /** Ends the trace section last begun on this thread. */
+  static void endTraceSection() {
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+      Trace.endSection();
+    }
+  }
+
+  /** The metrics of the plugin's hot paths. */
+  AudioMetrics getMetrics() {
+    return metrics;
+  }
+
+  private Map<String, Object> getMetricsSnapshot() {
+    int liveMediaPlayerCount = 0;
+    for (ManagedPlayer player : mediaPlayers.values()) {
+      if (player instanceof ManagedMediaPlayer) {
+        liveMediaPlayerCount++;
+      }
+    }
+    Map<String, Object> gauges = new HashMap<>();
+    gauges.put("livePlayers", mediaPlayers.size());
+    gauges.put("liveMediaPlayers", liveMediaPlayerCount);
+    gauges.put("bufferBytesResident", BufferMediaDataSource.getResidentBytes());
+    return metrics.getSnapshot(gauges);
+  }
+
+  private final Runnable pushMetricsRunnable =
+      new Runnable() {
+        @Override
+        public void run() {
+          invokeDartMethod(ON_METRICS_CALLBACK, getMetricsSnapshot());
+          handler.postDelayed(this, metricsPushIntervalMs);
+        }
+      };
+
+  // Sends a callback to Dart, counting it in the metrics.
+  private void invokeDartMethod(String method, Object arguments) {
+    if (methodChannel == null) {
+      // Detached from the engine, so there is no Dart to tell.
+      return;
+    }
+    metrics.increment("messagesSent");
+    methodChannel.invokeMethod(method, arguments);
+  }
+
+  /** Called by {@link ManagedPlayer} when (non-looping) file has finished playback. */
   public void handleCompletion(String audioId) {
-    this.methodChannel.invokeMethod(
+    invokeDartMethod(
         ON_COMPLETE_CALLBACK, Collections.singletonMap(AUDIO_ID, audioId));
   }
 
   // Called on successful load.
-  public void handleDurationForPlayer(ManagedMediaPlayer player, String audioId) {
+  public void handleDurationForPlayer(ManagedPlayer player, String audioId) {
     Map<String, Object> arguments = new HashMap<String, Object>();
     arguments.put(AUDIO_ID, audioId);
     // Note that player will report a negative value if duration is unavailable (for example,
     // streaming certain types of remote audio).
     double durationSeconds = player.getDurationSeconds();
     arguments.put(DURATION_SECONDS, Double.valueOf(durationSeconds));
-    this.methodChannel.invokeMethod(ON_DURATION_CALLBACK, arguments);
+    invokeDartMethod(ON_DURATION_CALLBACK, arguments);
   }
 
-  /** Called repeatedly by {@link ManagedMediaPlayer} during playback. */
-  public void handlePosition(String audioId, double positionSeconds) {
+  /** Called by {@link PlaybackQueue} when its current player changes. */
+  private void handleQueueAdvance(String stoppedAudioId, String audioId, boolean playing) {
     Map<String, Object> arguments = new HashMap<String, Object>();
+    arguments.put(QUEUE_STOPPED_AUDIO_ID, stoppedAudioId);
     arguments.put(AUDIO_ID, audioId);
-    arguments.put(POSITION_SECONDS, Double.valueOf(positionSeconds));
-    this.methodChannel.invokeMethod(ON_POSITION_CALLBACK, arguments);
+    arguments.put(QUEUE_PLAYING, playing);
+    invokeDartMethod(ON_QUEUE_ADVANCE_CALLBACK, arguments);
+  }
+
+  /** Called repeatedly by {@link PositionTicker} during playback, with positions by audioId. */
+  public void handlePositions(Map<String, Double> positionSecondsByAudioId) {
+    invokeDartMethod(
+        ON_POSITIONS_CALLBACK, Collections.singletonMap(POSITIONS, positionSecondsByAudioId));
+  }
+
+  /**
+   * Called repeatedly by {@link PositionTicker} during playback, with the first {@code count}
+   * positions of players which have handles, and their handles. Sent as a binary positions event.
+   */
+  void handlePositions(int count, double[] positionSeconds, int[] handles) {
+    ByteBuffer event = ByteBuffer.allocateDirect(8 + count * 12).order(ByteOrder.LITTLE_ENDIAN);
+    event.put(0, ON_POSITIONS_EVENT);
+    event.putInt(4, count);
+    event.position(8);
+    for (int i = 0; i < count; i++) {
+      event.putDouble(positionSeconds[i]);
+    }
+    for (int i = 0; i < count; i++) {
+      event.putInt(handles[i]);
+    }
+    metrics.increment("messagesSent");
+    binaryChannel.send(event);
   }
 
   /**
-   * Stop and release all {@link ManagedMediaPlayer}s.
+   * Stop and release all {@link ManagedPlayer}s.
    *
-   * <p>Called on the parent Activity's onDestroy(); note that this assumes that the Dart audio lib
-   * is disposed and that there will be no further messages over the method channel.
+   * <p>Called on the parent Activity's onDestroy(), and on detaching from the engine; note that
+   * this assumes that the Dart audio lib is disposed and that there will be no further messages
+   * over the method channel.
    */
   private void onDestroy() {
-    for (ManagedMediaPlayer player : mediaPlayers.values()) {
+    endStreamingDataSources();
+    playbackQueue.clear();
+    for (ManagedPlayer player : mediaPlayers.values()) {
       player.release();
     }
     mediaPlayers.clear();
+    playersByHandle.clear();
+    positionTicker.stopAll();
+    playerPool.clear();
+    sharedSoundPool.release();
+  }
+
+  /** Collects the per-item outcomes of a loadBatch call, and replies once all are known. */
+  private static final class BatchLoadResults {
+    private final List<Map<String, Object>> itemResults;
+    private final Result batchResult;
+    private int pendingCount;
+
+    BatchLoadResults(int size, Result batchResult) {
+      this.itemResults = new ArrayList<>(Collections.nCopies(size, null));
+      this.batchResult = batchResult;
+      this.pendingCount = size;
+      if (size == 0) {
+        batchResult.success(itemResults);
+      }
+    }
+
+    /** Returns a Result which records the outcome of loading the item at {@code index}. */
+    Result resultForItem(int index, String audioId) {
+      return new Result() {
+        @Override
+        public void success(Object durationSeconds) {
+          Map<String, Object> itemResult = new HashMap<>();
+          itemResult.put(AUDIO_ID, audioId);
+          itemResult.put(LOAD_SUCCESS, true);
+          itemResult.put(DURATION_SECONDS, durationSeconds);
+          complete(index, itemResult);
+        }
+
+        @Override
+        public void error(String errorCode, String errorMessage, Object errorDetails) {
+          Map<String, Object> itemResult = new HashMap<>();
+          itemResult.put(AUDIO_ID, audioId);
+          itemResult.put(LOAD_SUCCESS, false);
+          itemResult.put(LOAD_ERROR_MESSAGE, errorMessage);
+          complete(index, itemResult);
+        }
+
+        @Override
+        public void notImplemented() {
+          error(ERROR_CODE, "Not implemented", null);
+        }
+      };
+    }
+
+    private void complete(int index, Map<String, Object> itemResult) {
+      itemResults.set(index, itemResult);
+      pendingCount--;
+      if (pendingCount == 0) {
+        batchResult.success(itemResults);
+      }
+    }
   }
 
   private static class LifecycleCallbacks implements Application.ActivityLifecycleCallbacks {
@@ -548,7 +1249,7 @@ public class AudiofileplayerPlugin
     Log.i(TAG, "onMediaButtonClick()");
     Map<String, Object> arguments = new HashMap<>();
     arguments.put(MEDIA_EVENT_TYPE, eventCodeToMediaEventString(keyCode));
-    methodChannel.invokeMethod(ON_MEDIA_EVENT_CALLBACK, arguments);
+    invokeDartMethod(ON_MEDIA_EVENT_CALLBACK, arguments);
   }
 
   @Override
@@ -557,7 +1258,7 @@ public class AudiofileplayerPlugin
     Map<String, Object> arguments = new HashMap<>();
     arguments.put(MEDIA_EVENT_TYPE, MEDIA_CUSTOM);
     arguments.put(MEDIA_CUSTOM_EVENT_ID, eventId);
-    methodChannel.invokeMethod(ON_MEDIA_EVENT_CALLBACK, arguments);
+    invokeDartMethod(ON_MEDIA_EVENT_CALLBACK, arguments);
   }
 
   @Override
@@ -567,13 +1268,16 @@ public class AudiofileplayerPlugin
     Map<String, Object> arguments = new HashMap<>();
     arguments.put(MEDIA_EVENT_TYPE, MEDIA_SEEK_TO);
     arguments.put(MEDIA_SEEK_TO_POSITION_SECONDS, positionSeconds);
-    methodChannel.invokeMethod(ON_MEDIA_EVENT_CALLBACK, arguments);
+    invokeDartMethod(ON_MEDIA_EVENT_CALLBACK, arguments);
   }
 
   // static conversion utility methods.
 
-  /** Converts a Map of metadata entries (from Dart) into a {@link MediaMetadataCompat}. */
-  static MediaMetadataCompat mapToMetadata(Map<String, ?> map) {
+  /**
+   * Converts a Map of metadata entries (from Dart) into a {@link MediaMetadataCompat}, with the
+   * given album art, if any, decoded from the map's art bytes.
+   */
+  static MediaMetadataCompat mapToMetadata(Map<String, ?> map, Bitmap albumArt) {
     MediaMetadataCompat.Builder builder = new MediaMetadataCompat.Builder();
     if (map.containsKey(METADATA_ID)) {
       builder.putString(MediaMetadataCompat.METADATA_KEY_MEDIA_ID, (String) map.get(METADATA_ID));
@@ -596,11 +1300,10 @@ public class AudiofileplayerPlugin
       Long durationMsLong = (long) Math.floor(durationSecondsDouble * 1000);
       builder.putLong(MediaMetadataCompat.METADATA_KEY_DURATION, durationMsLong);
     }
-    if (map.containsKey(METADATA_ART_BYTES)) {
-      byte[] artBytes = (byte[]) map.get(METADATA_ART_BYTES);
-      Bitmap bitmap = BitmapFactory.decodeByteArray(artBytes, 0, artBytes.length);
-      builder.putBitmap(MediaMetadataCompat.METADATA_KEY_ALBUM_ART, bitmap);
-      builder.putBitmap(MediaMetadataCompat.METADATA_KEY_DISPLAY_ICON, bitmap);
+    if (albumArt != null) {
+      // The description's icon falls back to the album art, so it is not also put as the display
+      // icon, which would parcel the bitmap twice.
+      builder.putBitmap(MediaMetadataCompat.METADATA_KEY_ALBUM_ART, albumArt);
     }
     return builder.build();
   }
@@ -672,9 +1375,13 @@ public class AudiofileplayerPlugin
     Intent intent = new Intent(Intent.ACTION_MEDIA_BUTTON);
     intent.setComponent(component);
     intent.putExtra(CUSTOM_MEDIA_BUTTON_EXTRA_KEY, eventId);
+    // Extras do not tell intents apart, so the event id is also the data. Each button then keeps
+    // its own PendingIntent, and setting the same buttons again yields equal PendingIntents.
+    intent.setData(Uri.fromParts(CUSTOM_MEDIA_BUTTON_EXTRA_KEY, eventId, null));
 
     PendingIntent pendingIntent =
-        PendingIntent.getService(context, 0, intent, PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_CANCEL_CURRENT);
+        PendingIntent.getService(
+            context, 0, intent, PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT);
 
     return new NotificationCompat.Action(resourceId, title, pendingIntent);
   }
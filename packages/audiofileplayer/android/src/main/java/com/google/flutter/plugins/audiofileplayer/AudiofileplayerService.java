@@ -14,10 +14,13 @@ import android.graphics.Bitmap;
 import android.media.AudioManager;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.v4.media.MediaBrowserCompat;
 import android.support.v4.media.MediaMetadataCompat;
 import android.support.v4.media.session.MediaSessionCompat;
 import android.support.v4.media.session.PlaybackStateCompat;
+import android.text.TextUtils;
 import android.util.Log;
 import android.view.KeyEvent;
 import androidx.annotation.RequiresApi;
@@ -25,6 +28,7 @@ import androidx.core.app.NotificationCompat;
 import androidx.media.MediaBrowserServiceCompat;
 import androidx.media.app.NotificationCompat.MediaStyle;
 import androidx.media.session.MediaButtonReceiver;
+import java.util.Arrays;
 import java.util.List;
 
 public class AudiofileplayerService extends MediaBrowserServiceCompat
@@ -33,6 +37,8 @@ public class AudiofileplayerService extends MediaBrowserServiceCompat
   private static final String MEDIA_ROOT_ID = "root";
   private static final String CHANNEL_ID = AudiofileplayerService.class.getName();
   private static final int NOTIFICATION_ID = 54321;
+  // How long to wait for further changes before updating the notification, about a frame.
+  private static final long NOTIFICATION_UPDATE_DELAY_MS = 16;
 
   static AudiofileplayerService instance;
 
@@ -49,6 +55,13 @@ public class AudiofileplayerService extends MediaBrowserServiceCompat
   private long playbackStatePosition = 0;
   private float playbackStateSpeed = 0;
 
+  private final Handler handler = new Handler(Looper.getMainLooper());
+  private final Runnable updateNotificationRunnable = this::updateNotification;
+  // What the posted notification shows, or null if none is posted.
+  private NotificationContent postedNotificationContent;
+  private boolean channelCreated;
+  private int smallIconId;
+
   public interface ServiceListener {
     void onMediaButtonClick(int keyCode);
 
@@ -97,6 +110,8 @@ public class AudiofileplayerService extends MediaBrowserServiceCompat
     Log.i(TAG, "onStartCommand");
 
 
+    handler.removeCallbacks(updateNotificationRunnable);
+    postedNotificationContent = new NotificationContent();
     Notification notif = buildNotification();
     // Display the notification and place the service in the foreground
     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
@@ -125,6 +140,7 @@ public class AudiofileplayerService extends MediaBrowserServiceCompat
   public void onDestroy() {
     Log.i(TAG, "onDestroy");
     instance = null;
+    handler.removeCallbacks(updateNotificationRunnable);
     mediaSession.release();
     super.onDestroy();
   }
@@ -175,6 +191,8 @@ public class AudiofileplayerService extends MediaBrowserServiceCompat
             .setState(PlaybackStateCompat.STATE_STOPPED, playbackStatePosition, 0.0f);
     mediaSession.setPlaybackState(builder.build());
     mediaSession.setActive(false);
+    handler.removeCallbacks(updateNotificationRunnable);
+    postedNotificationContent = null;
     stopForeground(true);
     stopSelf();
   }
@@ -189,13 +207,13 @@ public class AudiofileplayerService extends MediaBrowserServiceCompat
     this.playbackStatePosition = position;
     this.playbackStateSpeed = speed;
     updatePlaybackState();
-    updateNotification();
+    scheduleNotificationUpdate();
   }
 
   public void setMetadata(MediaMetadataCompat metadata) {
     this.metadata = metadata;
     mediaSession.setMetadata(metadata);
-    updateNotification();
+    scheduleNotificationUpdate();
   }
 
   public void setActions(
@@ -212,12 +230,19 @@ public class AudiofileplayerService extends MediaBrowserServiceCompat
     }
     this.compactNotificationActionIndices = compactIndices;
 
-    updateNotification();
+    scheduleNotificationUpdate();
   }
 
   // private methods.
 
   private int getSmallIconId() {
+    if (smallIconId == 0) {
+      smallIconId = lookUpSmallIconId();
+    }
+    return smallIconId;
+  }
+
+  private int lookUpSmallIconId() {
     Context context = getApplicationContext();
     String iconUri = "mipmap/ic_launcher";
 
@@ -249,7 +274,10 @@ public class AudiofileplayerService extends MediaBrowserServiceCompat
   }
 
   private Notification buildNotification() {
-    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) createChannel();
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && !channelCreated) {
+      createChannel();
+      channelCreated = true;
+    }
 
     //
     CharSequence title =
@@ -376,9 +404,90 @@ public class AudiofileplayerService extends MediaBrowserServiceCompat
     }
   }
 
+  /**
+   * Updates the notification once the current burst of changes is over, so that a burst of state
+   * updates from Dart posts one notification rather than one each.
+   */
+  private void scheduleNotificationUpdate() {
+    handler.removeCallbacks(updateNotificationRunnable);
+    handler.postDelayed(updateNotificationRunnable, NOTIFICATION_UPDATE_DELAY_MS);
+  }
+
+  // Posts the notification, unless it would show the same as the one already posted. Changes to
+  // the playback state alone do not change the notification, whose media style reads them from
+  // the session.
   private void updateNotification() {
+    NotificationContent content = new NotificationContent();
+    if (content.equals(postedNotificationContent)) {
+      return;
+    }
+    postedNotificationContent = content;
     NotificationManager notificationManager =
         (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
     notificationManager.notify(NOTIFICATION_ID, buildNotification());
   }
+
+  /** What a notification built from the current metadata and actions would show. */
+  private final class NotificationContent {
+    final CharSequence title;
+    final CharSequence subtitle;
+    final CharSequence description;
+    final Bitmap largeIcon;
+    final List<NotificationCompat.Action> actions;
+    final int[] compactActionIndices;
+
+    NotificationContent() {
+      title = metadata != null ? metadata.getDescription().getTitle() : null;
+      subtitle = metadata != null ? metadata.getDescription().getSubtitle() : null;
+      description = metadata != null ? metadata.getDescription().getDescription() : null;
+      largeIcon = metadata != null ? metadata.getDescription().getIconBitmap() : null;
+      actions = notificationActions;
+      compactActionIndices = compactNotificationActionIndices;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof NotificationContent)) {
+        return false;
+      }
+      NotificationContent other = (NotificationContent) o;
+      // Album art decoded from the same bytes is the same cached bitmap, so bitmaps are compared
+      // by identity.
+      return TextUtils.equals(title, other.title)
+          && TextUtils.equals(subtitle, other.subtitle)
+          && TextUtils.equals(description, other.description)
+          && largeIcon == other.largeIcon
+          && actionsEqual(actions, other.actions)
+          && Arrays.equals(compactActionIndices, other.compactActionIndices);
+    }
+
+    // Actions are built anew each time they are set, so they are compared by their icon, title,
+    // and intent. Equal buttons get equal PendingIntents, which identify what the action does.
+    private boolean actionsEqual(
+        List<NotificationCompat.Action> actions, List<NotificationCompat.Action> otherActions) {
+      if (actions == otherActions) {
+        return true;
+      }
+      if (actions == null || otherActions == null || actions.size() != otherActions.size()) {
+        return false;
+      }
+      for (int i = 0; i < actions.size(); i++) {
+        NotificationCompat.Action action = actions.get(i);
+        NotificationCompat.Action otherAction = otherActions.get(i);
+        if (action.getIcon() != otherAction.getIcon()
+            || !TextUtils.equals(action.title, otherAction.title)
+            || (action.actionIntent == null
+                ? otherAction.actionIntent != null
+                : !action.actionIntent.equals(otherAction.actionIntent))) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public int hashCode() {
+      return Arrays.hashCode(compactActionIndices);
+    }
+  }
 }
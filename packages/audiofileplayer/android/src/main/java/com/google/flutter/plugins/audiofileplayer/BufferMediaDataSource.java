@@ -2,31 +2,71 @@ package com.google.flutter.plugins.audiofileplayer;
 
 import android.media.MediaDataSource;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
 
-/** A MediaDataSource implementation to read a byte array of media data. */
+/**
+ * A MediaDataSource implementation to read media data from a ByteBuffer.
+ *
+ * <p>The buffer may be direct (e.g. from {@link #offHeapCopyOf(byte[])}), so that large media is
+ * not retained on the Java heap for the lifetime of the player.
+ */
 final class BufferMediaDataSource extends MediaDataSource {
-  private final byte[] bytes;
+  // The bytes held by all instances which have not been closed.
+  private static final AtomicLong residentBytes = new AtomicLong();
 
-  public BufferMediaDataSource(byte[] bytes) {
-    this.bytes = bytes;
+  // A private view of the media data, so that reads do not disturb the caller's position.
+  private final ByteBuffer buffer;
+  private boolean closed;
+
+  /** Creates a BufferMediaDataSource reading the buffer's remaining bytes. */
+  public BufferMediaDataSource(ByteBuffer buffer) {
+    this.buffer = buffer.slice();
+    residentBytes.addAndGet(this.buffer.capacity());
+  }
+
+  /** The bytes held by all data sources which MediaPlayer has not yet closed. */
+  static long getResidentBytes() {
+    return residentBytes.get();
+  }
+
+  /**
+   * Creates a BufferMediaDataSource holding a copy of the bytes in a direct buffer.
+   *
+   * <p>Once this returns, the caller's byte array may be garbage collected.
+   */
+  public static BufferMediaDataSource offHeapCopyOf(byte[] bytes) {
+    ByteBuffer directBuffer = ByteBuffer.allocateDirect(bytes.length);
+    directBuffer.put(bytes);
+    directBuffer.flip();
+    return new BufferMediaDataSource(directBuffer);
   }
 
   @Override
   public long getSize() {
-    return bytes.length;
+    return buffer.capacity();
   }
 
+  // Synchronized since MediaPlayer may read from a thread of its own.
   @Override
-  public int readAt(long position, byte[] buffer, int offset, int size) {
-    if (position >= bytes.length) {
+  public synchronized int readAt(long position, byte[] buffer, int offset, int size) {
+    int capacity = this.buffer.capacity();
+    if (position >= capacity) {
       // Indicate end of stream with -1.
       return -1;
     }
-    int readSize = Math.min(size, Math.min(buffer.length - offset, bytes.length - (int) position));
-    System.arraycopy(bytes, (int) position, buffer, offset, readSize);
+    int readSize = Math.min(size, Math.min(buffer.length - offset, capacity - (int) position));
+    this.buffer.position((int) position);
+    this.buffer.get(buffer, offset, readSize);
     return readSize;
   }
 
+  // Called by MediaPlayer once it no longer needs the data, e.g. on reset or release.
   @Override
-  public void close() throws IOException {}
+  public synchronized void close() throws IOException {
+    if (!closed) {
+      closed = true;
+      residentBytes.addAndGet(-buffer.capacity());
+    }
+  }
 }
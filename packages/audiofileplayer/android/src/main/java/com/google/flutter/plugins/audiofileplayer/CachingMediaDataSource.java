@@ -0,0 +1,81 @@
+package com.google.flutter.plugins.audiofileplayer;
+
+import android.media.MediaDataSource;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * A MediaDataSource which plays a remote file while it is downloaded into the {@link
+ * RemoteAudioCache}.
+ *
+ * <p>Reads are served from the partially downloaded file, blocking until the download reaches the
+ * requested position. The file is opened by the first read, on MediaPlayer's thread, once the
+ * download has created it.
+ */
+final class CachingMediaDataSource extends MediaDataSource {
+  private final RemoteAudioCache cache;
+  private final RemoteAudioDownload download;
+  // Null until the first read.
+  private RandomAccessFile file;
+  private volatile boolean closed;
+
+  /** Creates a CachingMediaDataSource reading from a download acquired from the cache. */
+  CachingMediaDataSource(RemoteAudioCache cache, RemoteAudioDownload download) {
+    this.cache = cache;
+    this.download = download;
+  }
+
+  /** Returns the size of the file, or -1 while it is unknown. */
+  @Override
+  public long getSize() {
+    return download.getContentLength();
+  }
+
+  @Override
+  public int readAt(long position, byte[] buffer, int offset, int size) throws IOException {
+    // Wait without holding the lock, so that close() can wake the read.
+    long availableBytes = download.awaitAvailableBytes(position, this);
+    if (position >= availableBytes) {
+      // Indicate end of stream with -1.
+      return -1;
+    }
+    int readSize =
+        (int) Math.min(Math.min(size, buffer.length - offset), availableBytes - position);
+    synchronized (this) {
+      if (closed) {
+        throw new IOException("Read from a closed CachingMediaDataSource.");
+      }
+      if (file == null) {
+        file = download.openForReading();
+      }
+      file.seek(position);
+      return file.read(buffer, offset, readSize);
+    }
+  }
+
+  boolean isClosed() {
+    return closed;
+  }
+
+  /**
+   * Stops reading, waking any read which is waiting for the download, and releases the download.
+   *
+   * <p>Called before the MediaPlayer is reset, so that the reset does not wait for the network.
+   */
+  @Override
+  public void close() throws IOException {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+    }
+    download.wakeReaders();
+    cache.releaseDownload(download);
+    synchronized (this) {
+      if (file != null) {
+        file.close();
+      }
+    }
+  }
+}
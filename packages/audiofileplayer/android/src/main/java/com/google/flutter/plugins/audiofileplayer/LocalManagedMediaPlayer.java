@@ -2,7 +2,7 @@ package com.google.flutter.plugins.audiofileplayer;
 
 import android.content.Context;
 import android.content.res.AssetFileDescriptor;
-import android.media.MediaPlayer;
+import android.media.MediaDataSource;
 import android.os.Build;
 import java.io.File;
 import java.io.FileInputStream;
@@ -13,15 +13,16 @@ import java.util.UUID;
 /**
  * Wraps a MediaPlayer for local asset use by AudiofileplayerPlugin.
  *
- * <p>Used for local audio data only; loading occurs synchronously. Loading remote audio should use
- * RemoteManagedMediaPlayer.
+ * <p>Used for local audio data only. Loading occurs asynchronously, off the platform thread, so
+ * that large files do not stall it; see {@link ManagedMediaPlayer}. Loading remote audio should
+ * use RemoteManagedMediaPlayer.
  */
 class LocalManagedMediaPlayer extends ManagedMediaPlayer {
 
   /**
    * Private shared constructor.
    *
-   * <p>Callers must subsequently set a data source and call {@link MediaPlayer#prepare()}.
+   * <p>Callers must subsequently set a data source and call {@link #prepareAsync()}.
    */
   private LocalManagedMediaPlayer(
       String audioId,
@@ -30,9 +31,6 @@ class LocalManagedMediaPlayer extends ManagedMediaPlayer {
       boolean playInBackground)
       throws IllegalArgumentException, IOException {
     super(audioId, parentAudioPlugin, looping, playInBackground);
-    player.setOnErrorListener(this);
-    player.setOnCompletionListener(this);
-    player.setOnSeekCompleteListener(this);
   }
 
   /**
@@ -49,7 +47,7 @@ class LocalManagedMediaPlayer extends ManagedMediaPlayer {
       throws IOException {
     this(audioId, parentAudioPlugin, looping, playInBackground);
     player.setDataSource(afd.getFileDescriptor(), afd.getStartOffset(), afd.getLength());
-    player.prepare();
+    prepareAsync();
   }
 
   /**
@@ -66,14 +64,33 @@ class LocalManagedMediaPlayer extends ManagedMediaPlayer {
       throws IOException {
     this(audioId, parentAudioPlugin, looping, playInBackground);
     player.setDataSource(path);
-    player.prepare();
+    prepareAsync();
+  }
+
+  /**
+   * Create a LocalManagedMediaPlayer from a MediaDataSource, e.g. a {@link
+   * StreamingMediaDataSource}. Requires Android M or later.
+   *
+   * @throws IOException if underlying MediaPlayer cannot load the MediaDataSource.
+   */
+  public LocalManagedMediaPlayer(
+      String audioId,
+      MediaDataSource dataSource,
+      AudiofileplayerPlugin parentAudioPlugin,
+      boolean looping,
+      boolean playInBackground)
+      throws IOException {
+    this(audioId, parentAudioPlugin, looping, playInBackground);
+    player.setDataSource(dataSource);
+    prepareAsync();
   }
 
   /**
    * Create a ManagedMediaPlayer from a byte array.
    *
-   * <p>Uses {@link android.media.MediaPlayer#setDataSource(android.media.MediaDataSource)} if
-   * available. Otherwise falls back to writing the byte[] to disk and reading it back.
+   * <p>Uses {@link android.media.MediaPlayer#setDataSource(android.media.MediaDataSource)} with a
+   * direct buffer if available. Otherwise falls back to writing the byte[] to disk and reading it
+   * back.
    *
    * @throws IllegalArgumentException if BufferMediaDataSource is invalid.
    * @throws IOException if underlying MediaPlayer cannot load BufferMediaDataSource or
@@ -89,7 +106,8 @@ class LocalManagedMediaPlayer extends ManagedMediaPlayer {
       throws IOException, IllegalArgumentException, IllegalStateException {
     this(audioId, parentAudioPlugin, looping, playInBackground);
     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-      player.setDataSource(new BufferMediaDataSource(audioBytes));
+      // Copy off-heap, so that a long clip is not held on the Java heap while it plays.
+      player.setDataSource(BufferMediaDataSource.offHeapCopyOf(audioBytes));
     } else {
       // On older SDK versions, write the byte[] to disk, then read as FileDescriptor.
       File tempAudioFile =
@@ -102,6 +120,6 @@ class LocalManagedMediaPlayer extends ManagedMediaPlayer {
       player.setDataSource(fis.getFD());
       fis.close();
     }
-    player.prepare();
+    prepareAsync();
   }
 }
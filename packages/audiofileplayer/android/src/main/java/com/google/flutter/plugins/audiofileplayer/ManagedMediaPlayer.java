@@ -2,89 +2,146 @@ package com.google.flutter.plugins.audiofileplayer;
 
 import android.media.MediaPlayer;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.util.Log;
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
 
-/** Base class for wrapping a MediaPlayer for use by AudiofileplayerPlugin. */
-abstract class ManagedMediaPlayer
+/**
+ * Base class for wrapping a MediaPlayer for use by AudiofileplayerPlugin.
+ *
+ * <p>Loading occurs asynchronously via {@link MediaPlayer#prepareAsync()}: subclasses set a data
+ * source and call {@link #prepareAsync()}, and the result is reported to the {@link
+ * ManagedPlayer.OnLoadListener}. Callers may call all other methods immediately (i.e. before
+ * loading is complete); these will, if necessary, be delayed and re-called internally upon loading
+ * completion.
+ */
+abstract class ManagedMediaPlayer extends ManagedPlayer
     implements MediaPlayer.OnCompletionListener,
         MediaPlayer.OnErrorListener,
-        MediaPlayer.OnSeekCompleteListener {
+        MediaPlayer.OnSeekCompleteListener,
+        MediaPlayer.OnPreparedListener {
   private static final String TAG = ManagedMediaPlayer.class.getSimpleName();
-  public static final int PLAY_TO_END = -1;
 
-  interface OnSeekCompleteListener {
-    /** Called when asynchronous seeking has completed. */
-    void onSeekComplete();
-  }
-
-  protected final AudiofileplayerPlugin parentAudioPlugin;
-  protected final String audioId;
-  protected final boolean playInBackground;
   protected final MediaPlayer player;
+  private final boolean looping;
   final Handler handler;
   final Runnable pauseAtEndpointRunnable;
-  private OnSeekCompleteListener onSeekCompleteListener;
-
-  /** Runnable which repeatedly sends the player's position. */
-  private final Runnable updatePositionData =
-      new Runnable() {
-        @Override
-        public void run() {
-          try {
-            if (player.isPlaying()) {
-              double positionSeconds = (double) player.getCurrentPosition() / 1000.0;
-              parentAudioPlugin.handlePosition(audioId, positionSeconds);
-            }
-            handler.postDelayed(this, 250);
-          } catch (Exception e) {
-            Log.e(TAG, "Could not schedule position update for player", e);
-          }
-        }
-      };
+  private boolean isPrepared;
+  // Set by release(); a player released while loading is released once it has prepared.
+  private boolean isReleased;
+  // A list of runnables to run once onPrepared() is called.
+  private final List<Runnable> onPreparedRunnables = new ArrayList<>();
+  private long positionIntervalMs = PositionTicker.DEFAULT_INTERVAL_MS;
+  // When play and seek were last called, per SystemClock.elapsedRealtime(), or -1 once recorded.
+  private long playRequestedMs = -1;
+  private long seekRequestedMs = -1;
 
   protected ManagedMediaPlayer(
       String audioId,
       AudiofileplayerPlugin parentAudioPlugin,
       boolean looping,
       boolean playInBackground) {
-    this.parentAudioPlugin = parentAudioPlugin;
-    this.audioId = audioId;
-    this.playInBackground = playInBackground;
-    player = new MediaPlayer();
+    super(audioId, parentAudioPlugin, playInBackground);
+    this.looping = looping;
+    player = parentAudioPlugin.getPlayerPool().acquire();
     player.setLooping(looping);
+    player.setOnErrorListener(this);
+    player.setOnCompletionListener(this);
+    player.setOnSeekCompleteListener(this);
+    player.setOnPreparedListener(this);
 
     pauseAtEndpointRunnable = new PauseAtEndpointRunnable(this);
 
     handler = new Handler();
-    handler.post(updatePositionData);
   }
 
-  public void setOnSeekCompleteListener(OnSeekCompleteListener onSeekCompleteListener) {
-    this.onSeekCompleteListener = onSeekCompleteListener;
+  /**
+   * Sets how often the player's position is sent during playback, no more often than {@link
+   * PositionTicker#MIN_INTERVAL_MS}.
+   */
+  void setPositionIntervalMs(long positionIntervalMs) {
+    this.positionIntervalMs = Math.max(PositionTicker.MIN_INTERVAL_MS, positionIntervalMs);
   }
 
-  public String getAudioId() {
-    return audioId;
+  long getPositionIntervalMs() {
+    return positionIntervalMs;
   }
 
-  public double getDurationSeconds() {
-    return (double) player.getDuration() / 1000.0; // Convert ms to seconds.
+  /** Starts asynchronous loading, once the subclass has set a data source. */
+  protected void prepareAsync() {
+    player.prepareAsync();
+  }
+
+  @Override
+  public void onPrepared(MediaPlayer mediaPlayer) {
+    isPrepared = true;
+    notifyLoadComplete(true);
+    if (isReleased) {
+      onPreparedRunnables.clear();
+      releasePlayer();
+      return;
+    }
+    for (Runnable r : onPreparedRunnables) {
+      r.run();
+    }
+    onPreparedRunnables.clear();
+    parentAudioPlugin.getPlaybackQueue().onPlayerPrepared(this);
+  }
+
+  boolean isPrepared() {
+    return isPrepared;
+  }
+
+  boolean isLooping() {
+    return looping;
+  }
+
+  boolean isPlaying() {
+    return isPrepared && player.isPlaying();
   }
 
   /**
-   * Plays the audio.
+   * Sets the player which MediaPlayer starts once this one completes, or null for none.
    *
-   * @param endpointMs the time, in milleseconds, to play to. To play until the end, pass {@link
-   *     #PLAY_TO_END}.
+   * <p>Both players must be prepared.
    */
+  void setNextPlayer(ManagedMediaPlayer next) {
+    try {
+      player.setNextMediaPlayer(next == null ? null : next.player);
+    } catch (IllegalStateException | IllegalArgumentException e) {
+      Log.e(TAG, "Could not set next player for " + audioId, e);
+    }
+  }
+
+  /** Called when MediaPlayer has started this player, as the next player of a completed one. */
+  void onStartedAsNext() {
+    parentAudioPlugin.getPositionTicker().start(this);
+  }
+
+  @Override
+  public double getDurationSeconds() {
+    return (double) player.getDuration() / 1000.0; // Convert ms to seconds.
+  }
+
+  @Override
   public void play(boolean playFromStart, int endpointMs) {
+    if (playRequestedMs < 0) {
+      playRequestedMs = SystemClock.elapsedRealtime();
+    }
+    if (!isPrepared) {
+      onPreparedRunnables.add(() -> play(playFromStart, endpointMs));
+      return;
+    }
     if (playFromStart) {
       player.seekTo(0);
     }
     if (endpointMs == PLAY_TO_END) {
       handler.removeCallbacks(pauseAtEndpointRunnable);
       player.start();
+      recordPlayStarted();
+      parentAudioPlugin.getPositionTicker().start(this);
     } else {
       // If there is an endpoint, check that it is in the future, then start playback and schedule
       // the pausing after a duration.
@@ -93,43 +150,94 @@ abstract class ManagedMediaPlayer
       Log.i(TAG, "Called play() at " + positionMs + " ms, to play for " + durationMs + " ms.");
       if (durationMs <= 0) {
         Log.w(TAG, "Called play() at position after endpoint. No playback occurred.");
+        playRequestedMs = -1;
         return;
       }
       handler.removeCallbacks(pauseAtEndpointRunnable);
       player.start();
+      recordPlayStarted();
+      parentAudioPlugin.getPositionTicker().start(this);
       handler.postDelayed(pauseAtEndpointRunnable, durationMs);
     }
   }
 
-  /** Releases the underlying MediaPlayer. */
+  /**
+   * Stops the underlying MediaPlayer, and returns it to the plugin's {@link MediaPlayerPool}.
+   *
+   * <p>A player which is still loading is released once it has prepared.
+   */
+  @Override
   public void release() {
-    player.stop();
-    player.reset();
-    player.release();
-    player.setOnErrorListener(null);
-    player.setOnCompletionListener(null);
-    player.setOnPreparedListener(null);
-    player.setOnSeekCompleteListener(null);
+    if (isReleased) {
+      return;
+    }
+    isReleased = true;
+    if (isPrepared) {
+      releasePlayer();
+    }
+  }
+
+  // Returns the MediaPlayer to the pool, or releases it if the plugin has since been detached and
+  // has no pool.
+  private void releasePlayer() {
     handler.removeCallbacksAndMessages(null);
+    PositionTicker positionTicker = parentAudioPlugin.getPositionTicker();
+    if (positionTicker != null) {
+      positionTicker.stop(this);
+    }
+    MediaPlayerPool playerPool = parentAudioPlugin.getPlayerPool();
+    if (playerPool != null) {
+      playerPool.release(player);
+    } else {
+      player.release();
+    }
+  }
+
+  // Records the time from the play call to the start of playback, which includes any wait for the
+  // player to load.
+  private void recordPlayStarted() {
+    parentAudioPlugin.getMetrics().recordLatencySince("play", playRequestedMs);
+    playRequestedMs = -1;
   }
 
+  @Override
   public void seek(double positionSeconds) {
+    if (seekRequestedMs < 0) {
+      seekRequestedMs = SystemClock.elapsedRealtime();
+    }
+    if (!isPrepared) {
+      onPreparedRunnables.add(() -> seek(positionSeconds));
+      return;
+    }
     int positionMilliseconds = (int) (positionSeconds * 1000.0);
     player.seekTo(positionMilliseconds);
   }
 
+  @Override
   public void setVolume(double volume) {
+    if (!isPrepared) {
+      onPreparedRunnables.add(() -> setVolume(volume));
+      return;
+    }
     player.setVolume((float) volume, (float) volume);
   }
 
+  @Override
   public void pause() {
+    if (!isPrepared) {
+      onPreparedRunnables.add(this::pause);
+      return;
+    }
     player.pause();
+    parentAudioPlugin.getPositionTicker().stop(this);
   }
 
   @Override
   public void onCompletion(MediaPlayer mediaPlayer) {
+    parentAudioPlugin.getPositionTicker().stop(this);
     player.seekTo(0);
     parentAudioPlugin.handleCompletion(this.audioId);
+    parentAudioPlugin.getPlaybackQueue().onPlayerCompletion(this);
   }
 
   /**
@@ -137,18 +245,31 @@ abstract class ManagedMediaPlayer
    *
    * <p>NOTE: {@link #onError(MediaPlayer, int, int)} must be properly implemented and return {@code
    * true} otherwise errors will repeatedly call {@link #onCompletion(MediaPlayer)}.
+   *
+   * <p>An error before loading completes (e.g. invalid URLs and lack of connectivity for remote
+   * audio) fails the load, and the underlying MediaPlayer is returned to the pool.
    */
   @Override
   public boolean onError(MediaPlayer mp, int what, int extra) {
     Log.e(TAG, "onError: what:" + what + " extra: " + extra);
+    parentAudioPlugin.getMetrics().increment("errors." + what + "." + extra);
+    if (!isPrepared) {
+      onPreparedRunnables.clear();
+      isReleased = true;
+      releasePlayer();
+      notifyLoadComplete(false);
+    }
     return true;
   }
 
   @Override
   public void onSeekComplete(MediaPlayer mp) {
-    if (onSeekCompleteListener != null) {
-      onSeekCompleteListener.onSeekComplete();
+    // Only seeks requested via seek() are recorded, not those to restart playback.
+    if (seekRequestedMs >= 0) {
+      parentAudioPlugin.getMetrics().recordLatencySince("seek", seekRequestedMs);
+      seekRequestedMs = -1;
     }
+    notifySeekComplete();
   }
 
   /** Pauses the player and notifies of completion. */
@@ -170,6 +291,7 @@ abstract class ManagedMediaPlayer
         return;
       }
       managedMediaPlayer.player.pause();
+      managedMediaPlayer.parentAudioPlugin.getPositionTicker().stop(managedMediaPlayer);
       managedMediaPlayer.parentAudioPlugin.handleCompletion(managedMediaPlayer.audioId);
     }
   }
@@ -0,0 +1,89 @@
+package com.google.flutter.plugins.audiofileplayer;
+
+/**
+ * Base class for the players which AudiofileplayerPlugin creates, triggers, and destroys.
+ *
+ * <p>Implemented by {@link ManagedMediaPlayer} (backed by a MediaPlayer) and by {@link
+ * SoundPoolManagedPlayer} (backed by a shared SoundPool, for low-latency short clips).
+ */
+abstract class ManagedPlayer {
+  public static final int PLAY_TO_END = -1;
+
+  interface OnLoadListener {
+    /** Called when asynchronous loading has completed, either successfully or unsuccessfully. */
+    void onLoadComplete(boolean success);
+  }
+
+  interface OnSeekCompleteListener {
+    /** Called when asynchronous seeking has completed. */
+    void onSeekComplete();
+  }
+
+  protected final AudiofileplayerPlugin parentAudioPlugin;
+  protected final String audioId;
+  protected final boolean playInBackground;
+  private OnLoadListener onLoadListener;
+  private OnSeekCompleteListener onSeekCompleteListener;
+  // The handle by which Dart refers to the player on the binary channel, or 0 if it has none.
+  private int handle;
+
+  protected ManagedPlayer(
+      String audioId, AudiofileplayerPlugin parentAudioPlugin, boolean playInBackground) {
+    this.parentAudioPlugin = parentAudioPlugin;
+    this.audioId = audioId;
+    this.playInBackground = playInBackground;
+  }
+
+  public void setOnLoadListener(OnLoadListener onLoadListener) {
+    this.onLoadListener = onLoadListener;
+  }
+
+  public void setOnSeekCompleteListener(OnSeekCompleteListener onSeekCompleteListener) {
+    this.onSeekCompleteListener = onSeekCompleteListener;
+  }
+
+  public String getAudioId() {
+    return audioId;
+  }
+
+  int getHandle() {
+    return handle;
+  }
+
+  void setHandle(int handle) {
+    this.handle = handle;
+  }
+
+  public abstract double getDurationSeconds();
+
+  /**
+   * Plays the audio.
+   *
+   * @param endpointMs the time, in milleseconds, to play to. To play until the end, pass {@link
+   *     #PLAY_TO_END}.
+   */
+  public abstract void play(boolean playFromStart, int endpointMs);
+
+  /** Releases the underlying audio resources. */
+  public abstract void release();
+
+  public abstract void seek(double positionSeconds);
+
+  public abstract void setVolume(double volume);
+
+  public abstract void pause();
+
+  /** Notifies the {@link OnLoadListener}, if any, that loading has completed. */
+  protected void notifyLoadComplete(boolean success) {
+    if (onLoadListener != null) {
+      onLoadListener.onLoadComplete(success);
+    }
+  }
+
+  /** Notifies the {@link OnSeekCompleteListener}, if any, that a seek has completed. */
+  protected void notifySeekComplete() {
+    if (onSeekCompleteListener != null) {
+      onSeekCompleteListener.onSeekComplete();
+    }
+  }
+}
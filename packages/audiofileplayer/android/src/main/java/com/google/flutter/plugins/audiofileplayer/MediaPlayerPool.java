@@ -0,0 +1,152 @@
+package com.google.flutter.plugins.audiofileplayer;
+
+import android.media.MediaPlayer;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A bounded pool of idle {@link MediaPlayer}s, reused across load/release cycles.
+ *
+ * <p>Creating a MediaPlayer allocates native decoder resources, which is costly when many short
+ * clips are loaded and released. Released players are reset and kept here (up to a maximum size)
+ * so that a subsequent {@link #acquire()} can skip that setup. Players idle for longer than the
+ * idle timeout are released.
+ *
+ * <p>All methods must be called on the main thread.
+ */
+final class MediaPlayerPool {
+  private static final String TAG = MediaPlayerPool.class.getSimpleName();
+  static final int DEFAULT_MAX_SIZE = 4;
+  static final long DEFAULT_IDLE_TIMEOUT_MS = 30000;
+
+  /** An idle player, and the time at which it was returned to the pool. */
+  private static final class IdlePlayer {
+    final MediaPlayer player;
+    final long idleSinceMs;
+
+    IdlePlayer(MediaPlayer player, long idleSinceMs) {
+      this.player = player;
+      this.idleSinceMs = idleSinceMs;
+    }
+  }
+
+  // Most recently released players are at the tail; acquire() takes from the tail, and eviction
+  // removes from the head.
+  private final ArrayDeque<IdlePlayer> idlePlayers = new ArrayDeque<>();
+  private final Handler handler = new Handler();
+  private int maxSize = DEFAULT_MAX_SIZE;
+  private long idleTimeoutMs = DEFAULT_IDLE_TIMEOUT_MS;
+  private int hitCount;
+  private int missCount;
+  private int evictionCount;
+
+  /** Runnable which releases players that have been idle for longer than the idle timeout. */
+  private final Runnable evictIdlePlayers =
+      new Runnable() {
+        @Override
+        public void run() {
+          long nowMs = SystemClock.uptimeMillis();
+          while (!idlePlayers.isEmpty()
+              && nowMs - idlePlayers.peekFirst().idleSinceMs >= idleTimeoutMs) {
+            evict(idlePlayers.pollFirst().player);
+          }
+          scheduleEviction();
+        }
+      };
+
+  /** Returns a player in the Idle state, reusing a pooled one if available. */
+  MediaPlayer acquire() {
+    IdlePlayer idlePlayer = idlePlayers.pollLast();
+    if (idlePlayer != null) {
+      hitCount++;
+      if (idlePlayers.isEmpty()) {
+        handler.removeCallbacks(evictIdlePlayers);
+      }
+      return idlePlayer.player;
+    }
+    missCount++;
+    return new MediaPlayer();
+  }
+
+  /**
+   * Returns a player to the pool.
+   *
+   * <p>The player is reset, its listeners are cleared, and it is either kept for reuse or (if the
+   * pool is full, or it cannot be reset) released.
+   */
+  void release(MediaPlayer player) {
+    player.setOnErrorListener(null);
+    player.setOnCompletionListener(null);
+    player.setOnPreparedListener(null);
+    player.setOnSeekCompleteListener(null);
+    try {
+      player.reset();
+      player.setVolume(1.0f, 1.0f);
+    } catch (IllegalStateException e) {
+      Log.w(TAG, "Could not reset player; releasing it instead of pooling.", e);
+      player.release();
+      return;
+    }
+    if (idlePlayers.size() >= maxSize) {
+      evict(player);
+      return;
+    }
+    idlePlayers.addLast(new IdlePlayer(player, SystemClock.uptimeMillis()));
+    if (idlePlayers.size() == 1) {
+      scheduleEviction();
+    }
+  }
+
+  /** Sets the maximum number of idle players, releasing any beyond it. */
+  void setMaxSize(int maxSize) {
+    this.maxSize = Math.max(0, maxSize);
+    while (idlePlayers.size() > this.maxSize) {
+      evict(idlePlayers.pollFirst().player);
+    }
+  }
+
+  /** Sets how long a player may stay idle in the pool before it is released. */
+  void setIdleTimeoutMs(long idleTimeoutMs) {
+    this.idleTimeoutMs = Math.max(0, idleTimeoutMs);
+    handler.removeCallbacks(evictIdlePlayers);
+    scheduleEviction();
+  }
+
+  /** Releases all idle players. Counters are kept. */
+  void clear() {
+    handler.removeCallbacks(evictIdlePlayers);
+    while (!idlePlayers.isEmpty()) {
+      idlePlayers.pollFirst().player.release();
+    }
+  }
+
+  /** Returns the pool's counters, for sizing the pool. */
+  Map<String, Object> getStats() {
+    Map<String, Object> stats = new HashMap<>();
+    stats.put("hits", hitCount);
+    stats.put("misses", missCount);
+    stats.put("evictions", evictionCount);
+    stats.put("idle", idlePlayers.size());
+    stats.put("maxSize", maxSize);
+    return stats;
+  }
+
+  private void evict(MediaPlayer player) {
+    evictionCount++;
+    player.release();
+  }
+
+  // Schedules eviction for when the oldest idle player times out.
+  private void scheduleEviction() {
+    IdlePlayer oldest = idlePlayers.peekFirst();
+    if (oldest == null) {
+      return;
+    }
+    long delayMs = oldest.idleSinceMs + idleTimeoutMs - SystemClock.uptimeMillis();
+    handler.postDelayed(evictIdlePlayers, Math.max(0, delayMs));
+  }
+}
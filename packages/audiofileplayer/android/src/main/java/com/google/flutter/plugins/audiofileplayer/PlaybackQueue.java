@@ -0,0 +1,207 @@
+package com.google.flutter.plugins.audiofileplayer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An ordered queue of loaded {@link ManagedMediaPlayer}s, played back to back without gaps.
+ *
+ * <p>The current player is chained to the following one via {@link
+ * android.media.MediaPlayer#setNextMediaPlayer}, so that MediaPlayer starts the following player
+ * itself as the current one completes, with no gap and no round trip to Dart. The queue then
+ * advances, chains the next pair, and tells the plugin, which informs Dart.
+ *
+ * <p>Queued players are loaded (and so prepared) by Dart ahead of time. A player which is still
+ * loading is chained once it is prepared. Looping players are not queued, as they never complete.
+ *
+ * <p>All methods must be called on the main thread.
+ */
+final class PlaybackQueue {
+
+  interface Listener {
+    /**
+     * Called when the current player changes, or is restarted by a skip.
+     *
+     * @param stoppedAudioId the previous current player, if the queue stopped or completed it.
+     * @param audioId the new current player, or null if the queue is empty or has finished.
+     * @param playing whether the new current player is playing.
+     */
+    void onQueueAdvance(String stoppedAudioId, String audioId, boolean playing);
+  }
+
+  private final Listener listener;
+  private final List<ManagedMediaPlayer> players = new ArrayList<>();
+  // Index of the current player; equal to the size of the queue once it has finished.
+  private int currentIndex;
+  // The pair of players currently chained via setNextMediaPlayer, if any.
+  private ManagedMediaPlayer chainedPlayer;
+  private ManagedMediaPlayer chainedNextPlayer;
+
+  PlaybackQueue(Listener listener) {
+    this.listener = listener;
+  }
+
+  int size() {
+    return players.size();
+  }
+
+  /** Inserts players at an index; an index equal to the size of the queue appends them. */
+  void insert(int index, List<ManagedMediaPlayer> newPlayers) {
+    if (index < 0 || index > players.size()) {
+      throw new IndexOutOfBoundsException("Invalid queue index: " + index);
+    }
+    // Keep the current player current. If the queue had finished, players appended to it become
+    // current.
+    ManagedMediaPlayer previousCurrent = getPlayer(currentIndex);
+    players.addAll(index, newPlayers);
+    if (index < currentIndex || (index == currentIndex && previousCurrent != null)) {
+      currentIndex += newPlayers.size();
+    }
+    if (previousCurrent == null && !newPlayers.isEmpty()) {
+      listener.onQueueAdvance(null, getPlayer(currentIndex).getAudioId(), false);
+    }
+    chain();
+  }
+
+  /**
+   * Removes all occurrences of a player from the queue.
+   *
+   * <p>If it was current and playing, the player which takes its place starts playing.
+   */
+  void remove(ManagedMediaPlayer player) {
+    for (int i = players.size() - 1; i >= 0; i--) {
+      if (players.get(i) != player) {
+        continue;
+      }
+      if (i == currentIndex) {
+        boolean wasPlaying = player.isPlaying();
+        stop(player);
+        players.remove(i);
+        ManagedMediaPlayer newCurrent = getPlayer(currentIndex);
+        if (newCurrent != null && wasPlaying) {
+          newCurrent.play(true, ManagedPlayer.PLAY_TO_END);
+        }
+        listener.onQueueAdvance(
+            player.getAudioId(),
+            newCurrent == null ? null : newCurrent.getAudioId(),
+            newCurrent != null && wasPlaying);
+      } else {
+        players.remove(i);
+        if (i < currentIndex) {
+          currentIndex--;
+        }
+      }
+    }
+    chain();
+  }
+
+  /**
+   * Makes the player {@code offset} places from the current one current, starting it from the
+   * beginning if the current player was playing.
+   */
+  void skip(int offset) {
+    int targetIndex = currentIndex + offset;
+    if (targetIndex < 0 || targetIndex >= players.size()) {
+      throw new IndexOutOfBoundsException("Cannot skip to queue index: " + targetIndex);
+    }
+    ManagedMediaPlayer current = getPlayer(currentIndex);
+    boolean wasPlaying = current != null && current.isPlaying();
+    if (current != null) {
+      stop(current);
+    }
+    unchain();
+    currentIndex = targetIndex;
+    ManagedMediaPlayer target = players.get(targetIndex);
+    if (wasPlaying) {
+      target.play(true, ManagedPlayer.PLAY_TO_END);
+    } else {
+      target.seek(0);
+    }
+    listener.onQueueAdvance(
+        current == null ? null : current.getAudioId(), target.getAudioId(), wasPlaying);
+    chain();
+  }
+
+  /** Empties the queue, leaving its players as they are. */
+  void clear() {
+    unchain();
+    boolean hadCurrent = getPlayer(currentIndex) != null;
+    players.clear();
+    currentIndex = 0;
+    if (hadCurrent) {
+      listener.onQueueAdvance(null, null, false);
+    }
+  }
+
+  /** Called by a player once it has prepared, so that it may be chained. */
+  void onPlayerPrepared(ManagedMediaPlayer player) {
+    if (players.contains(player)) {
+      chain();
+    }
+  }
+
+  /**
+   * Called by a player on completion. If it was current, advances the queue; the following player
+   * has already been started by MediaPlayer if it was chained.
+   */
+  void onPlayerCompletion(ManagedMediaPlayer player) {
+    if (getPlayer(currentIndex) != player) {
+      return;
+    }
+    boolean nextStarted = chainedPlayer == player && chainedNextPlayer != null;
+    unchain();
+    currentIndex++;
+    ManagedMediaPlayer next = getPlayer(currentIndex);
+    if (next != null) {
+      if (nextStarted) {
+        next.onStartedAsNext();
+      } else {
+        // The next player was not yet prepared when this one completed, so start it late.
+        next.play(true, ManagedPlayer.PLAY_TO_END);
+      }
+    }
+    listener.onQueueAdvance(
+        player.getAudioId(), next == null ? null : next.getAudioId(), next != null);
+    chain();
+  }
+
+  private ManagedMediaPlayer getPlayer(int index) {
+    return index >= 0 && index < players.size() ? players.get(index) : null;
+  }
+
+  private void stop(ManagedMediaPlayer player) {
+    player.pause();
+    player.seek(0);
+  }
+
+  // Chains the current player to the following one, if both are prepared.
+  private void chain() {
+    ManagedMediaPlayer current = getPlayer(currentIndex);
+    ManagedMediaPlayer next = getPlayer(currentIndex + 1);
+    if (current == null
+        || next == null
+        || current == next
+        || !current.isPrepared()
+        || !next.isPrepared()) {
+      current = null;
+      next = null;
+    }
+    if (current == chainedPlayer && next == chainedNextPlayer) {
+      return;
+    }
+    unchain();
+    if (current != null) {
+      current.setNextPlayer(next);
+      chainedPlayer = current;
+      chainedNextPlayer = next;
+    }
+  }
+
+  private void unchain() {
+    if (chainedPlayer != null) {
+      chainedPlayer.setNextPlayer(null);
+    }
+    chainedPlayer = null;
+    chainedNextPlayer = null;
+  }
+}
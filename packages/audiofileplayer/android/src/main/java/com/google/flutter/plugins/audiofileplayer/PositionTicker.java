@@ -0,0 +1,154 @@
+package com.google.flutter.plugins.audiofileplayer;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A single ticker which sends the positions of all playing {@link ManagedMediaPlayer}s.
+ *
+ * <p>Each player is sampled at its own interval, but all positions due at a tick are sent to the
+ * plugin together, and a position is only sent if it has changed since it was last sent. The
+ * positions of players which have handles are packed into arrays, to be sent over the binary
+ * channel, and those of other players are sent by audioId. The ticker only runs while at least one
+ * player is playing.
+ *
+ * <p>All methods must be called on the main thread.
+ */
+final class PositionTicker {
+  private static final String TAG = PositionTicker.class.getSimpleName();
+  static final long DEFAULT_INTERVAL_MS = 250;
+  // About one frame; shorter intervals would keep the main thread busy with ticks.
+  static final long MIN_INTERVAL_MS = 16;
+  private static final String TRACE_SECTION =
+      AudiofileplayerPlugin.TRACE_SECTION_PREFIX + "positionTick";
+
+  /** Sampling state for a playing player. */
+  private static final class Entry {
+    final ManagedMediaPlayer player;
+    long nextSampleMs;
+    int lastSentPositionMs = -1;
+
+    Entry(ManagedMediaPlayer player, long nextSampleMs) {
+      this.player = player;
+      this.nextSampleMs = nextSampleMs;
+    }
+  }
+
+  private final AudiofileplayerPlugin parentAudioPlugin;
+  private final Handler handler = new Handler();
+  // Playing players, keyed by audioId.
+  private final Map<String, Entry> entries = new LinkedHashMap<>();
+  // Reused from tick to tick, to hold the positions of players which have handles.
+  private double[] handlePositionSeconds = new double[0];
+  private int[] handles = new int[0];
+
+  private final Runnable tick =
+      new Runnable() {
+        @Override
+        public void run() {
+          AudiofileplayerPlugin.beginTraceSection(TRACE_SECTION);
+          try {
+            sendPositions();
+          } finally {
+            AudiofileplayerPlugin.endTraceSection();
+          }
+          scheduleTick();
+        }
+      };
+
+  PositionTicker(AudiofileplayerPlugin parentAudioPlugin) {
+    this.parentAudioPlugin = parentAudioPlugin;
+  }
+
+  /** Starts sending the positions of a player which has started playback. */
+  void start(ManagedMediaPlayer player) {
+    if (entries.containsKey(player.getAudioId())) {
+      return;
+    }
+    entries.put(player.getAudioId(), new Entry(player, SystemClock.uptimeMillis()));
+    handler.removeCallbacks(tick);
+    handler.post(tick);
+  }
+
+  /** Stops sending the positions of a player which has paused or been released. */
+  void stop(ManagedMediaPlayer player) {
+    entries.remove(player.getAudioId());
+    if (entries.isEmpty()) {
+      handler.removeCallbacks(tick);
+    }
+  }
+
+  /** Stops sending the positions of all players. */
+  void stopAll() {
+    entries.clear();
+    handler.removeCallbacks(tick);
+  }
+
+  // Samples the players which are due, and sends the positions which have changed.
+  private void sendPositions() {
+    long nowMs = SystemClock.uptimeMillis();
+    if (handles.length < entries.size()) {
+      handlePositionSeconds = new double[entries.size()];
+      handles = new int[entries.size()];
+    }
+    int handleCount = 0;
+    Map<String, Double> positions = null;
+    Iterator<Entry> iterator = entries.values().iterator();
+    while (iterator.hasNext()) {
+      Entry entry = iterator.next();
+      if (nowMs < entry.nextSampleMs) {
+        continue;
+      }
+      try {
+        if (!entry.player.player.isPlaying()) {
+          // Stopped without telling the ticker, e.g. on completion.
+          iterator.remove();
+          continue;
+        }
+        int positionMs = entry.player.player.getCurrentPosition();
+        if (positionMs != entry.lastSentPositionMs) {
+          entry.lastSentPositionMs = positionMs;
+          int handle = entry.player.getHandle();
+          if (handle != 0) {
+            handlePositionSeconds[handleCount] = (double) positionMs / 1000.0;
+            handles[handleCount] = handle;
+            handleCount++;
+          } else {
+            if (positions == null) {
+              positions = new HashMap<>();
+            }
+            positions.put(entry.player.getAudioId(), (double) positionMs / 1000.0);
+          }
+        }
+      } catch (IllegalStateException e) {
+        Log.e(TAG, "Could not read position of player " + entry.player.getAudioId(), e);
+        iterator.remove();
+        continue;
+      }
+      entry.nextSampleMs = nowMs + entry.player.getPositionIntervalMs();
+    }
+    if (handleCount > 0) {
+      parentAudioPlugin.handlePositions(handleCount, handlePositionSeconds, handles);
+    }
+    if (positions != null) {
+      parentAudioPlugin.handlePositions(positions);
+    }
+  }
+
+  // Schedules the next tick for when the earliest sample is due, or stops if nothing is playing.
+  private void scheduleTick() {
+    if (entries.isEmpty()) {
+      return;
+    }
+    long nextSampleMs = Long.MAX_VALUE;
+    for (Entry entry : entries.values()) {
+      nextSampleMs = Math.min(nextSampleMs, entry.nextSampleMs);
+    }
+    handler.postAtTime(tick, nextSampleMs);
+  }
+}
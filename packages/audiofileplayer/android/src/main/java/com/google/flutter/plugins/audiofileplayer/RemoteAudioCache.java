@@ -0,0 +1,441 @@
+package com.google.flutter.plugins.audiofileplayer;
+
+import android.util.Log;
+import java.io.File;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A size-capped LRU disk cache of remote audio files, under the app's cache directory.
+ *
+ * <p>A URL's file is either complete, or partial (from an interrupted download, which is resumed
+ * by the next download of that URL). At most one {@link RemoteAudioDownload} runs per URL; readers
+ * of a URL which is already downloading share it. When the cache exceeds its maximum size, the
+ * least recently used files which are not being downloaded are deleted.
+ *
+ * <p>URLs may be prefetched ahead of playback. Prefetches wait in a priority queue, from which
+ * they are started in priority order, a few at a time, on a separate executor from downloads for
+ * playback, so that playback never waits behind them.
+ *
+ * <p>The cache is disabled (its maximum size is 0) until enabled via {@link #setMaxSizeBytes}.
+ * Indexing the files on disk, deleting them, and marking them as used run on a separate thread,
+ * and downloads create and write their files on their own threads, so that callers on the main
+ * thread never wait for the disk.
+ *
+ * <p>All methods may be called on any thread.
+ */
+final class RemoteAudioCache {
+  private static final String TAG = RemoteAudioCache.class.getSimpleName();
+  private static final String DIRECTORY_NAME = "audiofileplayer_remote";
+  private static final String PARTIAL_SUFFIX = ".partial";
+  private static final int MAX_CONCURRENT_PREFETCHES = 2;
+
+  private final File directory;
+  private final ExecutorService downloadExecutor = Executors.newCachedThreadPool();
+  private final ExecutorService diskExecutor = Executors.newSingleThreadExecutor();
+  private final ExecutorService prefetchExecutor = Executors.newCachedThreadPool();
+  private long maxSizeBytes;
+  private boolean indexed;
+  // Sizes of the cached files, keyed by file name, least recently used first.
+  private final LinkedHashMap<String, Long> fileSizes = new LinkedHashMap<>(16, 0.75f, true);
+  private long sizeBytes;
+  // Running downloads, keyed by URL, and how many readers each has.
+  private final Map<String, RemoteAudioDownload> downloads = new HashMap<>();
+  // Cancelled downloads which have yet to stop, keyed by URL. A new download of the URL waits for
+  // them before writing to the partial file.
+  private final Map<String, RemoteAudioDownload> stoppingDownloads = new HashMap<>();
+  private final Map<RemoteAudioDownload, Integer> downloadReaderCounts = new HashMap<>();
+  // Prefetches waiting to run, highest priority first, and keyed by URL.
+  private final PriorityQueue<PrefetchTask> prefetchQueue = new PriorityQueue<>();
+  private final Map<String, PrefetchTask> queuedPrefetches = new HashMap<>();
+  // Running prefetch downloads, keyed by URL, and how many prefetch tasks are running.
+  private final Map<String, RemoteAudioDownload> runningPrefetches = new HashMap<>();
+  private int runningPrefetchTaskCount;
+  private long prefetchSequence;
+  private int prefetchCount;
+  private int hitCount;
+  private int missCount;
+  private int resumeCount;
+  private int evictionCount;
+
+  /** Downloads a URL ahead of playback, unless it is already cached or downloading. */
+  private final class PrefetchTask implements Runnable, Comparable<PrefetchTask> {
+    final String url;
+    final int priority;
+    final long sequence;
+
+    PrefetchTask(String url, int priority, long sequence) {
+      this.url = url;
+      this.priority = priority;
+      this.sequence = sequence;
+    }
+
+    @Override
+    public void run() {
+      try {
+        prefetch();
+      } finally {
+        synchronized (RemoteAudioCache.this) {
+          runningPrefetchTaskCount--;
+          startPrefetches();
+        }
+      }
+    }
+
+    private void prefetch() {
+      RemoteAudioDownload download;
+      synchronized (RemoteAudioCache.this) {
+        if (!isEnabled() || isCached(url) || downloads.containsKey(url)) {
+          return;
+        }
+        download = startDownload(url);
+        // The prefetch is the download's reader until it stops, or the prefetch is cancelled.
+        downloadReaderCounts.put(download, 1);
+        runningPrefetches.put(url, download);
+        prefetchCount++;
+      }
+      // Download on this prefetch thread, so that at most MAX_CONCURRENT_PREFETCHES run at once.
+      download.run();
+      synchronized (RemoteAudioCache.this) {
+        // A cancelled prefetch may already have been replaced by a new one.
+        if (runningPrefetches.get(url) == download) {
+          runningPrefetches.remove(url);
+        }
+      }
+    }
+
+    // Higher priorities first; equal priorities in the order they were requested.
+    @Override
+    public int compareTo(PrefetchTask other) {
+      if (priority != other.priority) {
+        return priority > other.priority ? -1 : 1;
+      }
+      return Long.compare(sequence, other.sequence);
+    }
+  }
+
+  RemoteAudioCache(File cacheDir) {
+    directory = new File(cacheDir, DIRECTORY_NAME);
+  }
+
+  synchronized boolean isEnabled() {
+    return maxSizeBytes > 0;
+  }
+
+  /**
+   * Sets the maximum size of the cache, deleting files beyond it. 0 disables the cache.
+   *
+   * <p>Files already on disk are indexed in the background, and are missed until then.
+   */
+  synchronized void setMaxSizeBytes(long maxSizeBytes) {
+    this.maxSizeBytes = Math.max(0, maxSizeBytes);
+    diskExecutor.execute(
+        () -> {
+          if (isEnabled()) {
+            index();
+          }
+          synchronized (this) {
+            trim();
+          }
+        });
+  }
+
+  /**
+   * Returns the complete cached file for a URL, or null if it is not cached.
+   *
+   * <p>The file is taken from the index without touching the disk. If it has since been deleted,
+   * e.g. by the system clearing the app's cache, the caller should report it via {@link
+   * #onCachedFileMissing}.
+   */
+  synchronized File getCachedFile(String url) {
+    if (!isEnabled()) {
+      return null;
+    }
+    if (!isCached(url)) {
+      return null;
+    }
+    File file = new File(directory, fileNameForUrl(url));
+    hitCount++;
+    // Persist recency across restarts, when the index is rebuilt from modification times.
+    diskExecutor.execute(() -> file.setLastModified(System.currentTimeMillis()));
+    return file;
+  }
+
+  /** Drops a file returned by {@link #getCachedFile} which turned out not to exist. */
+  synchronized void onCachedFileMissing(File file) {
+    hitCount--;
+    missCount++;
+    Long size = fileSizes.remove(file.getName());
+    if (size != null) {
+      sizeBytes -= size;
+    }
+  }
+
+  /**
+   * Returns the download of a URL which is not cached, starting or resuming it if needed.
+   *
+   * <p>Each call must be balanced by a call to {@link #releaseDownload}.
+   */
+  synchronized RemoteAudioDownload acquireDownload(String url) {
+    missCount++;
+    RemoteAudioDownload download = downloads.get(url);
+    if (download == null) {
+      download = startDownload(url);
+      downloadReaderCounts.put(download, 0);
+      downloadExecutor.execute(download);
+    }
+    Integer readerCount = downloadReaderCounts.get(download);
+    downloadReaderCounts.put(download, readerCount == null ? 1 : readerCount + 1);
+    return download;
+  }
+
+  /**
+   * Queues URLs to be downloaded ahead of playback, so that later loads play from the cache.
+   *
+   * <p>Higher priorities run first. Re-prefetching a queued URL updates its priority.
+   */
+  synchronized void prefetch(List<String> urls, int priority) {
+    for (String url : urls) {
+      PrefetchTask queuedTask = queuedPrefetches.remove(url);
+      if (queuedTask != null) {
+        prefetchQueue.remove(queuedTask);
+      } else if (isCached(url) || downloads.containsKey(url)) {
+        continue;
+      }
+      PrefetchTask task = new PrefetchTask(url, priority, prefetchSequence++);
+      queuedPrefetches.put(url, task);
+      prefetchQueue.add(task);
+    }
+    startPrefetches();
+  }
+
+  /**
+   * Cancels prefetches of the given URLs, or of all URLs if null.
+   *
+   * <p>Running prefetch downloads stop unless a player is reading them; their partial files are
+   * kept, to be resumed later.
+   */
+  synchronized void cancelPrefetches(List<String> urls) {
+    List<String> cancelledUrls = urls;
+    if (cancelledUrls == null) {
+      cancelledUrls = new ArrayList<>(queuedPrefetches.keySet());
+      cancelledUrls.addAll(runningPrefetches.keySet());
+    }
+    for (String url : cancelledUrls) {
+      PrefetchTask queuedTask = queuedPrefetches.remove(url);
+      if (queuedTask != null) {
+        prefetchQueue.remove(queuedTask);
+      }
+      RemoteAudioDownload download = runningPrefetches.remove(url);
+      if (download != null) {
+        releaseDownload(download);
+      }
+    }
+  }
+
+  /** Called when a reader no longer needs a download; cancels it if nothing else does. */
+  synchronized void releaseDownload(RemoteAudioDownload download) {
+    Integer readerCount = downloadReaderCounts.get(download);
+    if (readerCount == null) {
+      return;
+    }
+    if (readerCount > 1) {
+      downloadReaderCounts.put(download, readerCount - 1);
+      return;
+    }
+    downloadReaderCounts.remove(download);
+    if (!download.isFinished()) {
+      download.cancel();
+      // Later readers of the URL start a new download, rather than joining this one.
+      if (downloads.get(download.url) == download) {
+        downloads.remove(download.url);
+        stoppingDownloads.put(download.url, download);
+      }
+    }
+  }
+
+  /** Called on a download thread when a download resumes from its partial file. */
+  synchronized void onDownloadResumed() {
+    resumeCount++;
+  }
+
+  /** Called on a download thread once a download has completed, failed, or been cancelled. */
+  synchronized void onDownloadStopped(RemoteAudioDownload download) {
+    if (downloads.get(download.url) == download) {
+      downloads.remove(download.url);
+    }
+    if (stoppingDownloads.get(download.url) == download) {
+      stoppingDownloads.remove(download.url);
+    }
+    downloadReaderCounts.remove(download);
+    File file = download.isFinished() ? download.completeFile : download.partialFile;
+    Long partialSize = fileSizes.remove(download.partialFile.getName());
+    if (partialSize != null) {
+      sizeBytes -= partialSize;
+    }
+    if (file.length() > 0) {
+      addFile(file.getName(), file.length());
+    } else {
+      file.delete();
+    }
+    trim();
+  }
+
+  /** Cancels all downloads. Cached files are kept. */
+  synchronized void shutdown() {
+    prefetchQueue.clear();
+    queuedPrefetches.clear();
+    prefetchExecutor.shutdownNow();
+    for (RemoteAudioDownload download : downloads.values()) {
+      download.cancel();
+    }
+    downloadExecutor.shutdown();
+    diskExecutor.shutdown();
+  }
+
+  /** Returns the cache's counters and size, for sizing the cache. */
+  synchronized Map<String, Object> getStats() {
+    Map<String, Object> stats = new HashMap<>();
+    stats.put("hits", hitCount);
+    stats.put("misses", missCount);
+    stats.put("resumes", resumeCount);
+    stats.put("prefetches", prefetchCount);
+    stats.put("queuedPrefetches", queuedPrefetches.size());
+    stats.put("evictions", evictionCount);
+    stats.put("sizeBytes", sizeBytes);
+    stats.put("maxSizeBytes", maxSizeBytes);
+    return stats;
+  }
+
+  // Starts the highest priority queued prefetches, while fewer than the maximum are running.
+  private void startPrefetches() {
+    while (runningPrefetchTaskCount < MAX_CONCURRENT_PREFETCHES && !prefetchQueue.isEmpty()) {
+      PrefetchTask task = prefetchQueue.poll();
+      queuedPrefetches.remove(task.url);
+      runningPrefetchTaskCount++;
+      prefetchExecutor.execute(task);
+    }
+  }
+
+  private boolean isCached(String url) {
+    return fileSizes.get(fileNameForUrl(url)) != null;
+  }
+
+  // Creates a download of a URL, resuming its partial file if there is one. The caller runs it.
+  private RemoteAudioDownload startDownload(String url) {
+    RemoteAudioDownload download =
+        new RemoteAudioDownload(
+            this,
+            url,
+            getPartialFile(url),
+            new File(directory, fileNameForUrl(url)),
+            stoppingDownloads.get(url));
+    downloads.put(url, download);
+    return download;
+  }
+
+  /** The file to which a URL is downloaded, until the download completes. */
+  File getPartialFile(String url) {
+    return new File(directory, fileNameForUrl(url) + PARTIAL_SUFFIX);
+  }
+
+  // Builds the index from the files on disk, least recently modified first. Called on the disk
+  // thread, and only holds the lock once the files have been listed.
+  private void index() {
+    synchronized (this) {
+      if (indexed) {
+        return;
+      }
+      indexed = true;
+    }
+    File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+    final Map<File, Long> lastModifiedTimes = new HashMap<>();
+    long[] fileLengths = new long[files.length];
+    for (File file : files) {
+      lastModifiedTimes.put(file, file.lastModified());
+    }
+    Arrays.sort(
+        files,
+        new Comparator<File>() {
+          @Override
+          public int compare(File a, File b) {
+            return Long.compare(lastModifiedTimes.get(a), lastModifiedTimes.get(b));
+          }
+        });
+    for (int i = 0; i < files.length; i++) {
+      fileLengths[i] = files[i].length();
+    }
+    synchronized (this) {
+      for (int i = 0; i < files.length; i++) {
+        // Downloads which stopped meanwhile have already added their files.
+        if (!fileSizes.containsKey(files[i].getName())) {
+          addFile(files[i].getName(), fileLengths[i]);
+        }
+      }
+    }
+  }
+
+  private void addFile(String fileName, long fileSize) {
+    Long previousSize = fileSizes.put(fileName, fileSize);
+    sizeBytes += fileSize - (previousSize == null ? 0 : previousSize);
+  }
+
+  // Deletes least recently used files, other than those being downloaded, until within size.
+  private void trim() {
+    Iterator<Map.Entry<String, Long>> iterator = fileSizes.entrySet().iterator();
+    while (sizeBytes > maxSizeBytes && iterator.hasNext()) {
+      Map.Entry<String, Long> entry = iterator.next();
+      if (isDownloading(entry.getKey())) {
+        continue;
+      }
+      File file = new File(directory, entry.getKey());
+      if (!file.delete() && file.exists()) {
+        Log.w(TAG, "Could not delete cached file " + file);
+        continue;
+      }
+      sizeBytes -= entry.getValue();
+      evictionCount++;
+      iterator.remove();
+    }
+  }
+
+  private boolean isDownloading(String fileName) {
+    for (RemoteAudioDownload download : downloads.values()) {
+      if (download.partialFile.getName().equals(fileName)
+          || download.completeFile.getName().equals(fileName)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static String fileNameForUrl(String url) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      byte[] hash = digest.digest(url.getBytes(Charset.forName("UTF-8")));
+      StringBuilder fileName = new StringBuilder();
+      for (byte b : hash) {
+        fileName.append(String.format("%02x", b));
+      }
+      return fileName.toString();
+    } catch (NoSuchAlgorithmException e) {
+      // SHA-1 is always available on Android.
+      throw new IllegalStateException(e);
+    }
+  }
+}
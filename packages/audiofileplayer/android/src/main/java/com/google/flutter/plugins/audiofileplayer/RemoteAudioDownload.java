@@ -0,0 +1,257 @@
+package com.google.flutter.plugins.audiofileplayer;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Downloads a remote audio file into the {@link RemoteAudioCache}, resuming a previous partial
+ * download with a Range request where possible.
+ *
+ * <p>Bytes are written to a partial file as they arrive, and readers may block in {@link
+ * #awaitAvailableBytes} until the bytes they need have been written. On completion, the partial
+ * file is renamed to the complete file. All file operations, including creating the partial file,
+ * run on the download thread.
+ *
+ * <p>A cancelled download may take a moment to stop. A new download of the same URL waits for it
+ * before touching the partial file, so the file never has two writers.
+ *
+ * <p>{@link #run()} is called on a download thread; all other methods may be called on any thread.
+ */
+final class RemoteAudioDownload implements Runnable {
+  private static final int CONNECT_TIMEOUT_MS = 15000;
+  private static final int READ_TIMEOUT_MS = 15000;
+  private static final int BUFFER_SIZE = 16 * 1024;
+  private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+  final String url;
+  final File partialFile;
+  final File completeFile;
+  private final RemoteAudioCache cache;
+  // A cancelled download of the same URL which had not stopped when this one started, or null.
+  private final RemoteAudioDownload previousDownload;
+  // The total size of the file, or -1 while it is unknown.
+  private long contentLength = -1;
+  private long downloadedBytes;
+  private boolean finished;
+  private boolean stopped;
+  private IOException failure;
+  private volatile boolean cancelled;
+
+  RemoteAudioDownload(
+      RemoteAudioCache cache,
+      String url,
+      File partialFile,
+      File completeFile,
+      RemoteAudioDownload previousDownload) {
+    this.cache = cache;
+    this.previousDownload = previousDownload;
+    this.url = url;
+    this.partialFile = partialFile;
+    this.completeFile = completeFile;
+  }
+
+  @Override
+  public void run() {
+    try {
+      if (previousDownload != null && previousDownload.awaitStopped()) {
+        // The previous download completed before it saw its cancellation.
+        finish(completeFile.length(), false);
+        return;
+      }
+      File directory = partialFile.getParentFile();
+      if (!directory.exists() && !directory.mkdirs()) {
+        throw new IOException("Could not create cache directory " + directory);
+      }
+      if (!partialFile.exists() && !partialFile.createNewFile()) {
+        throw new IOException("Could not create " + partialFile);
+      }
+      // Readers may read the bytes of a previous partial download while this one connects.
+      long partialFileLength = partialFile.length();
+      synchronized (this) {
+        downloadedBytes = partialFileLength;
+        notifyAll();
+      }
+      download();
+    } catch (IOException e) {
+      synchronized (this) {
+        failure = e;
+        notifyAll();
+      }
+    } finally {
+      cache.onDownloadStopped(this);
+      synchronized (this) {
+        stopped = true;
+        notifyAll();
+      }
+    }
+  }
+
+  /** Stops the download, keeping the partial file so that it may be resumed later. */
+  void cancel() {
+    cancelled = true;
+    synchronized (this) {
+      notifyAll();
+    }
+  }
+
+  /**
+   * Blocks until {@link #run()} has returned.
+   *
+   * @return whether the download finished.
+   */
+  private synchronized boolean awaitStopped() throws IOException {
+    while (!stopped) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while waiting for previous download of " + url, e);
+      }
+    }
+    return finished;
+  }
+
+  synchronized boolean isFinished() {
+    return finished;
+  }
+
+  /** Returns the total size of the file, or -1 if it is not yet known. */
+  synchronized long getContentLength() {
+    return contentLength;
+  }
+
+  /**
+   * Blocks until the byte at {@code position} has been downloaded, or the download has finished.
+   *
+   * @return the number of bytes downloaded so far.
+   * @throws IOException if the download failed or was cancelled before reaching {@code position},
+   *     or the reader was closed meanwhile.
+   */
+  synchronized long awaitAvailableBytes(long position, CachingMediaDataSource reader)
+      throws IOException {
+    while (downloadedBytes <= position && !finished) {
+      if (failure != null) {
+        throw new IOException("Download failed for " + url, failure);
+      }
+      if (cancelled) {
+        throw new IOException("Download cancelled for " + url);
+      }
+      if (reader.isClosed()) {
+        throw new IOException("Stopped waiting for " + url + ", as the reader was closed");
+      }
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while downloading " + url, e);
+      }
+    }
+    return downloadedBytes;
+  }
+
+  /** Wakes readers blocked in {@link #awaitAvailableBytes}, so that closed readers stop waiting. */
+  synchronized void wakeReaders() {
+    notifyAll();
+  }
+
+  /**
+   * Opens the downloaded file for reading, once {@link #awaitAvailableBytes} has returned bytes.
+   *
+   * <p>Readers keep their handle on the file across its rename on completion.
+   */
+  synchronized RandomAccessFile openForReading() throws FileNotFoundException {
+    return new RandomAccessFile(finished ? completeFile : partialFile, "r");
+  }
+
+  private void download() throws IOException {
+    long resumePosition = partialFile.length();
+    HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+    try {
+      connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+      connection.setReadTimeout(READ_TIMEOUT_MS);
+      if (resumePosition > 0) {
+        connection.setRequestProperty("Range", "bytes=" + resumePosition + "-");
+      }
+      int responseCode = connection.getResponseCode();
+      if (responseCode == HTTP_RANGE_NOT_SATISFIABLE && resumePosition > 0) {
+        // The partial file already holds the whole file.
+        cache.onDownloadResumed();
+        finish(resumePosition, true);
+        return;
+      } else if (responseCode == HttpURLConnection.HTTP_OK) {
+        // The server ignored the Range header, so start over.
+        resumePosition = 0;
+      } else if (responseCode != HttpURLConnection.HTTP_PARTIAL || resumePosition == 0) {
+        throw new IOException("Unexpected response code " + responseCode + " for " + url);
+      } else {
+        cache.onDownloadResumed();
+      }
+      long responseLength = parseContentLength(connection.getHeaderField("Content-Length"));
+      synchronized (this) {
+        downloadedBytes = resumePosition;
+        contentLength = responseLength < 0 ? -1 : resumePosition + responseLength;
+        notifyAll();
+      }
+
+      InputStream inputStream = connection.getInputStream();
+      FileOutputStream outputStream = new FileOutputStream(partialFile, resumePosition > 0);
+      try {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int readSize;
+        while (!cancelled && (readSize = inputStream.read(buffer)) != -1) {
+          outputStream.write(buffer, 0, readSize);
+          synchronized (this) {
+            downloadedBytes += readSize;
+            notifyAll();
+          }
+        }
+      } finally {
+        outputStream.close();
+        inputStream.close();
+      }
+      if (cancelled) {
+        return;
+      }
+      long totalBytes;
+      synchronized (this) {
+        totalBytes = downloadedBytes;
+        if (contentLength >= 0 && totalBytes < contentLength) {
+          throw new IOException("Download ended early for " + url);
+        }
+      }
+      finish(totalBytes, true);
+    } finally {
+      connection.disconnect();
+    }
+  }
+
+  // Renames the partial file while holding the lock, so that readers open the file by its current
+  // name.
+  private synchronized void finish(long totalBytes, boolean renamePartialFile)
+      throws IOException {
+    if (renamePartialFile && !partialFile.renameTo(completeFile)) {
+      throw new IOException("Could not rename " + partialFile + " to " + completeFile);
+    }
+    downloadedBytes = totalBytes;
+    contentLength = totalBytes;
+    finished = true;
+    notifyAll();
+  }
+
+  private static long parseContentLength(String contentLengthHeader) {
+    if (contentLengthHeader == null) {
+      return -1;
+    }
+    try {
+      return Long.parseLong(contentLengthHeader.trim());
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+}
@@ -1,47 +1,38 @@
 package com.google.flutter.plugins.audiofileplayer;
 
 import android.media.MediaPlayer;
+import android.os.Build;
 import android.util.Log;
+import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
 
 /**
  * Wraps a MediaPlayer for remote asset use by AudiofileplayerPlugin.
  *
  * <p>Used for remote audio data only; loading occurs asynchronously, allowing program to continue
- * while data is received. Callers may call all other methods on {@link ManagedMediaPlayer}
- * immediately (i.e. before loading is complete); these will, if necessary, be delayed and re-called
- * internally upon loading completion.
+ * while data is received. As with all {@link ManagedMediaPlayer}s, callers may call all other
+ * methods immediately (i.e. before loading is complete); these will, if necessary, be delayed and
+ * re-called internally upon loading completion.
  *
  * <p>Note that with async loading, errors such as invalid URLs and lack of connectivity are
- * reported asyncly via {@link RemoteManagedMediaPlayer.onError()}, instead of as Exceptions.
- * Unfortunately, this yields inscrutable and/or undifferentiated error codes, instead of discrete
- * Exception subclasses with human-readable error messages.
+ * reported asyncly via {@link ManagedMediaPlayer#onError(MediaPlayer, int, int)}, instead of as
+ * Exceptions. Unfortunately, this yields inscrutable and/or undifferentiated error codes, instead
+ * of discrete Exception subclasses with human-readable error messages.
+ *
+ * <p>If the plugin's {@link RemoteAudioCache} is enabled, audio is played from the cache if
+ * present, and is otherwise saved to it while it plays.
  */
-class RemoteManagedMediaPlayer extends ManagedMediaPlayer
-    implements MediaPlayer.OnPreparedListener {
-
-  interface OnRemoteLoadListener {
-    /**
-     * Called when asynchronous remote loading has completed, either successfully via {@link
-     * RemoteManagedMediaPlayer#onPrepare()}, or unsuccessfully on {@link
-     * RemoteManagedMediaPlayer#onError()}.
-     */
-    void onRemoteLoadComplete(boolean success);
-  }
-
+class RemoteManagedMediaPlayer extends ManagedMediaPlayer {
   private static final String TAG = RemoteManagedMediaPlayer.class.getSimpleName();
-  private OnRemoteLoadListener onRemoteLoadListener;
-  private boolean isPrepared;
-  // A list of runnables to run once onPrepared() is called.
-  private List<Runnable> onPreparedRunnables = new ArrayList<>();
+
+  // The data source which saves the audio to the cache while it plays, if any.
+  private CachingMediaDataSource cachingDataSource;
 
   /**
    * Create a RemoteManagedMediaPlayer from an remote URL string.
    *
    * <p>Async loading errors (during {@link MediaPlayer#prepareAsync()}) are caught by {@link
-   * RemoteManagedMediaPlayer#onError()}, not as Exceptions.
+   * ManagedMediaPlayer#onError(MediaPlayer, int, int)}, not as Exceptions.
    *
    * @throws IOException if underlying MediaPlayer cannot load it as its DataSource.
    */
@@ -53,67 +44,45 @@ class RemoteManagedMediaPlayer extends ManagedMediaPlayer
       boolean playInBackground)
       throws IOException {
     super(audioId, parentAudioPlugin, looping, playInBackground);
-    player.setDataSource(remoteUrl);
-    player.setOnCompletionListener(this);
-    player.setOnPreparedListener(this);
-    player.setOnErrorListener(this);
-    player.setOnSeekCompleteListener(this);
-    player.prepareAsync();
-  }
-
-  public void setOnRemoteLoadListener(OnRemoteLoadListener onRemoteLoadListener) {
-    this.onRemoteLoadListener = onRemoteLoadListener;
-  }
-
-  @Override
-  public void onPrepared(MediaPlayer mediaPlayer) {
-    Log.i(TAG, "on prepared");
-    isPrepared = true;
-    onRemoteLoadListener.onRemoteLoadComplete(true);
-    for (Runnable r : onPreparedRunnables) {
-      r.run();
-    }
-  }
-
-  @Override
-  public void play(boolean playFromStart, int endpointMs) {
-    if (!isPrepared) {
-      onPreparedRunnables.add(() -> RemoteManagedMediaPlayer.super.play(playFromStart, endpointMs));
-    } else {
-      super.play(playFromStart, endpointMs);
+    RemoteAudioCache cache = parentAudioPlugin.getRemoteAudioCache();
+    File cachedFile = cache.getCachedFile(remoteUrl);
+    if (cachedFile == null || !setCachedDataSource(cache, cachedFile)) {
+      if (cache.isEnabled() && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+        cachingDataSource = new CachingMediaDataSource(cache, cache.acquireDownload(remoteUrl));
+        player.setDataSource(cachingDataSource);
+      } else {
+        player.setDataSource(remoteUrl);
+      }
     }
+    prepareAsync();
   }
 
+  /**
+   * Closes the caching data source before releasing, so that a read waiting on the network ends
+   * rather than blocking the MediaPlayer's reset.
+   */
   @Override
   public void release() {
-    if (!isPrepared) {
-      onPreparedRunnables.add(() -> RemoteManagedMediaPlayer.super.release());
-    } else {
-      super.release();
-    }
-  }
-
-  @Override
-  public void seek(double positionSeconds) {
-    if (!isPrepared) {
-      onPreparedRunnables.add(() -> RemoteManagedMediaPlayer.super.seek(positionSeconds));
-    } else {
-      super.seek(positionSeconds);
+    if (cachingDataSource != null) {
+      try {
+        cachingDataSource.close();
+      } catch (IOException e) {
+        Log.w(TAG, "Could not close data source of " + audioId, e);
+      }
     }
+    super.release();
   }
 
-  @Override
-  public void pause() {
-    if (!isPrepared) {
-      onPreparedRunnables.add(() -> RemoteManagedMediaPlayer.super.pause());
-    } else {
-      super.pause();
+  // Returns false if the file was deleted since the cache indexed it, e.g. by the system clearing
+  // the app's cache.
+  private boolean setCachedDataSource(RemoteAudioCache cache, File cachedFile) {
+    try {
+      player.setDataSource(cachedFile.getPath());
+      return true;
+    } catch (IOException e) {
+      cache.onCachedFileMissing(cachedFile);
+      player.reset();
+      return false;
     }
   }
-
-  @Override
-  public boolean onError(MediaPlayer mp, int what, int extra) {
-    onRemoteLoadListener.onRemoteLoadComplete(false);
-    return super.onError(mp, what, extra);
-  }
 }
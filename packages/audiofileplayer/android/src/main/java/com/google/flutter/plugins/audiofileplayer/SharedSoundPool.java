@@ -0,0 +1,148 @@
+package com.google.flutter.plugins.audiofileplayer;
+
+import android.content.res.AssetFileDescriptor;
+import android.media.AudioAttributes;
+import android.media.AudioManager;
+import android.media.SoundPool;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Owns the single SoundPool shared by all {@link SoundPoolManagedPlayer}s.
+ *
+ * <p>The SoundPool keeps decoded PCM resident, and mixes all plays into a small fixed number of
+ * streams ("voices"), so that many short, overlapping clips do not each need their own
+ * MediaPlayer. It is created lazily on first use.
+ *
+ * <p>Before a clip is loaded, its duration is read (and its bytes written to a file, if it has no
+ * file) on a background thread, via {@link #prepare}.
+ *
+ * <p>All methods must be called on the main thread; load callbacks are delivered there as well.
+ */
+final class SharedSoundPool implements SoundPool.OnLoadCompleteListener {
+  private static final String TAG = SharedSoundPool.class.getSimpleName();
+  static final int MAX_STREAMS = 8;
+  private static final int PREPARATION_THREADS = 2;
+  private static final long PREPARATION_THREAD_KEEP_ALIVE_SECONDS = 30;
+
+  interface OnSoundLoadedListener {
+    /** Called when asynchronous loading of a sound has completed. */
+    void onSoundLoaded(boolean success);
+  }
+
+  /** Disk work to run before a clip is loaded, off the main thread. */
+  interface Preparation {
+    void prepare() throws IOException;
+  }
+
+  interface OnPreparedListener {
+    /** Called on the main thread once a {@link Preparation} has run, with its failure if any. */
+    void onPrepared(IOException failure);
+  }
+
+  // Threads time out when idle, so that the executor needs no shutdown.
+  private final ThreadPoolExecutor preparationExecutor =
+      new ThreadPoolExecutor(
+          PREPARATION_THREADS,
+          PREPARATION_THREADS,
+          PREPARATION_THREAD_KEEP_ALIVE_SECONDS,
+          TimeUnit.SECONDS,
+          new LinkedBlockingQueue<Runnable>());
+  private final Handler handler = new Handler(Looper.getMainLooper());
+  private SoundPool soundPool;
+  // Listeners for sounds whose loading has not yet completed, keyed by sound id.
+  private final Map<Integer, OnSoundLoadedListener> pendingLoads = new HashMap<>();
+
+  /** The SoundPool, creating it if needed. */
+  SoundPool get() {
+    if (soundPool == null) {
+      if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+        AudioAttributes attributes =
+            new AudioAttributes.Builder()
+                .setUsage(AudioAttributes.USAGE_MEDIA)
+                .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                .build();
+        soundPool =
+            new SoundPool.Builder()
+                .setMaxStreams(MAX_STREAMS)
+                .setAudioAttributes(attributes)
+                .build();
+      } else {
+        soundPool = new SoundPool(MAX_STREAMS, AudioManager.STREAM_MUSIC, 0);
+      }
+      soundPool.setOnLoadCompleteListener(this);
+    }
+    return soundPool;
+  }
+
+  SharedSoundPool() {
+    preparationExecutor.allowCoreThreadTimeOut(true);
+  }
+
+  /** Runs a clip's preparation on a background thread, then calls the listener on this one. */
+  void prepare(Preparation preparation, OnPreparedListener listener) {
+    preparationExecutor.execute(
+        () -> {
+          IOException failure = null;
+          try {
+            preparation.prepare();
+          } catch (IOException e) {
+            failure = e;
+          } catch (RuntimeException e) {
+            // E.g. MediaMetadataRetriever rejecting the clip.
+            failure = new IOException(e);
+          }
+          IOException result = failure;
+          handler.post(() -> listener.onPrepared(result));
+        });
+  }
+
+  /** Starts loading a sound from an asset, and returns its sound id. */
+  int load(AssetFileDescriptor afd, OnSoundLoadedListener listener) {
+    int soundId = get().load(afd, 1);
+    pendingLoads.put(soundId, listener);
+    return soundId;
+  }
+
+  /** Starts loading a sound from a file path, and returns its sound id. */
+  int load(String path, OnSoundLoadedListener listener) {
+    int soundId = get().load(path, 1);
+    pendingLoads.put(soundId, listener);
+    return soundId;
+  }
+
+  /** Unloads a sound, dropping its listener if it is still loading. */
+  void unload(int soundId) {
+    pendingLoads.remove(soundId);
+    if (soundPool != null) {
+      soundPool.unload(soundId);
+    }
+  }
+
+  /** Releases the SoundPool and all loaded sounds. */
+  void release() {
+    pendingLoads.clear();
+    if (soundPool != null) {
+      soundPool.release();
+      soundPool = null;
+    }
+  }
+
+  @Override
+  public void onLoadComplete(SoundPool soundPool, int soundId, int status) {
+    OnSoundLoadedListener listener = pendingLoads.remove(soundId);
+    if (listener == null) {
+      Log.w(TAG, "Load completed for unknown or unloaded sound: " + soundId);
+      return;
+    }
+    listener.onSoundLoaded(status == 0);
+  }
+}
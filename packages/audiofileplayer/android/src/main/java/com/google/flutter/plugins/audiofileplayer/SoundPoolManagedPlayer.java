@@ -0,0 +1,420 @@
+package com.google.flutter.plugins.audiofileplayer;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.media.MediaMetadataRetriever;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Wraps a sound in the plugin's {@link SharedSoundPool}, for low-latency playback of short local
+ * clips.
+ *
+ * <p>The clip is decoded once into memory on load, so {@link #play(boolean, int)} starts with
+ * near-zero latency, and concurrent plays of many clips share the SoundPool's streams instead of
+ * each holding a MediaPlayer. Each play from the start fires a new stream, so that a clip overlaps
+ * with itself when played repeatedly (e.g. a tap sound); pause, resume, seek, volume changes, and
+ * release apply to all of the clip's streams.
+ *
+ * <p>Loading occurs asynchronously: the clip's duration is read (and audio bytes written to a temp
+ * file) off the main thread, then SoundPool decodes it. As in {@link ManagedMediaPlayer}, callers
+ * may call all other methods immediately, and these are re-called internally upon loading
+ * completion.
+ *
+ * <p>SoundPool has no notion of playback position, so this player tracks it with a clock, does
+ * not send position updates, and only supports seeking to the start. Resuming a paused clip
+ * continues from where it was paused; resuming after the clip's streams were stopped restarts it.
+ * Completion is reported once no stream is playing.
+ */
+class SoundPoolManagedPlayer extends ManagedPlayer {
+  private static final String TAG = SoundPoolManagedPlayer.class.getSimpleName();
+
+  /** A SoundPool stream of the clip. */
+  private final class Stream implements Runnable {
+    final int streamId;
+    boolean isPlaying;
+    // The endpoint at which the stream pauses, or PLAY_TO_END to stop at the end of the clip.
+    int endpointMs;
+    // Position at the last play or pause, and the uptime at which playback last started.
+    int positionMs;
+    long playStartUptimeMs;
+
+    Stream(int streamId) {
+      this.streamId = streamId;
+    }
+
+    int currentPositionMs() {
+      if (!isPlaying) {
+        return positionMs;
+      }
+      int elapsedMs = (int) (SystemClock.uptimeMillis() - playStartUptimeMs);
+      int position = positionMs + elapsedMs;
+      if (looping && durationMs > 0) {
+        return position % durationMs;
+      }
+      return Math.min(position, durationMs);
+    }
+
+    /** Stops the stream at the end of the clip, or pauses it at a requested endpoint. */
+    @Override
+    public void run() {
+      if (endpointMs == PLAY_TO_END) {
+        sharedSoundPool.get().stop(streamId);
+        streams.remove(this);
+      } else {
+        Log.d(TAG, "Pausing stream at endpoint");
+        pauseStream(this);
+      }
+      if (!isPlaying()) {
+        parentAudioPlugin.handleCompletion(audioId);
+      }
+    }
+  }
+
+  /** Starts loading a prepared clip into SoundPool, returning its sound id. */
+  private interface SoundLoader {
+    int load();
+  }
+
+  private final SharedSoundPool sharedSoundPool;
+  private final boolean looping;
+  private final Handler handler = new Handler();
+  // Read off the main thread before loading.
+  private int durationMs;
+  // 0 until the clip has been prepared and SoundPool has started loading it.
+  private int soundId;
+  // A temp file holding audio bytes, deleted once SoundPool has decoded it.
+  private File tempAudioFile;
+  private boolean isLoaded;
+  private boolean isReleased;
+  // A list of runnables to run once loading has completed.
+  private final List<Runnable> onLoadedRunnables = new ArrayList<>();
+
+  // The clip's streams, oldest first.
+  private final List<Stream> streams = new ArrayList<>();
+  private float volume = 1.0f;
+
+  private SoundPoolManagedPlayer(
+      String audioId,
+      AudiofileplayerPlugin parentAudioPlugin,
+      boolean looping,
+      boolean playInBackground) {
+    super(audioId, parentAudioPlugin, playInBackground);
+    this.sharedSoundPool = parentAudioPlugin.getSharedSoundPool();
+    this.looping = looping;
+  }
+
+  /**
+   * Create a SoundPoolManagedPlayer from an AssetFileDescriptor, which the player closes once
+   * SoundPool has started loading it.
+   */
+  public SoundPoolManagedPlayer(
+      String audioId,
+      AssetFileDescriptor afd,
+      AudiofileplayerPlugin parentAudioPlugin,
+      boolean looping,
+      boolean playInBackground) {
+    this(audioId, parentAudioPlugin, looping, playInBackground);
+    sharedSoundPool.prepare(
+        () -> {
+          MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+          try {
+            retriever.setDataSource(
+                afd.getFileDescriptor(), afd.getStartOffset(), afd.getLength());
+            durationMs = extractDurationMs(retriever);
+          } finally {
+            retriever.release();
+          }
+        },
+        (failure) -> {
+          onPrepared(failure, () -> sharedSoundPool.load(afd, this::onSoundLoaded));
+          try {
+            afd.close();
+          } catch (IOException e) {
+            Log.w(TAG, "Could not close asset of " + audioId, e);
+          }
+        });
+  }
+
+  /** Create a SoundPoolManagedPlayer from a path string. */
+  public SoundPoolManagedPlayer(
+      String audioId,
+      String path,
+      AudiofileplayerPlugin parentAudioPlugin,
+      boolean looping,
+      boolean playInBackground) {
+    this(audioId, parentAudioPlugin, looping, playInBackground);
+    sharedSoundPool.prepare(
+        () -> durationMs = readDurationMs(path),
+        (failure) -> onPrepared(failure, () -> sharedSoundPool.load(path, this::onSoundLoaded)));
+  }
+
+  /**
+   * Create a SoundPoolManagedPlayer from a byte array.
+   *
+   * <p>SoundPool cannot read from memory, so the bytes are written to a temp file, which is deleted
+   * once loading completes.
+   */
+  public SoundPoolManagedPlayer(
+      String audioId,
+      byte[] audioBytes,
+      AudiofileplayerPlugin parentAudioPlugin,
+      boolean looping,
+      boolean playInBackground,
+      Context context) {
+    this(audioId, parentAudioPlugin, looping, playInBackground);
+    sharedSoundPool.prepare(
+        () -> {
+          tempAudioFile =
+              File.createTempFile(UUID.randomUUID().toString(), null, context.getCacheDir());
+          tempAudioFile.deleteOnExit();
+          FileOutputStream fos = new FileOutputStream(tempAudioFile);
+          try {
+            fos.write(audioBytes);
+          } finally {
+            fos.close();
+          }
+          durationMs = readDurationMs(tempAudioFile.getPath());
+        },
+        (failure) ->
+            onPrepared(
+                failure,
+                () -> sharedSoundPool.load(tempAudioFile.getPath(), this::onSoundLoaded)));
+  }
+
+  // Called once the clip's duration has been read, and any bytes written to a file. Starts
+  // loading the clip into SoundPool, unless preparing failed or the player has been released.
+  private void onPrepared(IOException failure, SoundLoader soundLoader) {
+    if (failure != null) {
+      Log.e(TAG, "Could not prepare " + audioId + " for SoundPool playback.", failure);
+      deleteTempAudioFile();
+      onLoadedRunnables.clear();
+      notifyLoadComplete(false);
+      return;
+    }
+    if (isReleased) {
+      deleteTempAudioFile();
+      notifyLoadComplete(true);
+      return;
+    }
+    soundId = soundLoader.load();
+  }
+
+  private void onSoundLoaded(boolean success) {
+    deleteTempAudioFile();
+    isLoaded = true;
+    notifyLoadComplete(success);
+    if (!success || isReleased) {
+      onLoadedRunnables.clear();
+      sharedSoundPool.unload(soundId);
+      return;
+    }
+    for (Runnable r : onLoadedRunnables) {
+      r.run();
+    }
+    onLoadedRunnables.clear();
+  }
+
+  @Override
+  public double getDurationSeconds() {
+    return (double) durationMs / 1000.0; // Convert ms to seconds.
+  }
+
+  /**
+   * Plays the clip. Playing from the start fires a new stream, alongside any which are playing;
+   * otherwise the paused streams resume, or a new stream starts if there are none.
+   */
+  @Override
+  public void play(boolean playFromStart, int endpointMs) {
+    if (!isLoaded) {
+      onLoadedRunnables.add(() -> play(playFromStart, endpointMs));
+      return;
+    }
+    if (!playFromStart && !streams.isEmpty()) {
+      for (Stream stream : streams) {
+        resumeStream(stream, endpointMs);
+      }
+      return;
+    }
+    if (endpointMs != PLAY_TO_END && endpointMs <= 0) {
+      Log.w(TAG, "Called play() at position after endpoint. No playback occurred.");
+      return;
+    }
+    // Paused streams are dropped, so that a later resume only resumes this play.
+    for (int i = streams.size() - 1; i >= 0; i--) {
+      if (!streams.get(i).isPlaying) {
+        stopStream(streams.remove(i));
+      }
+    }
+    if (streams.size() >= SharedSoundPool.MAX_STREAMS) {
+      // SoundPool would steal one of its oldest streams anyway.
+      stopStream(streams.remove(0));
+    }
+    int streamId = sharedSoundPool.get().play(soundId, volume, volume, 1, looping ? -1 : 0, 1.0f);
+    if (streamId == 0) {
+      Log.e(TAG, "SoundPool could not play sound for " + audioId);
+      return;
+    }
+    Stream stream = new Stream(streamId);
+    streams.add(stream);
+    stream.isPlaying = true;
+    stream.playStartUptimeMs = SystemClock.uptimeMillis();
+    scheduleEnd(stream, endpointMs);
+  }
+
+  @Override
+  public void release() {
+    if (isReleased) {
+      return;
+    }
+    isReleased = true;
+    onLoadedRunnables.clear();
+    handler.removeCallbacksAndMessages(null);
+    stopStreams();
+    // A clip which is still loading is unloaded once loaded.
+    if (isLoaded) {
+      sharedSoundPool.unload(soundId);
+    }
+  }
+
+  /** Seeks to the start of the clip; SoundPool cannot start playback elsewhere. */
+  @Override
+  public void seek(double positionSeconds) {
+    if (!isLoaded) {
+      onLoadedRunnables.add(() -> seek(positionSeconds));
+      return;
+    }
+    if (positionSeconds != 0) {
+      Log.w(TAG, "SoundPool players can only seek to the start; seeking to 0.");
+    }
+    boolean wasPlaying = isPlaying();
+    stopStreams();
+    if (wasPlaying) {
+      play(true, PLAY_TO_END);
+    }
+    notifySeekComplete();
+  }
+
+  @Override
+  public void setVolume(double volume) {
+    if (!isLoaded) {
+      onLoadedRunnables.add(() -> setVolume(volume));
+      return;
+    }
+    this.volume = (float) volume;
+    for (Stream stream : streams) {
+      sharedSoundPool.get().setVolume(stream.streamId, this.volume, this.volume);
+    }
+  }
+
+  @Override
+  public void pause() {
+    if (!isLoaded) {
+      onLoadedRunnables.add(this::pause);
+      return;
+    }
+    for (Stream stream : streams) {
+      handler.removeCallbacks(stream);
+      pauseStream(stream);
+    }
+  }
+
+  private boolean isPlaying() {
+    for (Stream stream : streams) {
+      if (stream.isPlaying) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void resumeStream(Stream stream, int endpointMs) {
+    int startMs = stream.currentPositionMs();
+    if (endpointMs != PLAY_TO_END && endpointMs - startMs <= 0) {
+      Log.w(TAG, "Called play() at position after endpoint. No playback occurred.");
+      return;
+    }
+    if (!stream.isPlaying) {
+      sharedSoundPool.get().resume(stream.streamId);
+      stream.isPlaying = true;
+      stream.positionMs = startMs;
+      stream.playStartUptimeMs = SystemClock.uptimeMillis();
+    }
+    scheduleEnd(stream, endpointMs);
+  }
+
+  // Schedules the stream to stop at the end of the clip, unless it loops, or to pause at the
+  // endpoint.
+  private void scheduleEnd(Stream stream, int endpointMs) {
+    handler.removeCallbacks(stream);
+    stream.endpointMs = endpointMs;
+    int startMs = stream.currentPositionMs();
+    if (endpointMs != PLAY_TO_END) {
+      handler.postDelayed(stream, endpointMs - startMs);
+    } else if (!looping) {
+      handler.postDelayed(stream, Math.max(0, durationMs - startMs));
+    }
+  }
+
+  private void pauseStream(Stream stream) {
+    if (!stream.isPlaying) {
+      return;
+    }
+    stream.positionMs = stream.currentPositionMs();
+    stream.isPlaying = false;
+    sharedSoundPool.get().pause(stream.streamId);
+  }
+
+  private void stopStream(Stream stream) {
+    handler.removeCallbacks(stream);
+    sharedSoundPool.get().stop(stream.streamId);
+  }
+
+  private void stopStreams() {
+    for (Stream stream : streams) {
+      stopStream(stream);
+    }
+    streams.clear();
+  }
+
+  private void deleteTempAudioFile() {
+    if (tempAudioFile != null) {
+      if (!tempAudioFile.delete()) {
+        Log.w(TAG, "Could not delete temp audio file " + tempAudioFile);
+      }
+      tempAudioFile = null;
+    }
+  }
+
+  private static int readDurationMs(String path) throws IOException {
+    MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+    try {
+      retriever.setDataSource(path);
+      return extractDurationMs(retriever);
+    } finally {
+      retriever.release();
+    }
+  }
+
+  // Completion is synthesized from the duration, since SoundPool does not report it, so a clip
+  // whose duration is unknown cannot be played here.
+  private static int extractDurationMs(MediaMetadataRetriever retriever) throws IOException {
+    String durationString =
+        retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
+    if (durationString == null) {
+      throw new IOException("Could not read duration of clip for SoundPool playback.");
+    }
+    try {
+      return Integer.parseInt(durationString);
+    } catch (NumberFormatException e) {
+      throw new IOException("Invalid duration for SoundPool playback: " + durationString);
+    }
+  }
+}
@@ -0,0 +1,87 @@
+package com.google.flutter.plugins.audiofileplayer;
+
+import android.media.MediaDataSource;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A MediaDataSource whose media data is appended in chunks, as it arrives from Dart.
+ *
+ * <p>Reads past the data received so far block until more is appended, or the stream is ended.
+ * Chunks are kept once read, rather than discarded as in a ring buffer, since MediaPlayer may read
+ * at any position (e.g. to seek or to loop).
+ *
+ * <p>{@link #append(byte[])} and {@link #end()} are called on the main thread, while MediaPlayer
+ * reads on a thread of its own.
+ */
+final class StreamingMediaDataSource extends MediaDataSource {
+  private final List<byte[]> chunks = new ArrayList<>();
+  // The position of each chunk's first byte within the stream.
+  private final List<Long> chunkPositions = new ArrayList<>();
+  private long receivedSize;
+  private boolean ended;
+
+  /** Appends a chunk of media data, waking any blocked reads. */
+  synchronized void append(byte[] chunk) {
+    if (ended || chunk.length == 0) {
+      return;
+    }
+    chunkPositions.add(receivedSize);
+    chunks.add(chunk);
+    receivedSize += chunk.length;
+    notifyAll();
+  }
+
+  /** Marks the end of the stream; reads past the received data then return end of stream. */
+  synchronized void end() {
+    ended = true;
+    notifyAll();
+  }
+
+  /** Returns the size of the stream, or -1 while it is unknown. */
+  @Override
+  public synchronized long getSize() {
+    return ended ? receivedSize : -1;
+  }
+
+  @Override
+  public synchronized int readAt(long position, byte[] buffer, int offset, int size)
+      throws IOException {
+    while (position >= receivedSize && !ended) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while waiting for media data.", e);
+      }
+    }
+    if (position >= receivedSize) {
+      // Indicate end of stream with -1.
+      return -1;
+    }
+    int readSize =
+        (int) Math.min(Math.min(size, buffer.length - offset), receivedSize - position);
+    int chunkIndex = Collections.binarySearch(chunkPositions, position);
+    if (chunkIndex < 0) {
+      // Not the start of a chunk, so the chunk is the one before the insertion point.
+      chunkIndex = -chunkIndex - 2;
+    }
+    int copiedSize = 0;
+    while (copiedSize < readSize) {
+      byte[] chunk = chunks.get(chunkIndex);
+      int chunkOffset = (int) (position + copiedSize - chunkPositions.get(chunkIndex));
+      int copySize = Math.min(readSize - copiedSize, chunk.length - chunkOffset);
+      System.arraycopy(chunk, chunkOffset, buffer, offset + copiedSize, copySize);
+      copiedSize += copySize;
+      chunkIndex++;
+    }
+    return readSize;
+  }
+
+  @Override
+  public void close() throws IOException {
+    end();
+  }
+}
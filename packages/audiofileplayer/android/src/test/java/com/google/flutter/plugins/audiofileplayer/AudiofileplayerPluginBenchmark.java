@@ -0,0 +1,341 @@
+package com.google.flutter.plugins.audiofileplayer;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import android.content.Context;
+import android.os.Build;
+import com.sun.net.httpserver.HttpServer;
+import io.flutter.FlutterInjector;
+import io.flutter.embedding.engine.loader.FlutterLoader;
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.MethodChannel;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+import org.robolectric.shadows.ShadowMediaPlayer;
+
+/**
+ * Measures the main-thread cost of the plugin's hot paths: method dispatch and player creation for
+ * each load source, play, seek, and position ticks.
+ *
+ * <p>Players are Robolectric's fake MediaPlayer, which prepares immediately, and messages to Dart
+ * go to a fake {@link BinaryMessenger}. Each benchmark prints the p50 and p99 latency, and the
+ * bytes allocated per call on the calling thread (so not those allocated by downloads).
+ *
+ * <p>Excluded from the default test run; run with {@code ./gradlew testDebugUnitTest -Pbenchmarks}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.P)
+public class AudiofileplayerPluginBenchmark {
+  private static final int WARMUP_ITERATIONS = 20;
+  private static final int ITERATIONS = 200;
+  private static final int DURATION_MS = 60000;
+  private static final long TICK_MS = PositionTicker.DEFAULT_INTERVAL_MS;
+  private static final long AWAIT_TIMEOUT_NS = TimeUnit.SECONDS.toNanos(10);
+  private static final String FLUTTER_ASSET = "benchmark.wav";
+
+  private final com.sun.management.ThreadMXBean threadBean =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  private Context context;
+  private FakeBinaryMessenger messenger;
+  private AudiofileplayerPlugin plugin;
+  private final List<String> loadedAudioIds = new ArrayList<>();
+  private int nextAudioId;
+
+  /** Records the messages sent to Dart. */
+  private static final class FakeBinaryMessenger implements BinaryMessenger {
+    int messageCount;
+    long byteCount;
+
+    @Override
+    public void send(String channel, ByteBuffer message) {
+      send(channel, message, null);
+    }
+
+    @Override
+    public void send(String channel, ByteBuffer message, BinaryReply reply) {
+      messageCount++;
+      // As in the engine, the message is the bytes before its position.
+      byteCount += message == null ? 0 : message.position();
+    }
+
+    @Override
+    public void setMessageHandler(String channel, BinaryMessageHandler handler) {}
+  }
+
+  /** Holds the outcome of a method call. */
+  private static final class FakeResult implements MethodChannel.Result {
+    boolean completed;
+    String errorMessage;
+
+    @Override
+    public void success(Object result) {
+      completed = true;
+    }
+
+    @Override
+    public void error(String errorCode, String errorMessage, Object errorDetails) {
+      completed = true;
+      this.errorMessage = errorMessage;
+    }
+
+    @Override
+    public void notImplemented() {
+      completed = true;
+      errorMessage = "Not implemented";
+    }
+  }
+
+  /** Resolves Flutter assets to the test APK's flutter_assets directory. */
+  private static final class FakeFlutterLoader extends FlutterLoader {
+    @Override
+    public void startInitialization(Context applicationContext) {}
+
+    @Override
+    public String getLookupKeyForAsset(String asset) {
+      return "flutter_assets/" + asset;
+    }
+  }
+
+  @Before
+  public void setUp() {
+    ShadowMediaPlayer.setMediaInfoProvider(
+        dataSource -> new ShadowMediaPlayer.MediaInfo(DURATION_MS, 0));
+    FlutterInjector.setInstance(
+        new FlutterInjector.Builder().setFlutterLoader(new FakeFlutterLoader()).build());
+    context = RuntimeEnvironment.getApplication();
+    messenger = new FakeBinaryMessenger();
+    plugin = new AudiofileplayerPlugin();
+    plugin.initInstance(messenger, context);
+  }
+
+  @After
+  public void tearDown() {
+    releaseAll();
+    // The binding is unused.
+    plugin.onDetachedFromEngine(null);
+    FlutterInjector.reset();
+  }
+
+  @Test
+  public void loadFlutterPath() {
+    measure("load flutterPath", () -> load("flutterPath", FLUTTER_ASSET, 0), this::releaseAll);
+  }
+
+  @Test
+  public void loadAbsolutePath() throws IOException {
+    File file = new File(context.getCacheDir(), "benchmark.wav");
+    try (OutputStream outputStream = new FileOutputStream(file)) {
+      outputStream.write(wavBytes(256 * 1024));
+    }
+    measure(
+        "load absolutePath", () -> load("absolutePath", file.getPath(), 0), this::releaseAll);
+  }
+
+  @Test
+  public void loadAudioBytes() {
+    for (int size : new int[] {16 * 1024, 256 * 1024, 4 * 1024 * 1024}) {
+      byte[] audioBytes = wavBytes(size);
+      measure(
+          "load audioBytes " + (size / 1024) + " KiB",
+          () -> load("audioBytes", audioBytes, 0),
+          this::releaseAll);
+    }
+  }
+
+  @Test
+  public void loadRemoteUrl() throws IOException {
+    byte[] audioBytes = wavBytes(256 * 1024);
+    HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext(
+        "/",
+        exchange -> {
+          exchange.sendResponseHeaders(200, audioBytes.length);
+          try (OutputStream body = exchange.getResponseBody()) {
+            body.write(audioBytes);
+          }
+        });
+    server.start();
+    try {
+      Map<String, Object> cacheOptions = new HashMap<>();
+      cacheOptions.put("remoteCacheMaxSizeBytes", 1024L * 1024 * 1024);
+      call("setRemoteCacheOptions", cacheOptions);
+      String baseUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/audio.wav?i=";
+      // A new URL each time, so that each load downloads rather than hitting the cache.
+      int[] urlIndex = new int[1];
+      measure(
+          "load remoteUrl (download to cache)",
+          () -> {
+            String url = baseUrl + urlIndex[0]++;
+            load("remoteUrl", url, 0);
+            awaitCached(url);
+          },
+          this::releaseAll);
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  @Test
+  public void play() {
+    String audioId = load("audioBytes", wavBytes(16 * 1024), 0);
+    Map<String, Object> playArguments = new HashMap<>();
+    playArguments.put("audioId", audioId);
+    playArguments.put("playFromStart", true);
+    Map<String, Object> pauseArguments = new HashMap<>();
+    pauseArguments.put("audioId", audioId);
+    measure("play", () -> call("play", playArguments), () -> call("pause", pauseArguments));
+  }
+
+  @Test
+  public void seek() {
+    String audioId = load("audioBytes", wavBytes(16 * 1024), 0);
+    Map<String, Object> seekArguments = new HashMap<>();
+    seekArguments.put("audioId", audioId);
+    seekArguments.put("position_seconds", 30.0);
+    measure("seek", () -> call("seek", seekArguments), null);
+  }
+
+  @Test
+  public void positionTicks() {
+    for (boolean withHandles : new boolean[] {false, true}) {
+      for (int playerCount : new int[] {1, 10, 100}) {
+        for (int i = 0; i < playerCount; i++) {
+          String audioId = load("audioBytes", wavBytes(16 * 1024), withHandles ? i + 1 : 0);
+          Map<String, Object> playArguments = new HashMap<>();
+          playArguments.put("audioId", audioId);
+          playArguments.put("playFromStart", true);
+          call("play", playArguments);
+        }
+        int messageCountBefore = messenger.messageCount;
+        long byteCountBefore = messenger.byteCount;
+        // Each iteration advances the clock to the next tick, at which every player is sampled.
+        String name =
+            "position tick, " + playerCount + " players" + (withHandles ? " (binary)" : "");
+        measure(name, () -> ShadowLooper.idleMainLooper(TICK_MS, TimeUnit.MILLISECONDS), null);
+        int ticks = WARMUP_ITERATIONS + ITERATIONS;
+        System.out.println(
+            String.format(
+                Locale.US,
+                "%-40s %d messages, %d bytes per tick",
+                "",
+                (messenger.messageCount - messageCountBefore) / ticks,
+                (messenger.byteCount - byteCountBefore) / ticks));
+        releaseAll();
+      }
+    }
+  }
+
+  // Runs an operation repeatedly, printing its latency percentiles and allocations. If given,
+  // {@code after} runs after each iteration, untimed.
+  private void measure(String name, Runnable operation, Runnable after) {
+    long threadId = Thread.currentThread().getId();
+    long[] latenciesNs = new long[ITERATIONS];
+    long allocatedBytes = 0;
+    for (int i = 0; i < WARMUP_ITERATIONS + ITERATIONS; i++) {
+      long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+      long startNs = System.nanoTime();
+      operation.run();
+      long elapsedNs = System.nanoTime() - startNs;
+      long allocated = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+      if (i >= WARMUP_ITERATIONS) {
+        latenciesNs[i - WARMUP_ITERATIONS] = elapsedNs;
+        allocatedBytes += allocated;
+      }
+      if (after != null) {
+        after.run();
+      }
+    }
+    Arrays.sort(latenciesNs);
+    System.out.println(
+        String.format(
+            Locale.US,
+            "%-40s p50 %9.1f us  p99 %9.1f us  %9d B/call",
+            name,
+            latenciesNs[ITERATIONS / 2] / 1000.0,
+            latenciesNs[ITERATIONS * 99 / 100] / 1000.0,
+            allocatedBytes / ITERATIONS));
+  }
+
+  // Loads a player, returning once it has loaded. A zero handle loads it without one.
+  private String load(String sourceKey, Object source, int playerHandle) {
+    String audioId = "audio" + nextAudioId++;
+    Map<String, Object> arguments = new HashMap<>();
+    arguments.put("audioId", audioId);
+    arguments.put(sourceKey, source);
+    if (playerHandle != 0) {
+      arguments.put("playerHandle", playerHandle);
+    }
+    call("load", arguments);
+    loadedAudioIds.add(audioId);
+    return audioId;
+  }
+
+  // Calls a method, running the main looper until the call completes.
+  private void call(String method, Map<String, Object> arguments) {
+    FakeResult result = new FakeResult();
+    plugin.onMethodCall(new MethodCall(method, arguments), result);
+    long deadlineNs = System.nanoTime() + AWAIT_TIMEOUT_NS;
+    while (!result.completed) {
+      ShadowLooper.idleMainLooper();
+      if (System.nanoTime() > deadlineNs) {
+        fail("Timed out waiting for " + method);
+      }
+    }
+    if (result.errorMessage != null) {
+      fail(method + " failed: " + result.errorMessage);
+    }
+  }
+
+  private void awaitCached(String url) {
+    long deadlineNs = System.nanoTime() + AWAIT_TIMEOUT_NS;
+    while (plugin.getRemoteAudioCache().getCachedFile(url) == null) {
+      assertTrue("Timed out downloading " + url, System.nanoTime() < deadlineNs);
+      Thread.yield();
+    }
+  }
+
+  private void releaseAll() {
+    for (String audioId : loadedAudioIds) {
+      call("release", Collections.<String, Object>singletonMap("audioId", audioId));
+    }
+    loadedAudioIds.clear();
+  }
+
+  // A mono 16-bit PCM WAV file of about {@code size} bytes. The fake MediaPlayer does not decode
+  // it, but the bytes still pass through the plugin's data sources.
+  private static byte[] wavBytes(int size) {
+    int dataSize = Math.max(0, size - 44) & ~1;
+    ByteBuffer wav = ByteBuffer.allocate(44 + dataSize).order(ByteOrder.LITTLE_ENDIAN);
+    wav.put("RIFF".getBytes(US_ASCII)).putInt(36 + dataSize).put("WAVE".getBytes(US_ASCII));
+    wav.put("fmt ".getBytes(US_ASCII)).putInt(16).putShort((short) 1).putShort((short) 1);
+    wav.putInt(8000).putInt(16000).putShort((short) 2).putShort((short) 16);
+    wav.put("data".getBytes(US_ASCII)).putInt(dataSize);
+    return wav.array();
+  }
+}
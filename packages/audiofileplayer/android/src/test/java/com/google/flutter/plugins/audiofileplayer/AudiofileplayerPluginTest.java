@@ -0,0 +1,239 @@
+package com.google.flutter.plugins.audiofileplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.media.MediaPlayer;
+import android.os.Build;
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.MethodChannel;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+import org.robolectric.shadows.ShadowMediaPlayer;
+
+/** Tests the plugin's handling of messages from Dart, with Robolectric's fake MediaPlayer. */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.P)
+public class AudiofileplayerPluginTest {
+  private static final String BINARY_CHANNEL = "audiofileplayer/binary";
+  // Binary command types, as encoded by the plugin.
+  private static final byte PLAY_COMMAND = 1;
+  private static final byte PAUSE_COMMAND = 2;
+  private static final byte SEEK_COMMAND = 3;
+  private static final byte SET_VOLUME_COMMAND = 4;
+  // Stands in for a reply which has not been received; a null reply means success.
+  private static final ByteBuffer NO_REPLY = ByteBuffer.allocate(0);
+
+  private final List<ShadowMediaPlayer> shadowPlayers = new ArrayList<>();
+  private final FakeBinaryMessenger messenger = new FakeBinaryMessenger();
+  private AudiofileplayerPlugin plugin;
+
+  /**
+   * Holds the messages to Dart on the binary channel, dropping the others, and the plugin's
+   * handlers of messages from Dart.
+   */
+  private static final class FakeBinaryMessenger implements BinaryMessenger {
+    final Map<String, BinaryMessageHandler> handlers = new HashMap<>();
+    final List<ByteBuffer> binaryMessages = new ArrayList<>();
+
+    @Override
+    public void send(String channel, ByteBuffer message) {
+      send(channel, message, null);
+    }
+
+    @Override
+    public void send(String channel, ByteBuffer message, BinaryReply reply) {
+      if (channel.equals(BINARY_CHANNEL)) {
+        binaryMessages.add(message);
+      }
+    }
+
+    @Override
+    public void setMessageHandler(String channel, BinaryMessageHandler handler) {
+      handlers.put(channel, handler);
+    }
+  }
+
+  /** Holds the outcome of a method call. */
+  private static final class FakeResult implements MethodChannel.Result {
+    boolean succeeded;
+    String errorMessage;
+
+    @Override
+    public void success(Object result) {
+      succeeded = true;
+    }
+
+    @Override
+    public void error(String errorCode, String errorMessage, Object errorDetails) {
+      this.errorMessage = errorMessage;
+    }
+
+    @Override
+    public void notImplemented() {
+      errorMessage = "Not implemented";
+    }
+  }
+
+  @Before
+  public void setUp() {
+    // Players never finish preparing, so that the tests decide how each load ends.
+    ShadowMediaPlayer.setMediaInfoProvider(
+        dataSource -> new ShadowMediaPlayer.MediaInfo(60000, -1));
+    ShadowMediaPlayer.setCreateListener((player, shadowPlayer) -> shadowPlayers.add(shadowPlayer));
+    plugin = new AudiofileplayerPlugin();
+    plugin.initInstance(messenger, RuntimeEnvironment.getApplication());
+  }
+
+  @After
+  public void tearDown() {
+    // The binding is unused.
+    plugin.onDetachedFromEngine(null);
+  }
+
+  @Test
+  public void failedLoad_removesPlayerFromQueue() {
+    Map<String, Object> loadArguments = new HashMap<>();
+    loadArguments.put("audioId", "audio");
+    loadArguments.put("audioBytes", new byte[1024]);
+    FakeResult loadResult = call("load", loadArguments);
+    Map<String, Object> queueArguments = new HashMap<>();
+    queueArguments.put("queueAudioIds", Collections.singletonList("audio"));
+    assertTrue(call("queueInsert", queueArguments).succeeded);
+    assertEquals(1, plugin.getPlaybackQueue().size());
+
+    shadowPlayers.get(0).invokeErrorListener(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
+    ShadowLooper.idleMainLooper();
+
+    assertNotNull(loadResult.errorMessage);
+    assertEquals(0, plugin.getPlaybackQueue().size());
+  }
+
+  @Test
+  public void queueInsert_rejectsLoopingPlayer() {
+    Map<String, Object> loadArguments = new HashMap<>();
+    loadArguments.put("audioId", "looping");
+    loadArguments.put("audioBytes", new byte[1024]);
+    loadArguments.put("looping", true);
+    call("load", loadArguments);
+    Map<String, Object> queueArguments = new HashMap<>();
+    queueArguments.put("queueAudioIds", Collections.singletonList("looping"));
+
+    FakeResult queueResult = call("queueInsert", queueArguments);
+
+    assertNotNull(queueResult.errorMessage);
+    assertEquals(0, plugin.getPlaybackQueue().size());
+  }
+
+  @Test
+  public void reusedHandle_isKeptOnReleaseOfPreviousPlayer() {
+    preparePlayersImmediately();
+    // As after a Dart hot restart, which numbers handles from 1 again.
+    load("before", 1);
+    load("after", 1);
+    assertTrue(call("release", Collections.<String, Object>singletonMap("audioId", "before"))
+        .succeeded);
+
+    assertNull(sendCommand(PLAY_COMMAND, 1, false, Double.NaN));
+
+    // The handle still refers to the player of "after".
+    assertEquals(ShadowMediaPlayer.State.STARTED, shadowPlayers.get(1).getState());
+  }
+
+  @Test
+  public void binaryCommands_controlPlayerOfHandle() {
+    preparePlayersImmediately();
+    load("audio", 7);
+    ShadowMediaPlayer shadowPlayer = shadowPlayers.get(0);
+
+    assertNull(sendCommand(PLAY_COMMAND, 7, true, Double.NaN));
+    assertEquals(ShadowMediaPlayer.State.STARTED, shadowPlayer.getState());
+    assertNull(sendCommand(PAUSE_COMMAND, 7, false, Double.NaN));
+    assertEquals(ShadowMediaPlayer.State.PAUSED, shadowPlayer.getState());
+    // The seek is only replied to once it completes.
+    assertNull(sendCommand(SEEK_COMMAND, 7, false, 1.5));
+    assertEquals(1500, shadowPlayer.getCurrentPositionRaw());
+    assertNull(sendCommand(SET_VOLUME_COMMAND, 7, false, 0.5));
+    assertEquals(0.5f, shadowPlayer.getLeftVolume(), 0f);
+    assertEquals(0.5f, shadowPlayer.getRightVolume(), 0f);
+  }
+
+  @Test
+  public void binaryCommand_toUnknownHandle_repliesWithError() {
+    ByteBuffer reply = sendCommand(PAUSE_COMMAND, 3, false, Double.NaN);
+
+    assertNotNull(reply);
+    byte[] messageBytes = new byte[reply.position()];
+    reply.flip();
+    reply.get(messageBytes);
+    assertTrue(new String(messageBytes, Charset.forName("UTF-8")).contains("handle: 3"));
+  }
+
+  @Test
+  public void handlePositions_sendsPositionsEvent() {
+    // Only the first two positions are sent.
+    plugin.handlePositions(2, new double[] {0.25, 1.5, 9.0}, new int[] {4, 2, 9});
+
+    assertEquals(1, messenger.binaryMessages.size());
+    ByteBuffer event = messenger.binaryMessages.get(0).order(ByteOrder.LITTLE_ENDIAN);
+    // The position of the buffer is the length of the event.
+    assertEquals(8 + 2 * 12, event.position());
+    assertEquals(1, event.get(0));
+    assertEquals(2, event.getInt(4));
+    assertEquals(0.25, event.getDouble(8), 0);
+    assertEquals(1.5, event.getDouble(16), 0);
+    assertEquals(4, event.getInt(24));
+    assertEquals(2, event.getInt(28));
+  }
+
+  // Players prepare as soon as the main looper runs, rather than never.
+  private static void preparePlayersImmediately() {
+    ShadowMediaPlayer.setMediaInfoProvider(
+        dataSource -> new ShadowMediaPlayer.MediaInfo(60000, 0));
+  }
+
+  /** Sends a binary command, and returns its reply, or {@link #NO_REPLY} if it has none yet. */
+  private ByteBuffer sendCommand(byte commandType, int handle, boolean flag, double value) {
+    ByteBuffer command = ByteBuffer.allocateDirect(16).order(ByteOrder.LITTLE_ENDIAN);
+    command.put(0, commandType);
+    command.put(1, (byte) (flag ? 1 : 0));
+    command.putInt(4, handle);
+    command.putDouble(8, value);
+    final ByteBuffer[] reply = {NO_REPLY};
+    messenger.handlers.get(BINARY_CHANNEL).onMessage(command, r -> reply[0] = r);
+    ShadowLooper.idleMainLooper();
+    return reply[0];
+  }
+
+  private void load(String audioId, int playerHandle) {
+    Map<String, Object> arguments = new HashMap<>();
+    arguments.put("audioId", audioId);
+    arguments.put("audioBytes", new byte[1024]);
+    arguments.put("playerHandle", playerHandle);
+    call("load", arguments);
+  }
+
+  private FakeResult call(String method, Map<String, Object> arguments) {
+    FakeResult result = new FakeResult();
+    plugin.onMethodCall(new MethodCall(method, arguments), result);
+    ShadowLooper.idleMainLooper();
+    return result;
+  }
+}
@@ -0,0 +1,192 @@
+package com.google.flutter.plugins.audiofileplayer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.os.Build;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+/** Tests resuming and evicting downloads of the remote audio cache, against a local server. */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.P)
+public class RemoteAudioCacheTest {
+  private static final int AUDIO_SIZE = 64 * 1024;
+  private static final long AWAIT_TIMEOUT_NS = TimeUnit.SECONDS.toNanos(10);
+
+  private final byte[] audioBytes = new byte[AUDIO_SIZE];
+  // The Range header of each request, or null for none.
+  private final List<String> rangeHeaders = Collections.synchronizedList(new ArrayList<>());
+  private final AtomicLong servedBytes = new AtomicLong();
+  private volatile boolean honorsRange = true;
+  private HttpServer server;
+  private String baseUrl;
+  private RemoteAudioCache cache;
+
+  @Before
+  public void setUp() throws IOException {
+    new Random(0).nextBytes(audioBytes);
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/", this::serve);
+    server.start();
+    baseUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    cache = new RemoteAudioCache(RuntimeEnvironment.getApplication().getCacheDir());
+    cache.setMaxSizeBytes(16 * AUDIO_SIZE);
+  }
+
+  @After
+  public void tearDown() {
+    cache.shutdown();
+    server.stop(0);
+  }
+
+  @Test
+  public void partialFile_isResumedWithRangeRequest() throws IOException {
+    String url = baseUrl + "resumed";
+    writePartialFile(url, AUDIO_SIZE / 2);
+
+    assertArrayEquals(audioBytes, read(url));
+
+    assertEquals(Collections.singletonList("bytes=" + AUDIO_SIZE / 2 + "-"), rangeHeaders);
+    assertEquals(AUDIO_SIZE / 2, servedBytes.get());
+    awaitCached(url);
+    assertEquals(1, cache.getStats().get("resumes"));
+    assertFalse(cache.getPartialFile(url).exists());
+  }
+
+  @Test
+  public void partialFile_isReplacedIfServerIgnoresRange() throws IOException {
+    honorsRange = false;
+    String url = baseUrl + "restarted";
+    writePartialFile(url, AUDIO_SIZE / 2);
+
+    assertArrayEquals(audioBytes, read(url));
+
+    assertEquals(Collections.singletonList("bytes=" + AUDIO_SIZE / 2 + "-"), rangeHeaders);
+    assertEquals(AUDIO_SIZE, servedBytes.get());
+    File cachedFile = awaitCached(url);
+    assertEquals(AUDIO_SIZE, cachedFile.length());
+    assertEquals(0, cache.getStats().get("resumes"));
+  }
+
+  @Test
+  public void completePartialFile_isKeptOnRangeNotSatisfiable() throws IOException {
+    String url = baseUrl + "complete";
+    writePartialFile(url, AUDIO_SIZE);
+
+    assertArrayEquals(audioBytes, read(url));
+
+    assertEquals(Collections.singletonList("bytes=" + AUDIO_SIZE + "-"), rangeHeaders);
+    assertEquals(0, servedBytes.get());
+    assertEquals(AUDIO_SIZE, awaitCached(url).length());
+    assertFalse(cache.getPartialFile(url).exists());
+  }
+
+  @Test
+  public void leastRecentlyUsedFile_isEvicted() throws IOException {
+    cache.setMaxSizeBytes(AUDIO_SIZE * 5 / 2);
+    String firstUrl = baseUrl + "first";
+    String secondUrl = baseUrl + "second";
+    String thirdUrl = baseUrl + "third";
+    read(firstUrl);
+    awaitCached(firstUrl);
+    read(secondUrl);
+    File secondFile = awaitCached(secondUrl);
+    // Using the first file leaves the second least recently used.
+    assertNotNull(cache.getCachedFile(firstUrl));
+
+    read(thirdUrl);
+    awaitCached(thirdUrl);
+
+    assertNull(cache.getCachedFile(secondUrl));
+    assertFalse(secondFile.exists());
+    assertNotNull(cache.getCachedFile(firstUrl));
+    Map<String, Object> stats = cache.getStats();
+    assertEquals(1, stats.get("evictions"));
+    assertEquals(2L * AUDIO_SIZE, stats.get("sizeBytes"));
+  }
+
+  // Serves audioBytes, honoring a Range request unless honorsRange is false.
+  private void serve(HttpExchange exchange) throws IOException {
+    String range = exchange.getRequestHeaders().getFirst("Range");
+    rangeHeaders.add(range);
+    int start = 0;
+    if (range != null && honorsRange) {
+      // The cache only requests open-ended ranges, "bytes=<start>-".
+      start = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+      if (start >= AUDIO_SIZE) {
+        exchange.sendResponseHeaders(416, -1);
+        exchange.close();
+        return;
+      }
+      exchange
+          .getResponseHeaders()
+          .set("Content-Range", "bytes " + start + "-" + (AUDIO_SIZE - 1) + "/" + AUDIO_SIZE);
+      exchange.sendResponseHeaders(206, AUDIO_SIZE - start);
+    } else {
+      exchange.sendResponseHeaders(200, AUDIO_SIZE);
+    }
+    try (OutputStream body = exchange.getResponseBody()) {
+      body.write(audioBytes, start, AUDIO_SIZE - start);
+    }
+    servedBytes.addAndGet(AUDIO_SIZE - start);
+  }
+
+  // Leaves the first bytes of the audio in the partial file, as an interrupted download would.
+  private void writePartialFile(String url, int size) throws IOException {
+    File partialFile = cache.getPartialFile(url);
+    assertTrue(partialFile.getParentFile().mkdirs() || partialFile.getParentFile().isDirectory());
+    try (OutputStream outputStream = new FileOutputStream(partialFile)) {
+      outputStream.write(audioBytes, 0, size);
+    }
+  }
+
+  // Reads a URL through the cache, as a remote player does.
+  private byte[] read(String url) throws IOException {
+    CachingMediaDataSource dataSource =
+        new CachingMediaDataSource(cache, cache.acquireDownload(url));
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    byte[] buffer = new byte[4096];
+    int readSize;
+    while ((readSize = dataSource.readAt(bytes.size(), buffer, 0, buffer.length)) != -1) {
+      bytes.write(buffer, 0, readSize);
+    }
+    dataSource.close();
+    return bytes.toByteArray();
+  }
+
+  // Waits for the download of a URL to be added to the cache, which follows its last read.
+  private File awaitCached(String url) {
+    long deadlineNs = System.nanoTime() + AWAIT_TIMEOUT_NS;
+    File cachedFile;
+    while ((cachedFile = cache.getCachedFile(url)) == null) {
+      assertTrue("Timed out downloading " + url, System.nanoTime() < deadlineNs);
+      Thread.yield();
+    }
+    return cachedFile;
+  }
+}
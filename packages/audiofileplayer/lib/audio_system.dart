@@ -38,6 +38,31 @@ const String metadataGenreKey = 'metadataGenre';
 const String metadataDurationSecondsKey = 'metadataDurationSeconds';
 const String metadataArtBytesKey = 'metadataArtBytes';
 
+// Constants for the Android MediaPlayer pool.
+const String setPlayerPoolOptionsMethod = 'setPlayerPoolOptions';
+const String playerPoolMaxSizeKey = 'playerPoolMaxSize';
+const String playerPoolIdleTimeoutSecondsKey = 'playerPoolIdleTimeoutSeconds';
+const String getPlayerPoolStatsMethod = 'getPlayerPoolStats';
+
+// Constants for Android low-latency playback.
+const String setLowLatencyThresholdMethod = 'setLowLatencyThreshold';
+const String lowLatencyThresholdBytesKey = 'lowLatencyThresholdBytes';
+
+// Constants for the Android remote audio cache.
+const String setRemoteCacheOptionsMethod = 'setRemoteCacheOptions';
+const String remoteCacheMaxSizeBytesKey = 'remoteCacheMaxSizeBytes';
+const String getRemoteCacheStatsMethod = 'getRemoteCacheStats';
+const String prefetchMethod = 'prefetch';
+const String prefetchUrlsKey = 'prefetchUrls';
+const String prefetchPriorityKey = 'prefetchPriority';
+const String cancelPrefetchMethod = 'cancelPrefetch';
+
+// Constants for Android metrics.
+const String getMetricsMethod = 'getMetrics';
+const String setMetricsPushIntervalMethod = 'setMetricsPushInterval';
+const String metricsPushIntervalSecondsKey = 'metricsPushIntervalSeconds';
+const String onMetricsCallback = 'onMetrics';
+
 /// Represents audio playback category on iOS.
 ///
 /// An 'ambient' category should be used for tasks like game audio, whereas
@@ -142,6 +167,10 @@ class AudioSystem {
   void removeMediaEventListener(ValueChanged<MediaEvent> listener) =>
       _mediaEventListeners.remove(listener);
 
+  /// Called with the metrics which Android pushes periodically, once enabled
+  /// via [setAndroidMetricsPushInterval]; see [getAndroidMetrics].
+  ValueChanged<Map<String, dynamic>>? onAndroidMetrics;
+
   /// Inform the OS's background audio system about the playback state; used to
   /// set the progress bar in lockscreen/notification.
   ///
@@ -151,6 +180,11 @@ class AudioSystem {
   /// every second).
   void setPlaybackState(bool isPlaying, double positionSeconds) async {
     try {
+      if (useBinaryChannel) {
+        await sendBinaryCommand(setPlaybackStateCommand,
+            flag: isPlaying, value: positionSeconds);
+        return;
+      }
       await audioMethodChannel.invokeMethod<dynamic>(
           setPlaybackStateMethod, <String, dynamic>{
         playbackIsPlayingKey: isPlaying,
@@ -335,6 +369,196 @@ class AudioSystem {
     }
   }
 
+  /// Configures the pool of native players that Android reuses across
+  /// [Audio] load/release cycles.
+  ///
+  /// Reusing players cuts load latency for apps which load and release many
+  /// short sounds. [maxSize] bounds how many idle players are kept, and
+  /// [idleTimeoutSeconds] is how long an idle player is kept before it is
+  /// released. Null values leave the current setting unchanged.
+  ///
+  /// Only supported on Android; no-op otherwise.
+  Future<void> setAndroidPlayerPoolOptions(
+      {int? maxSize, double? idleTimeoutSeconds}) async {
+    if (!Platform.isAndroid) return;
+    try {
+      await audioMethodChannel.invokeMethod<dynamic>(
+          setPlayerPoolOptionsMethod, <String, dynamic>{
+        playerPoolMaxSizeKey: maxSize,
+        playerPoolIdleTimeoutSecondsKey: idleTimeoutSeconds
+      });
+    } on PlatformException catch (e) {
+      _logger.severe('setAndroidPlayerPoolOptions error', e);
+    }
+  }
+
+  /// Returns counters for the Android player pool, for sizing it via
+  /// [setAndroidPlayerPoolOptions].
+  ///
+  /// Keys are 'hits', 'misses', 'evictions', 'idle', and 'maxSize'.
+  ///
+  /// Only supported on Android; returns null otherwise.
+  Future<Map<String, int>?> getAndroidPlayerPoolStats() async {
+    if (!Platform.isAndroid) return null;
+    try {
+      final Map<dynamic, dynamic>? stats = await audioMethodChannel
+          .invokeMethod<Map<dynamic, dynamic>>(getPlayerPoolStatsMethod);
+      return stats?.cast<String, int>();
+    } on PlatformException catch (e) {
+      _logger.severe('getAndroidPlayerPoolStats error', e);
+      return null;
+    }
+  }
+
+  /// Sets the size, in bytes, below which local clips are played via Android's
+  /// low-latency engine when loaded without an explicit `lowLatency` flag.
+  ///
+  /// Zero (the default) disables automatic selection.
+  ///
+  /// Only supported on Android; no-op otherwise.
+  Future<void> setAndroidLowLatencyThresholdBytes(int thresholdBytes) async {
+    if (!Platform.isAndroid) return;
+    try {
+      await audioMethodChannel.invokeMethod<dynamic>(
+          setLowLatencyThresholdMethod,
+          <String, dynamic>{lowLatencyThresholdBytesKey: thresholdBytes});
+    } on PlatformException catch (e) {
+      _logger.severe('setAndroidLowLatencyThresholdBytes error', e);
+    }
+  }
+
+  /// Sets the maximum size, in bytes, of Android's disk cache of remote audio.
+  ///
+  /// While enabled, audio loaded via [Audio.loadFromRemoteUrl] is saved to the
+  /// app's cache directory as it plays, and later loads of the same URL play
+  /// from disk. Interrupted downloads are resumed. Least recently used files
+  /// are deleted once the cache exceeds [maxSizeBytes].
+  ///
+  /// Only use this for complete files (e.g. mp3 clips), not for live streams
+  /// or playlist formats such as HLS.
+  ///
+  /// Zero (the default) disables the cache. Only supported on Android M and
+  /// later; no-op otherwise.
+  Future<void> setAndroidRemoteCacheOptions({required int maxSizeBytes}) async {
+    if (!Platform.isAndroid) return;
+    try {
+      await audioMethodChannel.invokeMethod<dynamic>(
+          setRemoteCacheOptionsMethod,
+          <String, dynamic>{remoteCacheMaxSizeBytesKey: maxSizeBytes});
+    } on PlatformException catch (e) {
+      _logger.severe('setAndroidRemoteCacheOptions error', e);
+    }
+  }
+
+  /// Returns counters for the Android remote audio cache, for sizing it via
+  /// [setAndroidRemoteCacheOptions].
+  ///
+  /// Keys are 'hits', 'misses', 'resumes', 'prefetches', 'queuedPrefetches',
+  /// 'evictions', 'sizeBytes', and 'maxSizeBytes'.
+  ///
+  /// Only supported on Android; returns null otherwise.
+  Future<Map<String, int>?> getAndroidRemoteCacheStats() async {
+    if (!Platform.isAndroid) return null;
+    try {
+      final Map<dynamic, dynamic>? stats = await audioMethodChannel
+          .invokeMethod<Map<dynamic, dynamic>>(getRemoteCacheStatsMethod);
+      return stats?.cast<String, int>();
+    } on PlatformException catch (e) {
+      _logger.severe('getAndroidRemoteCacheStats error', e);
+      return null;
+    }
+  }
+
+  /// Downloads remote audio into Android's remote audio cache ahead of
+  /// playback, so that a later [Audio.loadFromRemoteUrl] of one of [urls]
+  /// plays from disk.
+  ///
+  /// Prefetches run in the background, a few at a time, with higher
+  /// [priority] values first. URLs which are already cached or downloading
+  /// are skipped. The cache must first be enabled via
+  /// [setAndroidRemoteCacheOptions].
+  ///
+  /// Only supported on Android M and later; no-op otherwise.
+  Future<void> prefetchAndroidRemoteAudio(List<String> urls,
+      {int priority = 0}) async {
+    if (!Platform.isAndroid) return;
+    try {
+      await audioMethodChannel.invokeMethod<dynamic>(
+          prefetchMethod, <String, dynamic>{
+        prefetchUrlsKey: urls,
+        prefetchPriorityKey: priority
+      });
+    } on PlatformException catch (e) {
+      _logger.severe('prefetchAndroidRemoteAudio error', e);
+    }
+  }
+
+  /// Cancels prefetches of [urls], or of all URLs if null.
+  ///
+  /// Partially downloaded files are kept, and are resumed by a later prefetch
+  /// or load.
+  ///
+  /// Only supported on Android; no-op otherwise.
+  Future<void> cancelAndroidRemoteAudioPrefetch([List<String>? urls]) async {
+    if (!Platform.isAndroid) return;
+    try {
+      await audioMethodChannel.invokeMethod<dynamic>(
+          cancelPrefetchMethod, <String, dynamic>{prefetchUrlsKey: urls});
+    } on PlatformException catch (e) {
+      _logger.severe('cancelAndroidRemoteAudioPrefetch error', e);
+    }
+  }
+
+  /// Returns metrics of Android's native audio playback, for monitoring it in
+  /// production.
+  ///
+  /// Keys are:
+  /// * 'elapsedMs': the time over which metrics have been recorded.
+  /// * 'counters': counts by name: 'messagesReceived' and 'messagesSent' over
+  ///   the method channel, 'loadFailures.<source>' by load source type, and
+  ///   'errors.<what>.<extra>' by MediaPlayer error code.
+  /// * 'latencies': for 'load.<source>' (from the load call to loading
+  ///   completion), 'play' (from the play call to the start of playback) and
+  ///   'seek' (from the seek call to its completion), a map of 'count',
+  ///   'totalMs', 'maxMs', 'p50Ms', 'p90Ms' and 'p99Ms'. Percentiles are
+  ///   approximate.
+  /// * 'gauges': 'livePlayers', 'liveMediaPlayers' (the players not backed by
+  ///   the low-latency engine), and 'bufferBytesResident' (the bytes of audio
+  ///   loaded from bytes and held off-heap).
+  ///
+  /// Only supported on Android; returns null otherwise.
+  Future<Map<String, dynamic>?> getAndroidMetrics() async {
+    if (!Platform.isAndroid) return null;
+    try {
+      final Map<dynamic, dynamic>? metrics = await audioMethodChannel
+          .invokeMethod<Map<dynamic, dynamic>>(getMetricsMethod);
+      return metrics?.cast<String, dynamic>();
+    } on PlatformException catch (e) {
+      _logger.severe('getAndroidMetrics error', e);
+      return null;
+    }
+  }
+
+  /// Makes Android push its metrics, as returned by [getAndroidMetrics], to
+  /// [onAndroidMetrics] every [intervalSeconds]. Null stops pushing them.
+  ///
+  /// Only supported on Android; no-op otherwise.
+  Future<void> setAndroidMetricsPushInterval(double? intervalSeconds) async {
+    if (!Platform.isAndroid) return;
+    try {
+      await audioMethodChannel.invokeMethod<dynamic>(
+          setMetricsPushIntervalMethod,
+          <String, dynamic>{metricsPushIntervalSecondsKey: intervalSeconds});
+    } on PlatformException catch (e) {
+      _logger.severe('setAndroidMetricsPushInterval error', e);
+    }
+  }
+
+  /// Handle metrics pushed by the native implementation layer.
+  void handleNativeMetricsCallback(Map<dynamic, dynamic> metrics) {
+    onAndroidMetrics?.call(metrics.cast<String, dynamic>());
+  }
+
   /// Handle the [MethodCall]s from the native implementation layer.
   void handleNativeMediaEventCallback(Map<dynamic, dynamic> arguments) {
     const Map<String, MediaActionType> stringToMediaActionType =
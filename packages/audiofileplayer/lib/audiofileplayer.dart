@@ -1,4 +1,6 @@
 import 'dart:async';
+import 'dart:convert' show utf8;
+import 'dart:io' show Platform;
 import 'dart:typed_data';
 import 'dart:ui' show AppLifecycleState;
 
@@ -18,9 +20,17 @@ const String flutterPathKey = 'flutterPath';
 const String absolutePathKey = 'absolutePath';
 const String audioBytesKey = 'audioBytes';
 const String remoteUrlKey = 'remoteUrl';
+const String streamedKey = 'streamed';
+const String appendBytesMethod = 'appendBytes';
+const String endBytesMethod = 'endBytes';
 const String audioIdKey = 'audioId';
 const String loopingKey = 'looping';
 const String playInBackgroundKey = 'playInBackground';
+const String lowLatencyKey = 'lowLatency';
+const String loadBatchMethod = 'loadBatch';
+const String loadSpecsKey = 'loadSpecs';
+const String loadSuccessKey = 'success';
+const String loadErrorMessageKey = 'errorMessage';
 const String releaseMethod = 'release';
 const String playMethod = 'play';
 const String playFromStartKey = 'playFromStart';
@@ -34,7 +44,44 @@ const String onDurationCallback = 'onDuration';
 const String durationSecondsKey = 'duration_seconds';
 const String onPositionCallback = 'onPosition';
 const String positionSecondsKey = 'position_seconds';
+const String onPositionsCallback = 'onPositions';
+const String positionsKey = 'positions';
+const String positionIntervalSecondsKey = 'positionIntervalSeconds';
 const String errorCode = 'AudioPluginError';
+const String playerHandleKey = 'playerHandle';
+
+// Constants for the binary channel, which carries the hot playback commands and
+// position events on Android in a fixed little-endian layout, with Audios
+// referred to by their integer handle.
+//
+// A command is 16 bytes: the command byte, a flag byte, 2 bytes of padding,
+// the int32 player handle, and a float64 value, NaN if absent. The reply is
+// empty on success, or else a UTF-8 error message.
+//
+// A positions event is the event byte, 3 bytes of padding, an int32 count,
+// then count float64 positions in seconds, then the count int32 handles of
+// their Audios.
+@visibleForTesting
+const String binaryChannelName = 'audiofileplayer/binary';
+const int binaryCommandLength = 16;
+const int playCommand = 1; // Flag: playFromStart. Value: endpointSeconds.
+const int pauseCommand = 2;
+const int seekCommand = 3; // Value: positionSeconds.
+const int setVolumeCommand = 4; // Value: volume.
+const int setPlaybackStateCommand = 5; // Flag: isPlaying. Value: position.
+const int onPositionsEvent = 1;
+
+// Constants for [AudioQueue].
+const String queueInsertMethod = 'queueInsert';
+const String queueRemoveMethod = 'queueRemove';
+const String queueSkipMethod = 'queueSkip';
+const String queueClearMethod = 'queueClear';
+const String queueAudioIdsKey = 'queueAudioIds';
+const String queueIndexKey = 'queueIndex';
+const String queueOffsetKey = 'queueOffset';
+const String onQueueAdvanceCallback = 'onQueueAdvance';
+const String queueStoppedAudioIdKey = 'queueStoppedAudioId';
+const String queuePlayingKey = 'queuePlaying';
 
 // Constants for [MediaActionType] and [AndroidMediaButtonType].
 const String onMediaEventCallback = 'onMediaEvent';
@@ -60,6 +107,37 @@ const String mediaCustomDrawableResourceKey = 'customDrawableResource';
 MethodChannel audioMethodChannel = const MethodChannel(channelName)
   ..setMethodCallHandler(Audio.handleMethodCall);
 
+BasicMessageChannel<ByteData?> audioBinaryChannel =
+    const BasicMessageChannel<ByteData?>(binaryChannelName, BinaryCodec())
+      ..setMessageHandler(Audio.handleBinaryMessage);
+
+/// Overrides whether [audioBinaryChannel] is used, for tests.
+@visibleForTesting
+bool? debugUseBinaryChannelOverride;
+
+/// Whether the hot playback commands are sent over [audioBinaryChannel]
+/// rather than [audioMethodChannel]; only Android supports it.
+bool get useBinaryChannel =>
+    debugUseBinaryChannelOverride ?? Platform.isAndroid;
+
+/// Sends a command over [audioBinaryChannel], throwing a [PlatformException]
+/// if the native layer replies with an error.
+Future<void> sendBinaryCommand(int command,
+    {int handle = 0, bool flag = false, double value = double.nan}) async {
+  final ByteData message = ByteData(binaryCommandLength)
+    ..setUint8(0, command)
+    ..setUint8(1, flag ? 1 : 0)
+    ..setInt32(4, handle, Endian.little)
+    ..setFloat64(8, value, Endian.little);
+  final ByteData? reply = await audioBinaryChannel.send(message);
+  if (reply != null && reply.lengthInBytes > 0) {
+    throw PlatformException(
+        code: errorCode,
+        message: utf8.decode(reply.buffer
+            .asUint8List(reply.offsetInBytes, reply.lengthInBytes)));
+  }
+}
+
 /// Specifies an action that the OS's background audio system may support.
 ///
 /// Values are used both to request what actions are enabled (see
@@ -239,44 +317,99 @@ class MediaEvent {
 /// and use all the methods in [AudioSystem] to communicate desired state and
 /// supported behavior to the OS's background audio system.
 class Audio with WidgetsBindingObserver {
-  Audio._path(this._path, this._onComplete, this._onDuration, this._onPosition,
-      this._onError, this._looping, this._playInBackground)
+  Audio._path(
+      this._path,
+      this._onComplete,
+      this._onDuration,
+      this._onPosition,
+      this._onError,
+      this._looping,
+      this._playInBackground,
+      this._lowLatency,
+      this._positionIntervalSeconds)
       : _audioId = _uuid.v4(),
         _absolutePath = null,
         _audioBytes = null,
-        _remoteUrl = null {
+        _remoteUrl = null,
+        _byteStream = null {
     WidgetsBinding.instance.addObserver(this);
   }
 
-  Audio._absolutePath(this._absolutePath, this._onComplete, this._onDuration,
-      this._onPosition, this._onError, this._looping, this._playInBackground)
+  Audio._absolutePath(
+      this._absolutePath,
+      this._onComplete,
+      this._onDuration,
+      this._onPosition,
+      this._onError,
+      this._looping,
+      this._playInBackground,
+      this._lowLatency,
+      this._positionIntervalSeconds)
       : _audioId = _uuid.v4(),
         _path = null,
         _audioBytes = null,
-        _remoteUrl = null {
+        _remoteUrl = null,
+        _byteStream = null {
     WidgetsBinding.instance.addObserver(this);
   }
 
-  Audio._byteData(ByteData byteData, this._onComplete, this._onDuration,
-      this._onPosition, this._onError, this._looping, this._playInBackground)
+  Audio._byteData(
+      ByteData byteData,
+      this._onComplete,
+      this._onDuration,
+      this._onPosition,
+      this._onError,
+      this._looping,
+      this._playInBackground,
+      this._lowLatency,
+      this._positionIntervalSeconds)
       : _audioId = _uuid.v4(),
         _audioBytes = Uint8List.view(byteData.buffer),
         _path = null,
         _absolutePath = null,
-        _remoteUrl = null {
+        _remoteUrl = null,
+        _byteStream = null {
     WidgetsBinding.instance.addObserver(this);
   }
 
-  Audio._remoteUrl(this._remoteUrl, this._onComplete, this._onDuration,
-      this._onPosition, this._onError, this._looping, this._playInBackground)
+  Audio._remoteUrl(
+      this._remoteUrl,
+      this._onComplete,
+      this._onDuration,
+      this._onPosition,
+      this._onError,
+      this._looping,
+      this._playInBackground,
+      this._positionIntervalSeconds)
       : _audioId = _uuid.v4(),
         _audioBytes = null,
         _path = null,
-        _absolutePath = null {
+        _absolutePath = null,
+        _lowLatency = null,
+        _byteStream = null {
+    WidgetsBinding.instance.addObserver(this);
+  }
+
+  Audio._byteStream(
+      this._byteStream,
+      this._onComplete,
+      this._onDuration,
+      this._onPosition,
+      this._onError,
+      this._looping,
+      this._playInBackground,
+      this._positionIntervalSeconds)
+      : _audioId = _uuid.v4(),
+        _audioBytes = null,
+        _path = null,
+        _absolutePath = null,
+        _remoteUrl = null,
+        _lowLatency = null {
     WidgetsBinding.instance.addObserver(this);
   }
 
   static final Uuid _uuid = Uuid();
+  static int _nextHandle = 1;
 
   // All extant, undisposed Audio objects.
   static final Map<String, Audio> _undisposedAudios = <String, Audio>{};
@@ -303,9 +436,9 @@ class Audio with WidgetsBindingObserver {
       _awaitingOnDurationAudios.length;
 
   // All Audio objects (including disposed ones), that are using an onPosition
-  // callback. Audios are added on play()/resume() and removed on
-  // pause()/playback completion.
-  static final Map<String, Audio> _usingOnPositionAudios = <String, Audio>{};
+  // callback, keyed by handle. Audios are added on play()/resume() and removed
+  // on pause()/playback completion.
+  static final Map<int, Audio> _usingOnPositionAudios = <int, Audio>{};
   @visibleForTesting
   static int get usingOnPositionAudiosCount => _usingOnPositionAudios.length;
 
@@ -313,12 +446,22 @@ class Audio with WidgetsBindingObserver {
   // callback.
   static final Map<String, Audio> _usingOnErrorAudios = <String, Audio>{};
 
+  // Set while [loadBatch] runs its callback, to collect the Audios it loads.
+  static List<Audio>? _batchedAudios;
+
   final String? _path;
   final String? _absolutePath;
   final Uint8List? _audioBytes;
   final String? _remoteUrl;
+  final Stream<Uint8List>? _byteStream;
   final String _audioId;
 
+  // Refers to this Audio on [audioBinaryChannel], in place of [_audioId].
+  final int _handle = _nextHandle++;
+
+  // Set while the chunks of [_byteStream] are being sent to the native layer.
+  StreamSubscription<Uint8List>? _byteStreamSubscription;
+
   void Function()? _onComplete;
   void Function(double duration)? _onDuration;
   void Function(double position)? _onPosition;
@@ -331,6 +474,14 @@ class Audio with WidgetsBindingObserver {
   /// Whether the [Audio] should continue playback when the app is backgrounded.
   bool _playInBackground = false;
 
+  /// Whether Android should play this [Audio] via its low-latency engine; null
+  /// lets Android choose by clip size.
+  final bool? _lowLatency;
+
+  /// How often Android sends [onPosition] during playback; null uses the
+  /// default of 0.25 seconds.
+  final double? _positionIntervalSeconds;
+
   bool _appPaused = false;
 
   /// Set while there is playback to a specified point.
@@ -343,15 +494,33 @@ class Audio with WidgetsBindingObserver {
   ///
   /// Returns null if asset cannot be loaded.
   /// Note that it returns an Audio sync'ly, though loading occurs async'ly.
+  ///
+  /// On Android, [lowLatency] plays short clips (e.g. UI sound effects) from
+  /// memory via a shared SoundPool, for near-zero latency on play; these do
+  /// not send position updates and can only seek to the start. Playing such a
+  /// clip from the start while it plays overlaps a new play with the previous
+  /// ones, and onComplete is called once none is playing. If null, clips
+  /// below the threshold set with
+  /// [AudioSystem.setAndroidLowLatencyThresholdBytes] use it. This also applies
+  /// to [loadFromAbsolutePath] and [loadFromByteData].
+  ///
+  /// On Android, [positionIntervalSeconds] sets how often [onPosition] is
+  /// called during playback (default 0.25 seconds, and at least 0.016
+  /// seconds). Positions of all playing Audios are sent together, and only
+  /// when they have changed. It is ignored for [lowLatency] clips, which send
+  /// no positions. This also applies to [loadFromAbsolutePath],
+  /// [loadFromByteData] and [loadFromRemoteUrl].
   static Audio load(String path,
       {void onComplete()?,
       void onDuration(double duration)?,
       void onPosition(double position)?,
       void onError(String? message)?,
       bool looping = false,
-      bool playInBackground = false}) {
+      bool playInBackground = false,
+      bool? lowLatency,
+      double? positionIntervalSeconds}) {
     final Audio audio = Audio._path(path, onComplete, onDuration, onPosition,
-        onError, looping, playInBackground)
+        onError, looping, playInBackground, lowLatency, positionIntervalSeconds)
       .._load();
     return audio;
   }
@@ -366,9 +535,19 @@ class Audio with WidgetsBindingObserver {
       void onPosition(double position)?,
       void onError(String? message)?,
       bool looping = false,
-      bool playInBackground = false}) {
-    final Audio audio = Audio._absolutePath(path, onComplete, onDuration,
-        onPosition, onError, looping, playInBackground)
+      bool playInBackground = false,
+      bool? lowLatency,
+      double? positionIntervalSeconds}) {
+    final Audio audio = Audio._absolutePath(
+        path,
+        onComplete,
+        onDuration,
+        onPosition,
+        onError,
+        looping,
+        playInBackground,
+        lowLatency,
+        positionIntervalSeconds)
       .._load();
     return audio;
   }
@@ -383,9 +562,19 @@ class Audio with WidgetsBindingObserver {
       void onPosition(double position)?,
       void onError(String? message)?,
       bool looping = false,
-      bool playInBackground = false}) {
-    final Audio audio = Audio._byteData(byteData, onComplete, onDuration,
-        onPosition, onError, looping, playInBackground)
+      bool playInBackground = false,
+      bool? lowLatency,
+      double? positionIntervalSeconds}) {
+    final Audio audio = Audio._byteData(
+        byteData,
+        onComplete,
+        onDuration,
+        onPosition,
+        onError,
+        looping,
+        playInBackground,
+        lowLatency,
+        positionIntervalSeconds)
       .._load();
     return audio;
   }
@@ -403,23 +592,118 @@ class Audio with WidgetsBindingObserver {
       void onPosition(double position)?,
       void onError(String? message)?,
       bool looping = false,
-      bool playInBackground = false}) {
+      bool playInBackground = false,
+      double? positionIntervalSeconds}) {
     if (Uri.tryParse(url) == null) return null;
     final Audio audio = Audio._remoteUrl(url, onComplete, onDuration,
-        onPosition, onError, looping, playInBackground)
+        onPosition, onError, looping, playInBackground, positionIntervalSeconds)
       .._load();
     return audio;
   }
 
+  /// Creates an Audio from a stream of audio bytes, e.g. a download.
+  ///
+  /// Chunks are sent to the native layer as they arrive, so that playback may
+  /// start before the whole stream has been received, and the full payload is
+  /// never sent in one message. Playback that reaches data which has not yet
+  /// arrived waits for it.
+  ///
+  /// Only supported on Android M and later; elsewhere, loading fails.
+  /// Note that it returns an Audio sync'ly, though loading occurs async'ly.
+  static Audio loadFromByteStream(Stream<Uint8List> byteStream,
+      {void onComplete()?,
+      void onDuration(double duration)?,
+      void onPosition(double position)?,
+      void onError(String? message)?,
+      bool looping = false,
+      bool playInBackground = false,
+      double? positionIntervalSeconds}) {
+    final Audio audio = Audio._byteStream(byteStream, onComplete, onDuration,
+        onPosition, onError, looping, playInBackground, positionIntervalSeconds)
+      .._load();
+    return audio;
+  }
+
+  /// Loads all Audios created within [loadAudios] in a single native call.
+  ///
+  /// Useful when preloading many clips at once; the Audios load concurrently,
+  /// and their [onDuration] callbacks are called once all have loaded.
+  /// ```dart
+  /// await Audio.loadBatch(() {
+  ///   _tap = Audio.load('assets/tap.wav');
+  ///   _chime = Audio.load('assets/chime.wav', onError: _onChimeError);
+  /// });
+  /// ```
+  /// Audios which fail to load call their onError callback; if any of them do
+  /// not have one, a [PlatformException] is thrown once the batch completes.
+  /// On platforms without batch support, each Audio is loaded individually.
+  static Future<void> loadBatch(void Function() loadAudios) async {
+    assert(_batchedAudios == null, 'Calls to loadBatch() may not be nested.');
+    final List<Audio> audios = _batchedAudios = <Audio>[];
+    try {
+      loadAudios();
+    } finally {
+      _batchedAudios = null;
+    }
+    if (audios.isEmpty) return;
+    _logger.info('Loading batch of ${audios.length} audios');
+
+    final List<Map<String, dynamic>> loadSpecs =
+        audios.map((Audio audio) => audio._loadArguments()).toList();
+    final Future<List<dynamic>?> resultsFuture =
+        audioMethodChannel.invokeListMethod<dynamic>(
+            loadBatchMethod, <String, dynamic>{loadSpecsKey: loadSpecs});
+    // Streamed Audios only finish loading once their bytes start arriving.
+    for (final Audio audio in audios) {
+      if (audio._byteStream != null) audio._sendByteStream();
+    }
+    final List<dynamic>? results;
+    try {
+      results = await resultsFuture;
+    } on MissingPluginException {
+      await Future.wait(audios.map((Audio audio) => audio._loadIndividually()));
+      return;
+    } on PlatformException catch (e) {
+      _logger.severe('loadBatch error', e);
+      final bool allHandled = audios
+          .map((Audio audio) => audio._onLoadError(e.message))
+          .fold(true, (bool a, bool b) => a && b);
+      if (!allHandled) rethrow;
+      return;
+    }
+
+    final Map<String, Audio> audiosById = <String, Audio>{
+      for (final Audio audio in audios) audio._audioId: audio
+    };
+    final List<String?> unhandledErrorMessages = <String?>[];
+    for (final Map<dynamic, dynamic> result in results!) {
+      final String audioId = result[audioIdKey];
+      if (result[loadSuccessKey] == true) {
+        _onDurationNative(audioId, result[durationSecondsKey]);
+      } else {
+        final String? message = result[loadErrorMessageKey];
+        if (!audiosById[audioId]!._onLoadError(message)) {
+          unhandledErrorMessages.add(message);
+        }
+      }
+    }
+    if (unhandledErrorMessages.isNotEmpty) {
+      throw PlatformException(
+          code: errorCode, message: unhandledErrorMessages.join('\n'));
+    }
+  }
+
   /// Loads an asset.
   ///
   /// Keeps strong reference to this Audio (for channel callback routing)
-  /// and requests underlying resource loading.
+  /// and requests underlying resource loading, unless it is part of a
+  /// [loadBatch].
   Future<void> _load() async {
     assert(_path != null ||
         _absolutePath != null ||
         _audioBytes != null ||
-        _remoteUrl != null);
+        _remoteUrl != null ||
+        _byteStream != null);
     assert(!_undisposedAudios.containsKey(_audioId));
     _logger.info('Loading audio $_audioId');
     // Note that we add the _audioId to _undisposedAudios before invoking a
@@ -429,32 +713,105 @@ class Audio with WidgetsBindingObserver {
     if (_onDuration != null) _awaitingOnDurationAudios[_audioId] = this;
     if (_onError != null) _usingOnErrorAudios[_audioId] = this;
 
+    if (_batchedAudios != null) {
+      _batchedAudios!.add(this);
+      return;
+    }
+    await _loadIndividually();
+  }
+
+  /// Requests underlying resource loading for this Audio alone.
+  Future<void> _loadIndividually() async {
     try {
-      await _sendMethodCall(_audioId, loadMethod, <String, dynamic>{
+      final Future<void> loaded =
+          _sendMethodCall(_audioId, loadMethod, _loadArguments());
+      // Streamed Audios only finish loading once their bytes start arriving.
+      if (_byteStream != null) _sendByteStream();
+      await loaded;
+    } on PlatformException catch (e) {
+      if (!_onLoadError(e.message)) {
+        // Audio does not use an onError callback: rethrow the exception.
+        rethrow;
+      }
+    }
+  }
+
+  Map<String, dynamic> _loadArguments() => <String, dynamic>{
         flutterPathKey: _path,
         absolutePathKey: _absolutePath,
         audioBytesKey: _audioBytes,
         remoteUrlKey: _remoteUrl,
+        streamedKey: _byteStream != null,
         audioIdKey: _audioId,
+        playerHandleKey: _handle,
         loopingKey: _looping,
-        playInBackgroundKey: _playInBackground
-      });
-    } on PlatformException catch (e) {
-      // Note that exceptions during [_load] are assumed to have failed to
-      // create underlying resources, so a call to [_releaseNative] is not
-      // required. Just remove the instance from the static structures it was
-      // added to within this call to [_load].
-      _undisposedAudios.remove(_audioId);
-      _awaitingOnDurationAudios.remove(_audioId);
-      final Audio? audio = _usingOnErrorAudios.remove(_audioId);
-      if (audio != null) {
-        // Audio has an onError callback.
-        audio._onError!(e.message);
-      } else {
-        // Audio does not use an onError callback: rethrow the exception.
-        rethrow;
-      }
-    }
+        playInBackgroundKey: _playInBackground,
+        lowLatencyKey: _lowLatency,
+        positionIntervalSecondsKey: _positionIntervalSeconds
+      };
+
+  /// Sends the chunks of [_byteStream] to the native layer as they arrive,
+  /// then marks the end of the stream.
+  ///
+  /// The stream is paused while each chunk is sent, so that chunks which the
+  /// native layer has yet to take do not pile up in memory.
+  void _sendByteStream() {
+    late final StreamSubscription<Uint8List> subscription;
+    subscription = _byteStream!.listen(
+        (Uint8List chunk) => subscription.pause(_sendMethodCall(
+                _audioId,
+                appendBytesMethod,
+                <String, dynamic>{audioIdKey: _audioId, audioBytesKey: chunk})
+            .catchError(_onByteStreamSendError)),
+        onError: (Object error) {
+          _logger.severe('Error in byte stream of audio $_audioId', error);
+          _endByteStream();
+        },
+        onDone: _endByteStream,
+        cancelOnError: true);
+    _byteStreamSubscription = subscription;
+  }
+
+  void _endByteStream() {
+    _byteStreamSubscription = null;
+    _sendMethodCall(
+            _audioId, endBytesMethod, <String, dynamic>{audioIdKey: _audioId})
+        .catchError(_onByteStreamSendError);
+  }
+
+  /// Stops sending [_byteStream] once sending fails, and calls onError if the
+  /// Audio has one.
+  void _onByteStreamSendError(Object error) {
+    _logger.severe('Could not send byte stream of audio $_audioId', error);
+    _cancelByteStream();
+    // Absent if the failure of the load has already been reported.
+    final Audio? audio = _usingOnErrorAudios[_audioId];
+    if (audio == null) return;
+    audio._onError!(error is PlatformException ? error.message : '$error');
+  }
+
+  /// Stops sending [_byteStream], once native resources are released.
+  void _cancelByteStream() {
+    _byteStreamSubscription?.cancel();
+    _byteStreamSubscription = null;
+  }
+
+  /// Handles a failed load, calling onError if the Audio has one.
+  ///
+  /// Returns false if the Audio does not use an onError callback, in which case
+  /// the caller should rethrow the error.
+  bool _onLoadError(String? message) {
+    // Note that exceptions during loading are assumed to have failed to
+    // create underlying resources, so a call to [_releaseNative] is not
+    // required. Just remove the instance from the static structures it was
+    // added to within [_load].
+    _cancelByteStream();
+    _undisposedAudios.remove(_audioId);
+    _awaitingOnDurationAudios.remove(_audioId);
+    final Audio? audio = _usingOnErrorAudios.remove(_audioId);
+    if (audio == null) return false;
+    audio._onError!(message);
+    return true;
   }
 
   /// Dispose this Audio.
@@ -478,6 +835,7 @@ class Audio with WidgetsBindingObserver {
     if (!_playing) {
       _usingOnErrorAudios.remove(_audioId);
       WidgetsBinding.instance.removeObserver(this);
+      _cancelByteStream();
       await _releaseNative(_audioId);
     }
   }
@@ -497,7 +855,7 @@ class Audio with WidgetsBindingObserver {
     _onDuration = null;
     _awaitingOnDurationAudios.remove(_audioId);
     _onPosition = null;
-    _usingOnPositionAudios.remove(_audioId);
+    _usingOnPositionAudios.remove(_handle);
   }
 
   /// Plays this [Audio] content from the beginning.
@@ -536,6 +894,18 @@ class Audio with WidgetsBindingObserver {
   // Shared code for both [play] and [resume].
   Future<void> _playHelper(
       {required bool playFromStart, required double? endpointSeconds}) async {
+    _markPlaying(endpointSeconds);
+
+    // If app is paused and audio should not play, return early. On app resume,
+    // the _playing flag will signify that audio should resume.
+    if (_appPaused && !_playInBackground) return;
+
+    await _playNative(playFromStart, endpointSeconds);
+  }
+
+  // Records that this Audio is playing, whether started from Dart or by the
+  // native [AudioQueue].
+  void _markPlaying(double? endpointSeconds) {
     _playing = true;
     _playingAudios[_audioId] = this;
     _endpointSeconds = endpointSeconds;
@@ -546,14 +916,19 @@ class Audio with WidgetsBindingObserver {
       _awaitingOnCompleteAudios[_audioId] = this;
     }
     if (_onPosition != null) {
-      _usingOnPositionAudios[_audioId] = this;
+      _usingOnPositionAudios[_handle] = this;
     }
+  }
 
-    // If app is paused and audio should not play, return early. On app resume,
-    // the _playing flag will signify that audio should resume.
-    if (_appPaused && !_playInBackground) return;
+  // Records that this Audio is no longer playing, without calling onComplete.
+  void _markPaused() {
+    _playing = false;
+    _playingAudios.remove(_audioId);
+    _usingOnPositionAudios.remove(_handle);
 
-    await _playNative(playFromStart, endpointSeconds);
+    // If audio is in [_awaitingOnCompleteAudios], remove it, without calling
+    // its _onComplete();
+    _awaitingOnCompleteAudios.remove(_audioId);
   }
 
   /// Pauses playing audio.
@@ -563,14 +938,7 @@ class Audio with WidgetsBindingObserver {
       return;
     }
 
-    _playing = false;
-    _playingAudios.remove(_audioId);
-    _usingOnPositionAudios.remove(_audioId);
-
-    // If audio is in [_awaitingOnCompleteAudios], remove it, without calling
-    // its _onComplete();
-    _awaitingOnCompleteAudios.remove(_audioId);
-
+    _markPaused();
     await _pauseNative();
   }
 
@@ -585,10 +953,14 @@ class Audio with WidgetsBindingObserver {
     }
 
     try {
-      await _sendMethodCall(_audioId, seekMethod, <String, dynamic>{
-        audioIdKey: _audioId,
-        positionSecondsKey: positionSeconds
-      });
+      if (useBinaryChannel) {
+        await _sendBinaryCommand(seekCommand, value: positionSeconds);
+      } else {
+        await _sendMethodCall(_audioId, seekMethod, <String, dynamic>{
+          audioIdKey: _audioId,
+          positionSecondsKey: positionSeconds
+        });
+      }
     } on PlatformException catch (e) {
       if (_usingOnErrorAudios.containsKey(_audioId)) {
         // Audio has an onError callback.
@@ -621,8 +993,12 @@ class Audio with WidgetsBindingObserver {
     _volume = volume;
 
     try {
-      await _sendMethodCall(_audioId, setVolumeMethod,
-          <String, dynamic>{audioIdKey: _audioId, volumeKey: volume});
+      if (useBinaryChannel) {
+        await _sendBinaryCommand(setVolumeCommand, value: volume);
+      } else {
+        await _sendMethodCall(_audioId, setVolumeMethod,
+            <String, dynamic>{audioIdKey: _audioId, volumeKey: volume});
+      }
     } on PlatformException catch (e) {
       if (_usingOnErrorAudios.containsKey(_audioId)) {
         // Audio has an onError callback.
@@ -653,6 +1029,11 @@ class Audio with WidgetsBindingObserver {
   /// Sends method call for starting playback.
   Future<void> _playNative(bool playFromStart, double? endpointSeconds) async {
     try {
+      if (useBinaryChannel) {
+        await _sendBinaryCommand(playCommand,
+            flag: playFromStart, value: endpointSeconds ?? double.nan);
+        return;
+      }
       final Map<String, dynamic> args = <String, dynamic>{
         audioIdKey: _audioId,
         playFromStartKey: playFromStart
@@ -673,8 +1054,12 @@ class Audio with WidgetsBindingObserver {
   /// Sends method call for pausing playback.
   Future<void> _pauseNative() async {
     try {
-      await _sendMethodCall(
-          _audioId, pauseMethod, <String, dynamic>{audioIdKey: _audioId});
+      if (useBinaryChannel) {
+        await _sendBinaryCommand(pauseCommand);
+      } else {
+        await _sendMethodCall(
+            _audioId, pauseMethod, <String, dynamic>{audioIdKey: _audioId});
+      }
     } on PlatformException catch (e) {
       if (_usingOnErrorAudios.containsKey(_audioId)) {
         // Audio has an onError callback.
@@ -703,6 +1088,7 @@ class Audio with WidgetsBindingObserver {
       // The audio has been disposed, so release native resources.
       _usingOnErrorAudios.remove(audioId);
       WidgetsBinding.instance.removeObserver(playingAudio);
+      playingAudio._cancelByteStream();
       _releaseNative(audioId);
     }
 
@@ -710,7 +1096,7 @@ class Audio with WidgetsBindingObserver {
     // _onComplete();
     _awaitingOnCompleteAudios.remove(audioId)?._onComplete!();
     // If audio is in [_usingOnPositionAudios], remove it.
-    _usingOnPositionAudios.remove(audioId);
+    _usingOnPositionAudios.remove(playingAudio._handle);
   }
 
   /// Handles callback from native layer, signifying that a newly loaded Audio
@@ -722,8 +1108,15 @@ class Audio with WidgetsBindingObserver {
   }
 
   /// Handles callback from native layer, signifying playback position updates.
-  static void _onPositionNative(String audioId, double positionSeconds) {
-    _usingOnPositionAudios[audioId]?._onPosition!(positionSeconds);
+  static void _onPositionNative(int handle, double positionSeconds) {
+    _usingOnPositionAudios[handle]?._onPosition!(positionSeconds);
+  }
+
+  /// Handles a playback position update sent over [audioMethodChannel], which
+  /// refers to the Audio by its id.
+  static void _onPositionNativeById(String audioId, double positionSeconds) {
+    final Audio? audio = _playingAudios[audioId];
+    if (audio != null) _onPositionNative(audio._handle, positionSeconds);
   }
 
   /// Release underlying audio assets.
@@ -758,6 +1151,22 @@ class Audio with WidgetsBindingObserver {
     }
   }
 
+  /// Send a command for this Audio over [audioBinaryChannel], wrapped in a
+  /// block to highlight/report errors.
+  Future<void> _sendBinaryCommand(int command,
+      {bool flag = false, double value = double.nan}) async {
+    try {
+      await sendBinaryCommand(command,
+          handle: _handle, flag: flag, value: value);
+    } on PlatformException catch (e) {
+      _logger.severe(
+          '_sendBinaryCommand error: audioId: $_audioId command: $command', e);
+      // Calling methods should do any cleanup. Then, either call the _onError
+      // callback (if the audio uses it), or rethrow again.
+      rethrow;
+    }
+  }
+
   /// Handle method callbacks from the native layer.
   @visibleForTesting
   static Future<void> handleMethodCall(MethodCall call) async {
@@ -773,13 +1182,135 @@ class Audio with WidgetsBindingObserver {
         break;
       case onPositionCallback:
         final double positionSeconds = arguments[positionSecondsKey];
-        _onPositionNative(audioId!, positionSeconds);
+        _onPositionNativeById(audioId!, positionSeconds);
+        break;
+      case onPositionsCallback:
+        final Map<dynamic, dynamic> positions = arguments[positionsKey];
+        positions.forEach((dynamic audioId, dynamic positionSeconds) =>
+            _onPositionNativeById(audioId, positionSeconds));
         break;
       case onMediaEventCallback:
         AudioSystem.instance.handleNativeMediaEventCallback(arguments);
         break;
+      case onMetricsCallback:
+        AudioSystem.instance.handleNativeMetricsCallback(arguments);
+        break;
+      case onQueueAdvanceCallback:
+        AudioQueue.instance._onAdvanceNative(arguments[queueStoppedAudioIdKey],
+            audioId, arguments[queuePlayingKey]);
+        break;
       default:
         _logger.severe('Unknown method ${call.method}');
     }
   }
+
+  /// Handle events sent over [audioBinaryChannel] from the native layer.
+  @visibleForTesting
+  static Future<ByteData?> handleBinaryMessage(ByteData? message) async {
+    if (message == null) return null;
+    final int event = message.getUint8(0);
+    switch (event) {
+      case onPositionsEvent:
+        final int count = message.getInt32(4, Endian.little);
+        final int handlesOffset = 8 + count * 8;
+        for (int i = 0; i < count; i++) {
+          _onPositionNative(
+              message.getInt32(handlesOffset + i * 4, Endian.little),
+              message.getFloat64(8 + i * 8, Endian.little));
+        }
+        break;
+      default:
+        _logger.severe('Unknown binary event $event');
+    }
+    return null;
+  }
+}
+
+/// A queue of [Audio]s which Android plays back to back, without gaps.
+///
+/// Once the current Audio completes, the next one starts natively, with no gap
+/// and no round trip to Dart. Audios must be loaded before they are queued
+/// (typically a little ahead of time), and must be neither low-latency nor
+/// looping, as a looping Audio never completes. Play and pause the [current]
+/// Audio as usual; [onAdvance] reports when the queue moves on.
+///
+/// ```dart
+/// final AudioQueue queue = AudioQueue.instance
+///   ..onAdvance = (Audio? audio) => setState(() {});
+/// await queue.append(<Audio>[Audio.load('a.mp3'), Audio.load('b.mp3')]);
+/// queue.current!.play();
+/// // ...
+/// queue.skip(1);
+/// ```
+///
+/// Disposing a queued Audio removes it from the queue.
+///
+/// Only supported on Android.
+class AudioQueue {
+  AudioQueue._();
+
+  static final AudioQueue instance = AudioQueue._();
+
+  /// The Audio which is playing, or would play next; null if the queue is
+  /// empty or has finished.
+  Audio? get current => _current;
+  Audio? _current;
+
+  /// Called when [current] changes, or is restarted by [skip].
+  void Function(Audio? audio)? onAdvance;
+
+  /// Adds loaded [audios] to the end of the queue.
+  Future<void> append(List<Audio> audios) => _insert(null, audios);
+
+  /// Inserts loaded [audios] into the queue before [index].
+  Future<void> insert(int index, List<Audio> audios) => _insert(index, audios);
+
+  Future<void> _insert(int? index, List<Audio> audios) async {
+    await audioMethodChannel
+        .invokeMethod<dynamic>(queueInsertMethod, <String, dynamic>{
+      queueIndexKey: index,
+      queueAudioIdsKey: audios.map((Audio audio) => audio._audioId).toList()
+    });
+  }
+
+  /// Removes [audio] from the queue. If it was [current] and playing, the
+  /// Audio which takes its place starts playing.
+  Future<void> remove(Audio audio) async {
+    await audioMethodChannel.invokeMethod<dynamic>(
+        queueRemoveMethod, <String, dynamic>{audioIdKey: audio._audioId});
+  }
+
+  /// Moves [offset] places through the queue from [current], e.g. 1 for the
+  /// next Audio or -1 for the previous one, and starts it from the beginning
+  /// if [current] was playing.
+  Future<void> skip(int offset) async {
+    await audioMethodChannel.invokeMethod<dynamic>(
+        queueSkipMethod, <String, dynamic>{queueOffsetKey: offset});
+  }
+
+  /// Empties the queue, leaving its Audios playing or paused as they are.
+  Future<void> clear() async {
+    await audioMethodChannel.invokeMethod<dynamic>(queueClearMethod);
+  }
+
+  void _onAdvanceNative(String? stoppedAudioId, String? audioId, bool playing) {
+    if (stoppedAudioId != null) {
+      final Audio? stoppedAudio = Audio._playingAudios[stoppedAudioId];
+      if (stoppedAudio != null) {
+        stoppedAudio._markPaused();
+        if (!Audio._undisposedAudios.containsKey(stoppedAudioId)) {
+          // Stopped after dispose(), so release native resources, as on
+          // playback completion.
+          Audio._usingOnErrorAudios.remove(stoppedAudioId);
+          WidgetsBinding.instance.removeObserver(stoppedAudio);
+          Audio._releaseNative(stoppedAudioId);
+        }
+      }
+    }
+    _current = audioId == null
+        ? null
+        : Audio._undisposedAudios[audioId] ?? Audio._playingAudios[audioId];
+    if (playing) _current?._markPlaying(null);
+    onAdvance?.call(_current);
+  }
 }
@@ -1,8 +1,12 @@
+import 'dart:async';
+import 'dart:convert';
+import 'dart:typed_data';
 import 'dart:ui' show AppLifecycleState;
 
 import 'package:flutter/services.dart';
 import 'package:flutter/widgets.dart' show WidgetsFlutterBinding;
 import 'package:flutter_test/flutter_test.dart';
+import 'package:audiofileplayer/audio_system.dart';
 import 'package:audiofileplayer/audiofileplayer.dart';
 
 const double _defaultPositionSeconds = 5.0;
@@ -27,6 +31,16 @@ void main() {
             message: _exceptionMessage,
           );
         }
+        if (methodCall.method == loadBatchMethod) {
+          final List<dynamic> loadSpecs = methodCall.arguments[loadSpecsKey];
+          return loadSpecs
+              .map((dynamic loadSpec) => <String, dynamic>{
+                    audioIdKey: loadSpec[audioIdKey],
+                    loadSuccessKey: true,
+                    durationSecondsKey: _defaultDurationSeconds
+                  })
+              .toList();
+        }
       });
       methodCalls.clear();
     });
@@ -295,6 +309,244 @@ void main() {
       expect(methodCalls.length, 2);
     });
 
+    test('batched onPositions calls onPosition of each playing audio', () {
+      double? fooPosition;
+      double? barPosition;
+      final Audio foo = Audio.load('foo.wav',
+          onPosition: (double p) => fooPosition = p,
+          positionIntervalSeconds: 0.1)
+        ..play();
+      final Audio bar =
+          Audio.load('bar.wav', onPosition: (double p) => barPosition = p)
+            ..play();
+      final Map<dynamic, dynamic> fooArguments = methodCalls[0].arguments;
+      expect(fooArguments[positionIntervalSecondsKey], 0.1);
+      final Map<dynamic, dynamic> barArguments = methodCalls[2].arguments;
+      expect(barArguments[positionIntervalSecondsKey], null);
+
+      Audio.handleMethodCall(MethodCall(onPositionsCallback, <String, dynamic>{
+        positionsKey: <String, double>{
+          fooArguments[audioIdKey]: 1.0,
+          barArguments[audioIdKey]: 2.0
+        }
+      }));
+      expect(fooPosition, 1.0);
+      expect(barPosition, 2.0);
+      foo
+        ..pause()
+        ..dispose();
+      bar
+        ..pause()
+        ..dispose();
+    });
+
+    test('binary channel carries hot commands and position events', () async {
+      final List<ByteData> binaryMessages = <ByteData>[];
+      audioBinaryChannel.setMockMessageHandler((ByteData? message) async {
+        binaryMessages.add(message!);
+        return null;
+      });
+      debugUseBinaryChannelOverride = true;
+      double? position;
+      final Audio audio =
+          Audio.load('foo.wav', onPosition: (double p) => position = p);
+      await audio.play(endpointSeconds: 2.5);
+      await audio.seek(1.5);
+      await audio.setVolume(0.5);
+      await audio.pause();
+      await audio.resume();
+
+      // Only the load goes over the method channel.
+      expect(methodCalls.length, 1);
+      final Map<dynamic, dynamic> arguments = methodCalls[0].arguments;
+      final int handle = arguments[playerHandleKey];
+      expect(binaryMessages.map((ByteData m) => m.getUint8(0)), <int>[
+        playCommand,
+        seekCommand,
+        setVolumeCommand,
+        pauseCommand,
+        playCommand
+      ]);
+      for (final ByteData message in binaryMessages) {
+        expect(message.lengthInBytes, binaryCommandLength);
+        expect(message.getInt32(4, Endian.little), handle);
+      }
+      // play() plays from the start, to the endpoint; resume() to the end.
+      expect(binaryMessages[0].getUint8(1), 1);
+      expect(binaryMessages[0].getFloat64(8, Endian.little), 2.5);
+      expect(binaryMessages[1].getFloat64(8, Endian.little), 1.5);
+      expect(binaryMessages[2].getFloat64(8, Endian.little), 0.5);
+      expect(binaryMessages[4].getUint8(1), 0);
+      expect(binaryMessages[4].getFloat64(8, Endian.little).isNaN, true);
+
+      // Mock a positions event for the audio, and for an unknown handle.
+      final ByteData event = ByteData(8 + 2 * 12)
+        ..setUint8(0, onPositionsEvent)
+        ..setInt32(4, 2, Endian.little)
+        ..setFloat64(8, 0.75, Endian.little)
+        ..setFloat64(16, 9.0, Endian.little)
+        ..setInt32(24, handle, Endian.little)
+        ..setInt32(28, -1, Endian.little);
+      await Audio.handleBinaryMessage(event);
+      expect(position, 0.75);
+
+      await audio.pause();
+      await audio.dispose();
+      debugUseBinaryChannelOverride = null;
+      audioBinaryChannel.setMockMessageHandler(null);
+    });
+
+    test('binary command error reply is thrown as PlatformException',
+        () async {
+      audioBinaryChannel.setMockMessageHandler((ByteData? message) async {
+        final Uint8List reply = utf8.encoder.convert(_exceptionMessage);
+        return ByteData.sublistView(reply);
+      });
+      debugUseBinaryChannelOverride = true;
+      final Audio audio = Audio.load('foo.wav');
+      await expectLater(
+          audio.seek(_defaultPositionSeconds),
+          throwsA(isA<PlatformException>()
+              .having((PlatformException e) => e.code, 'code', errorCode)
+              .having((PlatformException e) => e.message, 'message',
+                  _exceptionMessage)));
+      await audio.dispose();
+      debugUseBinaryChannelOverride = null;
+      audioBinaryChannel.setMockMessageHandler(null);
+    });
+
+    test('AudioQueue tracks the current audio as the native queue advances',
+        () async {
+      final Audio foo = Audio.load('foo.wav');
+      final Audio bar = Audio.load('bar.wav');
+      final List<Audio?> advances = <Audio?>[];
+      AudioQueue.instance.onAdvance = advances.add;
+      await AudioQueue.instance.append(<Audio>[foo, bar]);
+      expect(methodCalls[2].method, queueInsertMethod);
+      final Map<dynamic, dynamic> arguments = methodCalls[2].arguments;
+      final List<dynamic> queueAudioIds = arguments[queueAudioIdsKey];
+      expect(arguments[queueIndexKey], null);
+
+      // Mock the native queue making foo current, then playing bar gaplessly.
+      await Audio.handleMethodCall(
+          MethodCall(onQueueAdvanceCallback, <String, dynamic>{
+        audioIdKey: queueAudioIds[0],
+        queuePlayingKey: false
+      }));
+      expect(AudioQueue.instance.current, foo);
+      foo.play();
+      expect(Audio.playingAudiosCount, 1);
+      await Audio.handleMethodCall(
+          MethodCall(onQueueAdvanceCallback, <String, dynamic>{
+        queueStoppedAudioIdKey: queueAudioIds[0],
+        audioIdKey: queueAudioIds[1],
+        queuePlayingKey: true
+      }));
+      expect(AudioQueue.instance.current, bar);
+      expect(advances, <Audio?>[foo, bar]);
+      // bar was started natively, and foo stopped, without further calls.
+      expect(methodCalls.length, 4);
+      expect(Audio.playingAudiosCount, 1);
+      await bar.pause();
+      AudioQueue.instance.onAdvance = null;
+      foo.dispose();
+      bar.dispose();
+    });
+
+    test('pushed metrics are passed to onAndroidMetrics', () async {
+      Map<String, dynamic>? metrics;
+      AudioSystem.instance.onAndroidMetrics =
+          (Map<String, dynamic> m) => metrics = m;
+      await Audio.handleMethodCall(
+          MethodCall(onMetricsCallback, <String, dynamic>{
+        'elapsedMs': 1000,
+        'gauges': <String, dynamic>{'livePlayers': 2},
+      }));
+      expect(metrics!['elapsedMs'], 1000);
+      expect(metrics!['gauges']['livePlayers'], 2);
+      AudioSystem.instance.onAndroidMetrics = null;
+    });
+
+    test('lowLatency flag is sent on load, and is null by default', () {
+      Audio.load('foo.wav', lowLatency: true).dispose();
+      Audio.load('bar.wav').dispose();
+      expect(methodCalls[0].method, loadMethod);
+      final Map<dynamic, dynamic> arguments0 = methodCalls[0].arguments;
+      expect(arguments0[lowLatencyKey], true);
+      expect(methodCalls[2].method, loadMethod);
+      final Map<dynamic, dynamic> arguments2 = methodCalls[2].arguments;
+      expect(arguments2[lowLatencyKey], null);
+    });
+
+    test('loadFromByteStream sends chunks as they arrive, then ends', () async {
+      final StreamController<Uint8List> byteStreamController =
+          StreamController<Uint8List>();
+      final Audio audio = Audio.loadFromByteStream(byteStreamController.stream);
+      expect(methodCalls.length, 1);
+      expect(methodCalls[0].method, loadMethod);
+      final Map<dynamic, dynamic> arguments = methodCalls[0].arguments;
+      expect(arguments[streamedKey], true);
+
+      byteStreamController.add(Uint8List.fromList(<int>[1, 2]));
+      byteStreamController.add(Uint8List.fromList(<int>[3]));
+      await byteStreamController.close();
+      expect(
+          methodCalls.map((MethodCall methodCall) => methodCall.method),
+          <String>[
+            loadMethod,
+            appendBytesMethod,
+            appendBytesMethod,
+            endBytesMethod
+          ]);
+      final Map<dynamic, dynamic> appendArguments = methodCalls[1].arguments;
+      expect(appendArguments[audioIdKey], arguments[audioIdKey]);
+      expect(appendArguments[audioBytesKey], <int>[1, 2]);
+      await audio.dispose();
+    });
+
+    test('loadFromByteStream stops and calls onError() if sending fails',
+        () async {
+      final StreamController<Uint8List> byteStreamController =
+          StreamController<Uint8List>();
+      final Completer<String?> error = Completer<String?>();
+      final Audio audio = Audio.loadFromByteStream(byteStreamController.stream,
+          onError: error.complete);
+
+      _throwExceptionOnNextMethodCall = true;
+      byteStreamController.add(Uint8List.fromList(<int>[1, 2]));
+      expect(await error.future, _exceptionMessage);
+      expect(byteStreamController.hasListener, false);
+      byteStreamController.add(Uint8List.fromList(<int>[3]));
+      await byteStreamController.close();
+      expect(
+          methodCalls.map((MethodCall methodCall) => methodCall.method),
+          <String>[loadMethod, appendBytesMethod]);
+      await audio.dispose();
+    });
+
+    test('loadBatch loads all audios in one call, and calls onDuration',
+        () async {
+      final List<double> durations = <double>[];
+      late Audio foo;
+      late Audio bar;
+      await Audio.loadBatch(() {
+        foo = Audio.load('foo.wav', onDuration: durations.add);
+        bar = Audio.load('bar.wav', onDuration: durations.add);
+      });
+      expect(methodCalls.length, 1);
+      expect(methodCalls[0].method, loadBatchMethod);
+      final List<dynamic> loadSpecs = methodCalls[0].arguments[loadSpecsKey];
+      expect(loadSpecs.length, 2);
+      expect(loadSpecs[0][flutterPathKey], 'foo.wav');
+      expect(loadSpecs[1][flutterPathKey], 'bar.wav');
+      expect(durations,
+          <double>[_defaultDurationSeconds, _defaultDurationSeconds]);
+      expect(Audio.awaitingOnDurationAudiosCount, 0);
+      foo.dispose();
+      bar.dispose();
+      expect(Audio.undisposedAudiosCount, 0);
+    });
+
     test('PlatformException is caught and calls onError()', () {
       _throwExceptionOnNextMethodCall = true;
       final dynamic errorHandler = expectAsync1<dynamic, String>(
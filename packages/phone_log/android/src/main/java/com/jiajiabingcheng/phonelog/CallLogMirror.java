@@ -0,0 +1,341 @@
+package com.jiajiabingcheng.phonelog;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.os.CancellationSignal;
+import android.provider.CallLog;
+import android.text.TextUtils;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A copy of the call log in a local SQLite database, indexed for aggregate queries.
+ *
+ * <p>The mirror is kept in sync incrementally, like {@link CallLogQuery#sync} queries: only the
+ * rows past the stored sync mark are copied. Deleted rows cannot be found that way, so when the
+ * row counts differ after a sync, the ids of the call log are compared with the mirror's.
+ *
+ * <p>Aggregates are computed by SQLite, so that only their small results are sent to Dart. Methods
+ * run on background threads, one at a time.
+ */
+class CallLogMirror extends SQLiteOpenHelper {
+  static final String DATABASE_NAME = "phone_log_mirror.db";
+  // Version 2 normalizes numbers to E.164.
+  private static final int DATABASE_VERSION = 2;
+
+  private static final String[] SYNC_PROJECTION = getSyncProjection();
+
+  private final NumberNormalizer numberNormalizer;
+
+  CallLogMirror(Context context, NumberNormalizer numberNormalizer) {
+    super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    this.numberNormalizer = numberNormalizer;
+  }
+
+  @Override
+  public void onCreate(SQLiteDatabase db) {
+    db.execSQL(
+        "CREATE TABLE calls ("
+            + "_id INTEGER PRIMARY KEY, "
+            + "number TEXT, "
+            + "normalized_number TEXT, "
+            + "type INTEGER, "
+            + "date INTEGER, "
+            + "duration INTEGER)");
+    db.execSQL("CREATE INDEX calls_normalized_number ON calls (normalized_number, date)");
+    db.execSQL("CREATE INDEX calls_date ON calls (date)");
+    db.execSQL("CREATE TABLE sync_mark (after_id INTEGER, after_last_modified INTEGER)");
+  }
+
+  @Override
+  public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+    // The mirror is only a cache of the call log, so it is simply rebuilt.
+    db.execSQL("DROP TABLE IF EXISTS calls");
+    db.execSQL("DROP TABLE IF EXISTS sync_mark");
+    onCreate(db);
+  }
+
+  /**
+   * Copies the rows inserted, changed or deleted in the call log since the last sync.
+   *
+   * @return the number of rows copied or deleted.
+   */
+  synchronized int sync(ContentResolver contentResolver, CancellationSignal cancellationSignal) {
+    SQLiteDatabase db = getWritableDatabase();
+    CallLogQuery query = new CallLogQuery();
+    query.sync = true;
+    readSyncMark(db, query);
+
+    int changedCount = 0;
+    Cursor cursor =
+        contentResolver.query(
+            query.getUri(),
+            SYNC_PROJECTION,
+            query.getSelection(),
+            query.getSelectionArgs(),
+            query.getSortOrder(),
+            cancellationSignal);
+    if (cursor == null) {
+      return 0;
+    }
+    db.beginTransaction();
+    try {
+      int idIndex = cursor.getColumnIndex(CallLog.Calls._ID);
+      int numberIndex = cursor.getColumnIndex(CallLog.Calls.NUMBER);
+      int cachedMatchedNumberIndex = cursor.getColumnIndex(CallLog.Calls.CACHED_MATCHED_NUMBER);
+      int typeIndex = cursor.getColumnIndex(CallLog.Calls.TYPE);
+      int dateIndex = cursor.getColumnIndex(CallLog.Calls.DATE);
+      int durationIndex = cursor.getColumnIndex(CallLog.Calls.DURATION);
+      int lastModifiedIndex =
+          CallLogQuery.hasLastModified() ? cursor.getColumnIndex(CallLog.Calls.LAST_MODIFIED) : -1;
+      SQLiteStatement insert =
+          db.compileStatement(
+              "INSERT OR REPLACE INTO calls "
+                  + "(_id, number, normalized_number, type, date, duration) "
+                  + "VALUES (?, ?, ?, ?, ?, ?)");
+      while (cursor.moveToNext()) {
+        cancellationSignal.throwIfCanceled();
+        String cachedMatchedNumber = cursor.getString(cachedMatchedNumberIndex);
+        String number =
+            cachedMatchedNumber == null || cachedMatchedNumber.isEmpty()
+                ? cursor.getString(numberIndex)
+                : cachedMatchedNumber;
+        insert.clearBindings();
+        insert.bindLong(1, cursor.getLong(idIndex));
+        bindStringOrNull(insert, 2, number);
+        bindStringOrNull(insert, 3, numberNormalizer.normalize(number));
+        insert.bindLong(4, cursor.getInt(typeIndex));
+        insert.bindLong(5, cursor.getLong(dateIndex));
+        insert.bindLong(6, cursor.getLong(durationIndex));
+        insert.executeInsert();
+        changedCount++;
+
+        query.afterId = cursor.getLong(idIndex);
+        if (lastModifiedIndex >= 0) {
+          query.afterLastModified = cursor.getLong(lastModifiedIndex);
+        }
+      }
+      insert.close();
+      writeSyncMark(db, query);
+      changedCount += deleteRemovedRows(db, contentResolver, cancellationSignal);
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+      cursor.close();
+    }
+    return changedCount;
+  }
+
+  /**
+   * Returns the numbers called most often, as maps of their normalized number, call count, total
+   * duration and latest call date.
+   */
+  synchronized ArrayList<HashMap<String, Object>> getTopNumbers(
+      int limit, boolean byDuration, Long startDate, Long endDate) {
+    List<String> args = new ArrayList<>();
+    String where = getDateRangeCondition(startDate, endDate, args);
+    args.add(String.valueOf(limit));
+    Cursor cursor =
+        getReadableDatabase()
+            .rawQuery(
+                "SELECT normalized_number, COUNT(*), SUM(duration), MAX(date) FROM calls "
+                    + "WHERE normalized_number IS NOT NULL"
+                    + (where != null ? " AND " + where : "")
+                    + " GROUP BY normalized_number ORDER BY "
+                    + (byDuration ? "SUM(duration) DESC" : "COUNT(*) DESC")
+                    + " LIMIT ?",
+                args.toArray(new String[0]));
+    ArrayList<HashMap<String, Object>> numbers = new ArrayList<>();
+    try {
+      while (cursor.moveToNext()) {
+        HashMap<String, Object> number = new HashMap<>();
+        number.put("number", cursor.getString(0));
+        number.put("count", cursor.getLong(1));
+        number.put("totalDuration", cursor.getLong(2));
+        number.put("lastDate", cursor.getLong(3));
+        numbers.add(number);
+      }
+    } finally {
+      cursor.close();
+    }
+    return numbers;
+  }
+
+  /** Returns the call count and total duration of each call type, as parallel arrays. */
+  synchronized HashMap<String, Object> getTotals(Long startDate, Long endDate) {
+    List<String> args = new ArrayList<>();
+    String where = getDateRangeCondition(startDate, endDate, args);
+    Cursor cursor =
+        getReadableDatabase()
+            .rawQuery(
+                "SELECT type, COUNT(*), SUM(duration) FROM calls"
+                    + (where != null ? " WHERE " + where : "")
+                    + " GROUP BY type",
+                args.toArray(new String[0]));
+    try {
+      int size = cursor.getCount();
+      int[] types = new int[size];
+      long[] counts = new long[size];
+      long[] durations = new long[size];
+      for (int i = 0; cursor.moveToNext(); i++) {
+        types[i] = cursor.getInt(0);
+        counts[i] = cursor.getLong(1);
+        durations[i] = cursor.getLong(2);
+      }
+      HashMap<String, Object> totals = new HashMap<>();
+      totals.put("types", types);
+      totals.put("counts", counts);
+      totals.put("durations", durations);
+      return totals;
+    } finally {
+      cursor.close();
+    }
+  }
+
+  /**
+   * Returns the call count and total duration per hour or per day, in local time, as parallel
+   * arrays with the start date of each bucket. Buckets without calls are left out.
+   */
+  synchronized HashMap<String, Object> getHistogram(boolean hourly, Long startDate, Long endDate) {
+    List<String> args = new ArrayList<>();
+    String where = getDateRangeCondition(startDate, endDate, args);
+    // The start of the local hour or day of each call, in milliseconds since the epoch.
+    String localTime =
+        hourly
+            ? "strftime('%Y-%m-%d %H:00:00', date / 1000, 'unixepoch', 'localtime')"
+            : "date / 1000, 'unixepoch', 'localtime', 'start of day'";
+    String bucketStart = "strftime('%s', " + localTime + ", 'utc') * 1000";
+    Cursor cursor =
+        getReadableDatabase()
+            .rawQuery(
+                "SELECT "
+                    + bucketStart
+                    + " AS bucket_start, COUNT(*), SUM(duration) FROM calls"
+                    + (where != null ? " WHERE " + where : "")
+                    + " GROUP BY bucket_start ORDER BY bucket_start",
+                args.toArray(new String[0]));
+    try {
+      int size = cursor.getCount();
+      long[] bucketStarts = new long[size];
+      long[] counts = new long[size];
+      long[] durations = new long[size];
+      for (int i = 0; cursor.moveToNext(); i++) {
+        bucketStarts[i] = cursor.getLong(0);
+        counts[i] = cursor.getLong(1);
+        durations[i] = cursor.getLong(2);
+      }
+      HashMap<String, Object> histogram = new HashMap<>();
+      histogram.put("bucketStarts", bucketStarts);
+      histogram.put("counts", counts);
+      histogram.put("durations", durations);
+      return histogram;
+    } finally {
+      cursor.close();
+    }
+  }
+
+  // Deletes the mirrored rows which are no longer in the call log, if there are any.
+  private int deleteRemovedRows(
+      SQLiteDatabase db, ContentResolver contentResolver, CancellationSignal cancellationSignal) {
+    Cursor ids =
+        contentResolver.query(
+            CallLog.Calls.CONTENT_URI,
+            new String[] {CallLog.Calls._ID},
+            null,
+            null,
+            null,
+            cancellationSignal);
+    if (ids == null) {
+      return 0;
+    }
+    try {
+      SQLiteStatement count = db.compileStatement("SELECT COUNT(*) FROM calls");
+      long mirroredCount = count.simpleQueryForLong();
+      count.close();
+      // Every row of the call log has just been copied, so equal counts mean that none were
+      // deleted.
+      if (ids.getCount() == mirroredCount) {
+        return 0;
+      }
+      db.execSQL("CREATE TEMP TABLE IF NOT EXISTS call_log_ids (_id INTEGER PRIMARY KEY)");
+      db.execSQL("DELETE FROM call_log_ids");
+      SQLiteStatement insert = db.compileStatement("INSERT INTO call_log_ids VALUES (?)");
+      while (ids.moveToNext()) {
+        cancellationSignal.throwIfCanceled();
+        insert.bindLong(1, ids.getLong(0));
+        insert.executeInsert();
+      }
+      insert.close();
+      SQLiteStatement delete =
+          db.compileStatement("DELETE FROM calls WHERE _id NOT IN (SELECT _id FROM call_log_ids)");
+      int deletedCount = delete.executeUpdateDelete();
+      delete.close();
+      db.execSQL("DELETE FROM call_log_ids");
+      return deletedCount;
+    } finally {
+      ids.close();
+    }
+  }
+
+  private static void readSyncMark(SQLiteDatabase db, CallLogQuery query) {
+    Cursor cursor = db.rawQuery("SELECT after_id, after_last_modified FROM sync_mark", null);
+    try {
+      if (cursor.moveToFirst()) {
+        query.afterId = cursor.isNull(0) ? null : cursor.getLong(0);
+        query.afterLastModified = cursor.isNull(1) ? null : cursor.getLong(1);
+      }
+    } finally {
+      cursor.close();
+    }
+  }
+
+  private static void writeSyncMark(SQLiteDatabase db, CallLogQuery query) {
+    db.execSQL("DELETE FROM sync_mark");
+    db.execSQL(
+        "INSERT INTO sync_mark (after_id, after_last_modified) VALUES (?, ?)",
+        new Object[] {query.afterId, query.afterLastModified});
+  }
+
+  private static String getDateRangeCondition(Long startDate, Long endDate, List<String> args) {
+    List<String> conditions = new ArrayList<>();
+    if (startDate != null) {
+      conditions.add("date > ?");
+      args.add(startDate.toString());
+    }
+    if (endDate != null) {
+      conditions.add("date < ?");
+      args.add(endDate.toString());
+    }
+    return conditions.isEmpty() ? null : TextUtils.join(" AND ", conditions);
+  }
+
+  private static void bindStringOrNull(SQLiteStatement statement, int index, String value) {
+    if (value == null) {
+      statement.bindNull(index);
+    } else {
+      statement.bindString(index, value);
+    }
+  }
+
+  private static String[] getSyncProjection() {
+    List<String> projection =
+        new ArrayList<>(
+            Arrays.asList(
+                CallLog.Calls._ID,
+                CallLog.Calls.NUMBER,
+                CallLog.Calls.CACHED_MATCHED_NUMBER,
+                CallLog.Calls.TYPE,
+                CallLog.Calls.DATE,
+                CallLog.Calls.DURATION));
+    if (CallLogQuery.hasLastModified()) {
+      projection.add(CallLog.Calls.LAST_MODIFIED);
+    }
+    return projection.toArray(new String[0]);
+  }
+}
@@ -0,0 +1,287 @@
+package com.jiajiabingcheng.phonelog;
+
+import android.net.Uri;
+import android.os.Build;
+import android.provider.CallLog;
+import android.text.TextUtils;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The selection, order and limit of a query on the call log.
+ *
+ * <p>All filters are passed to the provider as selection args, so that only matching rows are
+ * read. Rows are ordered by date or duration, newest or longest first unless ascending, with the
+ * id breaking ties. A page of the call log is fetched by limiting the query, and the following page
+ * by passing the sort key and id of the last row of the previous page as a keyset cursor, so that
+ * each page is a cheap range query rather than an ever growing offset.
+ */
+class CallLogQuery {
+  // The names of the call record fields which may be requested.
+  static final String FORMATTED_NUMBER_FIELD = "formattedNumber";
+  static final String NUMBER_FIELD = "number";
+  static final String NORMALIZED_NUMBER_FIELD = "normalizedNumber";
+  static final String CALL_TYPE_FIELD = "callType";
+  static final String DATE_FIELD = "date";
+  static final String DURATION_FIELD = "duration";
+
+  /** Only rows dated after this, in milliseconds since the epoch. */
+  Long startDate;
+  /** Only rows dated before this, in milliseconds since the epoch. */
+  Long endDate;
+  /** Only rows lasting longer than this, in seconds. */
+  Long minDuration;
+  /** Only rows lasting less than this, in seconds. */
+  Long maxDuration;
+  /** Only rows of these {@code CallLog.Calls} types, if any. */
+  List<Integer> types;
+  /** Only rows with this number, or starting with it if {@link #numberPrefix}. */
+  String number;
+
+  boolean numberPrefix;
+  /** The column to sort rows by, {@link CallLog.Calls#DATE} or {@link CallLog.Calls#DURATION}. */
+  String sortColumn = CallLog.Calls.DATE;
+
+  boolean ascending;
+  /** The sort key of the last row of the previous page, if any. */
+  Long pageKey;
+  /** The id of the last row of the previous page, if any. */
+  Long pageId;
+  /** The maximum number of rows, or 0 for no limit. */
+  int limit;
+  /** The id by which the query may be cancelled, if any. */
+  Integer requestId;
+  /**
+   * The call record fields to fetch, or null for all of them. Only the columns they need are read.
+   */
+  Set<String> fields;
+  /** Whether to send dates as milliseconds since the epoch, rather than as calendar fields. */
+  boolean rawDates;
+  /**
+   * Whether this is a sync query, whose rows are ordered by modification, oldest first, and sent
+   * with their ids.
+   */
+  boolean sync;
+  /** For a sync query, the modification time of the last row of the previous sync, if any. */
+  Long afterLastModified;
+  /** For a sync query, the id of the last row of the previous sync, if any. */
+  Long afterId;
+
+  /** Reads a query from the arguments of a method call or of a stream subscription. */
+  static CallLogQuery fromArguments(Map<?, ?> arguments) {
+    CallLogQuery query = new CallLogQuery();
+    if (arguments == null) {
+      return query;
+    }
+    query.startDate = getLong(arguments, "startDate");
+    query.endDate = getLong(arguments, "endDate");
+    query.minDuration = getLong(arguments, "duration");
+    query.maxDuration = getLong(arguments, "maxDuration");
+    Object types = arguments.get("types");
+    if (types instanceof List) {
+      query.types = new ArrayList<>();
+      for (Object type : (List<?>) types) {
+        query.types.add(((Number) type).intValue());
+      }
+    }
+    query.number = (String) arguments.get("number");
+    query.numberPrefix = Boolean.TRUE.equals(arguments.get("numberPrefix"));
+    if ("duration".equals(arguments.get("sortBy"))) {
+      query.sortColumn = CallLog.Calls.DURATION;
+    }
+    query.ascending = Boolean.TRUE.equals(arguments.get("ascending"));
+    query.pageKey = getLong(arguments, "pageKey");
+    query.pageId = getLong(arguments, "pageId");
+    query.afterLastModified = getLong(arguments, "afterLastModified");
+    query.afterId = getLong(arguments, "afterId");
+    Long limit = getLong(arguments, "limit");
+    query.limit = limit != null ? limit.intValue() : 0;
+    Long requestId = getLong(arguments, "requestId");
+    query.requestId = requestId != null ? requestId.intValue() : null;
+    query.rawDates = Boolean.TRUE.equals(arguments.get("rawDates"));
+    Object fields = arguments.get("fields");
+    if (fields instanceof List) {
+      query.fields = new HashSet<>();
+      for (Object field : (List<?>) fields) {
+        query.fields.add((String) field);
+      }
+    }
+    return query;
+  }
+
+  boolean hasField(String field) {
+    return fields == null || fields.contains(field);
+  }
+
+  /** Returns the columns to read: those of the requested fields, and those the query relies on. */
+  String[] getProjection() {
+    List<String> projection = new ArrayList<>();
+    projection.add(CallLog.Calls._ID);
+    if (sync) {
+      if (hasLastModified()) {
+        projection.add(CallLog.Calls.LAST_MODIFIED);
+      }
+    } else {
+      // Read for the cursor of the following page.
+      projection.add(sortColumn);
+    }
+    if (hasField(FORMATTED_NUMBER_FIELD)) {
+      projection.add(CallLog.Calls.CACHED_FORMATTED_NUMBER);
+    }
+    if (hasField(NUMBER_FIELD) || hasField(NORMALIZED_NUMBER_FIELD)) {
+      projection.add(CallLog.Calls.CACHED_MATCHED_NUMBER);
+      projection.add(CallLog.Calls.NUMBER);
+    }
+    if (hasField(CALL_TYPE_FIELD)) {
+      projection.add(CallLog.Calls.TYPE);
+    }
+    if (hasField(DATE_FIELD) && !projection.contains(CallLog.Calls.DATE)) {
+      projection.add(CallLog.Calls.DATE);
+    }
+    if (hasField(DURATION_FIELD) && !projection.contains(CallLog.Calls.DURATION)) {
+      projection.add(CallLog.Calls.DURATION);
+    }
+    return projection.toArray(new String[0]);
+  }
+
+  Uri getUri() {
+    if (limit <= 0) {
+      return CallLog.Calls.CONTENT_URI;
+    }
+    return CallLog.Calls.CONTENT_URI
+        .buildUpon()
+        .appendQueryParameter(CallLog.Calls.LIMIT_PARAM_KEY, String.valueOf(limit))
+        .build();
+  }
+
+  String getSelection() {
+    List<String> conditions = new ArrayList<>();
+    if (startDate != null) {
+      conditions.add(CallLog.Calls.DATE + " > ?");
+    }
+    if (endDate != null) {
+      conditions.add(CallLog.Calls.DATE + " < ?");
+    }
+    if (minDuration != null) {
+      conditions.add(CallLog.Calls.DURATION + " > ?");
+    }
+    if (maxDuration != null) {
+      conditions.add(CallLog.Calls.DURATION + " < ?");
+    }
+    if (types != null && !types.isEmpty()) {
+      List<String> placeholders = Collections.nCopies(types.size(), "?");
+      conditions.add(CallLog.Calls.TYPE + " IN (" + TextUtils.join(", ", placeholders) + ")");
+    }
+    if (number != null) {
+      conditions.add(
+          numberPrefix
+              ? CallLog.Calls.NUMBER + " LIKE ? ESCAPE '\\'"
+              : CallLog.Calls.NUMBER + " = ?");
+    }
+    if (sync && afterId != null) {
+      if (hasLastModified() && afterLastModified != null) {
+        conditions.add(
+            "("
+                + CallLog.Calls.LAST_MODIFIED
+                + " > ? OR ("
+                + CallLog.Calls.LAST_MODIFIED
+                + " = ? AND "
+                + CallLog.Calls._ID
+                + " > ?))");
+      } else {
+        conditions.add(CallLog.Calls._ID + " > ?");
+      }
+    }
+    if (pageKey != null && pageId != null) {
+      String comparison = ascending ? " > ?" : " < ?";
+      conditions.add(
+          "("
+              + sortColumn
+              + comparison
+              + " OR ("
+              + sortColumn
+              + " = ? AND "
+              + CallLog.Calls._ID
+              + comparison
+              + "))");
+    }
+    return conditions.isEmpty() ? null : TextUtils.join(" AND ", conditions);
+  }
+
+  String[] getSelectionArgs() {
+    List<String> args = new ArrayList<>();
+    if (startDate != null) {
+      args.add(startDate.toString());
+    }
+    if (endDate != null) {
+      args.add(endDate.toString());
+    }
+    if (minDuration != null) {
+      args.add(minDuration.toString());
+    }
+    if (maxDuration != null) {
+      args.add(maxDuration.toString());
+    }
+    if (types != null) {
+      for (Integer type : types) {
+        args.add(type.toString());
+      }
+    }
+    if (number != null) {
+      args.add(numberPrefix ? escapeLikePattern(number) + "%" : number);
+    }
+    if (sync && afterId != null) {
+      if (hasLastModified() && afterLastModified != null) {
+        args.add(afterLastModified.toString());
+        args.add(afterLastModified.toString());
+      }
+      args.add(afterId.toString());
+    }
+    if (pageKey != null && pageId != null) {
+      args.add(pageKey.toString());
+      args.add(pageKey.toString());
+      args.add(pageId.toString());
+    }
+    return args.isEmpty() ? null : args.toArray(new String[0]);
+  }
+
+  String getSortOrder() {
+    if (sync) {
+      return hasLastModified()
+          ? CallLog.Calls.LAST_MODIFIED + " ASC, " + CallLog.Calls._ID + " ASC"
+          : CallLog.Calls._ID + " ASC";
+    }
+    // The id breaks ties between rows with the same sort key, so that the keyset cursor neither
+    // skips nor repeats rows.
+    String direction = ascending ? " ASC" : " DESC";
+    return sortColumn + direction + ", " + CallLog.Calls._ID + direction;
+  }
+
+  /**
+   * Whether the call log records when each row was last modified. Without it, sync queries only
+   * see inserted rows.
+   */
+  static boolean hasLastModified() {
+    return Build.VERSION.SDK_INT >= Build.VERSION_CODES.N;
+  }
+
+  private static String escapeLikePattern(String pattern) {
+    return pattern.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+  }
+
+  // Reads a number which may also be passed as a string, as the original getPhoneLogs arguments
+  // are.
+  static Long getLong(Map<?, ?> arguments, String key) {
+    Object value = arguments.get(key);
+    if (value instanceof Number) {
+      return ((Number) value).longValue();
+    } else if (value instanceof String) {
+      return Long.parseLong((String) value);
+    }
+    return null;
+  }
+}
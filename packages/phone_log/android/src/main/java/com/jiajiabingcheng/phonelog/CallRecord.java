@@ -1,11 +1,14 @@
 package com.jiajiabingcheng.phonelog;
 
 import java.util.HashMap;
+import java.util.Set;
 
 class CallRecord {
 
   CallRecord() {}
 
+  // The id of the row, only set for sync queries.
+  Long id;
   // Note about the different number fields:
   // Depending on how the number is dialed by the user
   // i.e. manually entered through the device's dialpad,
@@ -15,7 +18,12 @@ class CallRecord {
   // either the number or formattedNumber field.
   String formattedNumber;
   String number;
+  // The number in canonical form, E.164 where possible.
+  String normalizedNumber;
   String callType;
+  // The date in milliseconds since the epoch, set instead of the calendar fields below when the
+  // caller asked for raw dates.
+  Long date;
   int dateYear;
   int dateMonth;
   int dateDay;
@@ -24,18 +32,37 @@ class CallRecord {
   int dateSecond;
   long duration;
 
-  HashMap<String, Object> toMap() {
+  /** Builds the map of the given fields, as named by {@link CallLogQuery}, or of all if null. */
+  HashMap<String, Object> toMap(Set<String> fields) {
     HashMap<String, Object> recordMap = new HashMap<>();
-    recordMap.put("formattedNumber", formattedNumber);
-    recordMap.put("number", number);
-    recordMap.put("callType", callType);
-    recordMap.put("dateYear", dateYear);
-    recordMap.put("dateMonth", dateMonth);
-    recordMap.put("dateDay", dateDay);
-    recordMap.put("dateHour", dateHour);
-    recordMap.put("dateMinute", dateMinute);
-    recordMap.put("dateSecond", dateSecond);
-    recordMap.put("duration", duration);
+    if (id != null) {
+      recordMap.put("id", id);
+    }
+    if (fields == null || fields.contains(CallLogQuery.FORMATTED_NUMBER_FIELD)) {
+      recordMap.put("formattedNumber", formattedNumber);
+    }
+    if (fields == null || fields.contains(CallLogQuery.NUMBER_FIELD)) {
+      recordMap.put("number", number);
+    }
+    if (fields == null || fields.contains(CallLogQuery.NORMALIZED_NUMBER_FIELD)) {
+      recordMap.put("normalizedNumber", normalizedNumber);
+    }
+    if (fields == null || fields.contains(CallLogQuery.CALL_TYPE_FIELD)) {
+      recordMap.put("callType", callType);
+    }
+    if (date != null) {
+      recordMap.put("date", date);
+    } else if (fields == null || fields.contains(CallLogQuery.DATE_FIELD)) {
+      recordMap.put("dateYear", dateYear);
+      recordMap.put("dateMonth", dateMonth);
+      recordMap.put("dateDay", dateDay);
+      recordMap.put("dateHour", dateHour);
+      recordMap.put("dateMinute", dateMinute);
+      recordMap.put("dateSecond", dateSecond);
+    }
+    if (fields == null || fields.contains(CallLogQuery.DURATION_FIELD)) {
+      recordMap.put("duration", duration);
+    }
 
     return recordMap;
   }
@@ -0,0 +1,114 @@
+package com.jiajiabingcheng.phonelog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Set;
+
+/**
+ * Call records stored column by column, as an alternative to one {@link CallRecord} map per call.
+ *
+ * <p>Dates, durations and types are kept in primitive arrays, which StandardMessageCodec writes as
+ * typed data. Numbers repeat a lot in a call log, so each distinct number is kept once in a string
+ * table and referenced by index, with -1 standing for a null number.
+ */
+class CallRecordColumns {
+  private static final int INITIAL_CAPACITY = 64;
+
+  // The fields to send, as named by CallLogQuery, or null for all of them.
+  private final Set<String> fields;
+
+  private int size;
+  private long[] dates = new long[INITIAL_CAPACITY];
+  private long[] durations = new long[INITIAL_CAPACITY];
+  private int[] types = new int[INITIAL_CAPACITY];
+  private final StringTable numbers = new StringTable();
+  private final StringTable normalizedNumbers = new StringTable();
+  private final StringTable formattedNumbers = new StringTable();
+
+  CallRecordColumns(Set<String> fields) {
+    this.fields = fields;
+  }
+
+  int size() {
+    return size;
+  }
+
+  /** Adds a call, with its type as one of the {@code CallLog.Calls} type constants. */
+  void add(
+      String formattedNumber,
+      String number,
+      String normalizedNumber,
+      int type,
+      long date,
+      long duration) {
+    if (size == dates.length) {
+      int capacity = size * 2;
+      dates = Arrays.copyOf(dates, capacity);
+      durations = Arrays.copyOf(durations, capacity);
+      types = Arrays.copyOf(types, capacity);
+    }
+    dates[size] = date;
+    durations[size] = duration;
+    types[size] = type;
+    numbers.add(number, size);
+    normalizedNumbers.add(normalizedNumber, size);
+    formattedNumbers.add(formattedNumber, size);
+    size++;
+  }
+
+  HashMap<String, Object> toMap() {
+    HashMap<String, Object> columnsMap = new HashMap<>();
+    columnsMap.put("size", size);
+    if (hasField(CallLogQuery.DATE_FIELD)) {
+      columnsMap.put("dates", Arrays.copyOf(dates, size));
+    }
+    if (hasField(CallLogQuery.DURATION_FIELD)) {
+      columnsMap.put("durations", Arrays.copyOf(durations, size));
+    }
+    if (hasField(CallLogQuery.CALL_TYPE_FIELD)) {
+      columnsMap.put("types", Arrays.copyOf(types, size));
+    }
+    if (hasField(CallLogQuery.NUMBER_FIELD)) {
+      columnsMap.put("numbers", numbers.strings);
+      columnsMap.put("numberIndexes", Arrays.copyOf(numbers.indexes, size));
+    }
+    if (hasField(CallLogQuery.NORMALIZED_NUMBER_FIELD)) {
+      columnsMap.put("normalizedNumbers", normalizedNumbers.strings);
+      columnsMap.put("normalizedNumberIndexes", Arrays.copyOf(normalizedNumbers.indexes, size));
+    }
+    if (hasField(CallLogQuery.FORMATTED_NUMBER_FIELD)) {
+      columnsMap.put("formattedNumbers", formattedNumbers.strings);
+      columnsMap.put("formattedNumberIndexes", Arrays.copyOf(formattedNumbers.indexes, size));
+    }
+    return columnsMap;
+  }
+
+  private boolean hasField(String field) {
+    return fields == null || fields.contains(field);
+  }
+
+  /** A column of strings, each distinct string stored once. */
+  private static class StringTable {
+    final ArrayList<String> strings = new ArrayList<>();
+    private final HashMap<String, Integer> stringIndexes = new HashMap<>();
+    int[] indexes = new int[INITIAL_CAPACITY];
+
+    void add(String string, int row) {
+      if (row == indexes.length) {
+        indexes = Arrays.copyOf(indexes, row * 2);
+      }
+      if (string == null) {
+        indexes[row] = -1;
+        return;
+      }
+      Integer index = stringIndexes.get(string);
+      if (index == null) {
+        index = strings.size();
+        strings.add(string);
+        stringIndexes.put(string, index);
+      }
+      indexes[row] = index;
+    }
+  }
+}
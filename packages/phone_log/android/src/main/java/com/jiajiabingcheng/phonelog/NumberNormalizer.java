@@ -0,0 +1,71 @@
+package com.jiajiabingcheng.phonelog;
+
+import android.content.Context;
+import android.os.Build;
+import android.telephony.PhoneNumberUtils;
+import android.telephony.TelephonyManager;
+import android.util.LruCache;
+import java.util.Locale;
+
+/**
+ * Normalizes call log numbers to a canonical form, so that calls from the same number may be
+ * grouped whichever way it was dialed.
+ *
+ * <p>Numbers are formatted to E.164 for the country of the device where possible, and otherwise
+ * stripped of everything but digits and a leading plus. A call log repeats the same few numbers
+ * over and over, so the results are kept in an LRU cache keyed by the raw number, and each
+ * distinct number is only normalized once. The cache is thread safe.
+ */
+class NumberNormalizer {
+  private static final int CACHE_SIZE = 1024;
+
+  private final String countryIso;
+  private final LruCache<String, String> cache = new LruCache<>(CACHE_SIZE);
+
+  NumberNormalizer(Context context) {
+    this.countryIso = getCountryIso(context);
+  }
+
+  /** Returns the normalized form of a number, or null if it is null or empty. */
+  String normalize(String number) {
+    if (number == null || number.isEmpty()) {
+      return null;
+    }
+    String normalized = cache.get(number);
+    if (normalized == null) {
+      normalized = normalizeUncached(number);
+      cache.put(number, normalized);
+    }
+    return normalized;
+  }
+
+  private String normalizeUncached(String number) {
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+      return PhoneNumberUtils.stripSeparators(number);
+    }
+    if (countryIso != null) {
+      String e164 = PhoneNumberUtils.formatNumberToE164(number, countryIso);
+      if (e164 != null) {
+        return e164;
+      }
+    }
+    // Not a valid number for the country, such as a short code: keep its digits.
+    return PhoneNumberUtils.normalizeNumber(number);
+  }
+
+  // The country of the network the device is on, or else of its SIM, as an upper case ISO code.
+  private static String getCountryIso(Context context) {
+    TelephonyManager telephonyManager =
+        (TelephonyManager) context.getSystemService(Context.TELEPHONY_SERVICE);
+    if (telephonyManager == null) {
+      return null;
+    }
+    String countryIso = telephonyManager.getNetworkCountryIso();
+    if (countryIso == null || countryIso.isEmpty()) {
+      countryIso = telephonyManager.getSimCountryIso();
+    }
+    return countryIso == null || countryIso.isEmpty()
+        ? null
+        : countryIso.toUpperCase(Locale.US);
+  }
+}
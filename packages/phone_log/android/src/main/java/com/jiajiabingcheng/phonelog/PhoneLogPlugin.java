@@ -3,10 +3,17 @@ package com.jiajiabingcheng.phonelog;
 import android.Manifest;
 import android.annotation.TargetApi;
 import android.app.Activity;
+import android.content.ContentResolver;
 import android.content.Context;
 import android.content.pm.PackageManager;
+import android.database.ContentObserver;
 import android.database.Cursor;
 import android.os.Build;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.OperationCanceledException;
+import android.os.Trace;
 import android.provider.CallLog;
 import android.util.Log;
 import androidx.annotation.NonNull;
@@ -14,6 +21,9 @@ import io.flutter.embedding.engine.plugins.FlutterPlugin;
 import io.flutter.embedding.engine.plugins.activity.ActivityAware;
 import io.flutter.embedding.engine.plugins.activity.ActivityPluginBinding;
 import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.EventChannel;
+import io.flutter.plugin.common.EventChannel.EventSink;
+import io.flutter.plugin.common.EventChannel.StreamHandler;
 import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
 import io.flutter.plugin.common.MethodChannel.MethodCallHandler;
@@ -22,22 +32,53 @@ import io.flutter.plugin.common.PluginRegistry;
 import io.flutter.plugin.common.PluginRegistry.Registrar;
 import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.Date;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 
 /** PhoneLogPlugin */
 @TargetApi(Build.VERSION_CODES.LOLLIPOP)
 public class PhoneLogPlugin
     implements MethodCallHandler,
         PluginRegistry.RequestPermissionsResultListener,
+        StreamHandler,
         FlutterPlugin,
         ActivityAware {
+  // The number of rows sent in each event when streaming the call log, unless requested otherwise.
+  private static final int DEFAULT_STREAM_BATCH_SIZE = 500;
+
+  /** The forms in which fetched call records are sent to Dart. */
+  enum ResultFormat {
+    /** A list of call record maps. */
+    LIST,
+    /** A map holding a list of call record maps and the cursor for the following page. */
+    PAGE,
+    /** A map of {@link CallRecordColumns} and the cursor for the following page. */
+    COLUMNS,
+  }
+
   private Result pendingResult;
   private Registrar registrar;
   // Activity for v2 embedding.
   private Activity activity;
   private ActivityPluginBinding activityPluginBinding;
   private MethodChannel methodChannel;
+  private EventChannel eventChannel;
+  private final Handler handler = new Handler(Looper.getMainLooper());
+  private CallLogStream callLogStream;
+  private EventChannel syncEventChannel;
+  private CallLogSync callLogSync;
+  // Created on first use, as most apps never query aggregates.
+  private CallLogMirror callLogMirror;
+  // Shared by all queries, so that its cache outlives them.
+  private NumberNormalizer numberNormalizer;
+  // Call log queries run on background threads, so that large logs do not block the UI.
+  private ExecutorService executor;
+  // Cancellation signals of the running queries, by request id.
+  private final Map<Integer, CancellationSignal> pendingQueries = new HashMap<>();
   private Context context;
 
   public static void registerWith(Registrar registrar) {
@@ -47,9 +88,16 @@ public class PhoneLogPlugin
     registrar.addRequestPermissionsResultListener(instance);
   }
 
-  private void initInstance(BinaryMessenger messenger, Context context) {
+  // Package-private for the benchmark, which attaches the plugin to a fake messenger.
+  void initInstance(BinaryMessenger messenger, Context context) {
     methodChannel = new MethodChannel(messenger, "github.com/jiajiabingcheng/phone_log");
     methodChannel.setMethodCallHandler(this);
+    eventChannel = new EventChannel(messenger, "github.com/jiajiabingcheng/phone_log/stream");
+    eventChannel.setStreamHandler(this);
+    syncEventChannel = new EventChannel(messenger, "github.com/jiajiabingcheng/phone_log/sync");
+    syncEventChannel.setStreamHandler(syncStreamHandler);
+    executor = Executors.newCachedThreadPool();
+    numberNormalizer = new NumberNormalizer(context);
     this.context = context;
   }
 
@@ -66,6 +114,31 @@ public class PhoneLogPlugin
   public void onDetachedFromEngine(@NonNull FlutterPluginBinding binding) {
     methodChannel.setMethodCallHandler(null);
     methodChannel = null;
+    eventChannel.setStreamHandler(null);
+    eventChannel = null;
+    syncEventChannel.setStreamHandler(null);
+    syncEventChannel = null;
+    cancelCallLogStream();
+    cancelCallLogSync();
+    for (CancellationSignal cancellationSignal : pendingQueries.values()) {
+      cancellationSignal.cancel();
+    }
+    pendingQueries.clear();
+    if (callLogMirror != null) {
+      final CallLogMirror mirror = callLogMirror;
+      callLogMirror = null;
+      // Closed on the executor, as it runs its queued tasks before it shuts down. Closing waits for
+      // any running mirror query, as both synchronize on the mirror.
+      executor.execute(
+          new Runnable() {
+            @Override
+            public void run() {
+              mirror.close();
+            }
+          });
+    }
+    executor.shutdown();
+    executor = null;
     context = null;
   }
 
@@ -103,23 +176,63 @@ public class PhoneLogPlugin
 
   @Override
   public void onMethodCall(MethodCall call, Result result) {
-    if (pendingResult != null) {
-      pendingResult.error("multiple_requests", "Cancelled by a second request.", null);
-      pendingResult = null;
-    }
-    pendingResult = result;
     switch (call.method) {
       case "checkPermission":
-        pendingResult.success(checkPermission());
-        pendingResult = null;
+        result.success(checkPermission());
         break;
       case "requestPermission":
+        if (pendingResult != null) {
+          pendingResult.error("multiple_requests", "Cancelled by a second request.", null);
+        }
+        pendingResult = result;
         requestPermission();
         break;
       case "getPhoneLogs":
         String startDate = call.argument("startDate");
         String duration = call.argument("duration");
-        fetchCallRecords(startDate, duration);
+        CallLogQuery query = new CallLogQuery();
+        query.startDate = startDate != null ? Long.valueOf(startDate) : null;
+        query.minDuration = duration != null ? Long.valueOf(duration) : null;
+        query.requestId = call.argument("requestId");
+        fetchCallRecords(query, ResultFormat.LIST, result);
+        break;
+      case "getPhoneLogsPage":
+        fetchCallRecords(
+            CallLogQuery.fromArguments((Map<?, ?>) call.arguments), ResultFormat.PAGE, result);
+        break;
+      case "getPhoneLogColumns":
+        fetchCallRecords(
+            CallLogQuery.fromArguments((Map<?, ?>) call.arguments), ResultFormat.COLUMNS, result);
+        break;
+      case "cancelPhoneLogs":
+        Integer requestId = call.argument("requestId");
+        CancellationSignal cancellationSignal = pendingQueries.remove(requestId);
+        if (cancellationSignal != null) {
+          cancellationSignal.cancel();
+        }
+        result.success(null);
+        break;
+      case "syncPhoneLogMirror":
+      case "getTopNumbers":
+      case "getCallTotals":
+      case "getCallHistogram":
+        queryCallLogMirror(call, result);
+        break;
+      case "deletePhoneLogMirror":
+        final CallLogMirror mirror = callLogMirror;
+        callLogMirror = null;
+        final Context appContext = context;
+        replyInBackground(
+            result,
+            new Callable<Object>() {
+              @Override
+              public Object call() {
+                if (mirror != null) {
+                  mirror.close();
+                }
+                return appContext.deleteDatabase(CallLogMirror.DATABASE_NAME);
+              }
+            });
         break;
       default:
         result.notImplemented();
@@ -156,58 +269,505 @@ public class PhoneLogPlugin
     return res;
   }
 
-  private static final String[] PROJECTION = {
-    CallLog.Calls.CACHED_FORMATTED_NUMBER,
-    CallLog.Calls.CACHED_MATCHED_NUMBER,
-    CallLog.Calls.TYPE,
-    CallLog.Calls.DATE,
-    CallLog.Calls.DURATION,
-    CallLog.Calls.NUMBER,
-  };
-
   @TargetApi(Build.VERSION_CODES.M)
-  private void fetchCallRecords(String startDate, String duration) {
-    if (activity().checkSelfPermission(Manifest.permission.READ_CALL_LOG)
-        == PackageManager.PERMISSION_GRANTED) {
-      String selectionCondition = null;
-      if (startDate != null) {
-        selectionCondition = CallLog.Calls.DATE + "> " + startDate;
+  private boolean hasReadCallLogPermission() {
+    return activity().checkSelfPermission(Manifest.permission.READ_CALL_LOG)
+        == PackageManager.PERMISSION_GRANTED;
+  }
+
+  private static Cursor queryCallLog(
+      ContentResolver contentResolver,
+      CallLogQuery query,
+      CancellationSignal cancellationSignal) {
+    return contentResolver.query(
+        query.getUri(),
+        query.getProjection(),
+        query.getSelection(),
+        query.getSelectionArgs(),
+        query.getSortOrder(),
+        cancellationSignal);
+  }
+
+  /**
+   * Fetches the call records matching a query on a background thread, and replies with them in the
+   * given format on the main thread.
+   *
+   * <p>Paged formats also hold, unless this is the last page, the date and id of the last record,
+   * to be passed back as the cursor for the following page.
+   *
+   * <p>If the query has a request id, it may be cancelled with that id until it replies; it then
+   * replies with a "cancelled" error.
+   */
+  private void fetchCallRecords(
+      final CallLogQuery query, final ResultFormat format, final Result result) {
+    if (!hasReadCallLogPermission()) {
+      result.error("PhoneLog", "Permission is not granted", null);
+      return;
+    }
+    final ContentResolver contentResolver = context.getContentResolver();
+    final CancellationSignal cancellationSignal = new CancellationSignal();
+    if (query.requestId != null) {
+      CancellationSignal previousSignal = pendingQueries.put(query.requestId, cancellationSignal);
+      if (previousSignal != null) {
+        previousSignal.cancel();
       }
-      if (duration != null) {
-        String durationSelection = CallLog.Calls.DURATION + "> " + duration;
-        if (selectionCondition != null) {
-          selectionCondition = selectionCondition + " AND " + durationSelection;
-        } else {
-          selectionCondition = durationSelection;
-        }
+    }
+    executor.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            Object reply = null;
+            String errorCode = null;
+            String errorMessage = null;
+            try {
+              reply = readCallRecords(contentResolver, query, format, cancellationSignal);
+            } catch (OperationCanceledException e) {
+              errorCode = "cancelled";
+              errorMessage = "Cancelled by cancelPhoneLogs.";
+            } catch (Exception e) {
+              Log.e("PhoneLog", "Error on fetching call record" + e);
+              errorCode = "PhoneLog";
+              errorMessage = e.getMessage();
+            }
+            final Object finalReply = reply;
+            final String finalErrorCode = errorCode;
+            final String finalErrorMessage = errorMessage;
+            handler.post(
+                new Runnable() {
+                  @Override
+                  public void run() {
+                    if (query.requestId != null
+                        && pendingQueries.get(query.requestId) == cancellationSignal) {
+                      pendingQueries.remove(query.requestId);
+                    }
+                    if (finalErrorCode != null) {
+                      result.error(finalErrorCode, finalErrorMessage, null);
+                    } else {
+                      result.success(finalReply);
+                    }
+                  }
+                });
+          }
+        });
+  }
+
+  // Runs on a background thread.
+  private Object readCallRecords(
+      ContentResolver contentResolver,
+      CallLogQuery query,
+      ResultFormat format,
+      CancellationSignal cancellationSignal) {
+    // Shows the time to query and convert the rows, by result format, in systrace and Perfetto.
+    beginTraceSection("PhoneLog.readCallRecords." + format);
+    Cursor cursor = null;
+    try {
+      cursor = queryCallLog(contentResolver, query, cancellationSignal);
+      return convertCallRecords(cursor, query, format, cancellationSignal);
+    } finally {
+      if (cursor != null) {
+        cursor.close();
       }
-      Cursor cursor =
-          context
-              .getContentResolver()
-              .query(
-                  CallLog.Calls.CONTENT_URI,
-                  PROJECTION,
-                  selectionCondition,
-                  null,
-                  CallLog.Calls.DATE + " DESC");
+      endTraceSection();
+    }
+  }
 
+  /** Converts the rows of a call log cursor into the reply of a query, in the given format. */
+  Object convertCallRecords(
+      Cursor cursor,
+      CallLogQuery query,
+      ResultFormat format,
+      CancellationSignal cancellationSignal) {
+    int maxCount = query.limit > 0 ? query.limit : Integer.MAX_VALUE;
+    if (format == ResultFormat.LIST) {
+      return getCallRecordMaps(cursor, maxCount, query, cancellationSignal);
+    }
+    HashMap<String, Object> page;
+    int count;
+    if (format == ResultFormat.COLUMNS) {
+      CallRecordColumns columns = getCallRecordColumns(cursor, maxCount, query, cancellationSignal);
+      page = columns.toMap();
+      count = columns.size();
+    } else {
+      ArrayList<HashMap<String, Object>> records =
+          getCallRecordMaps(cursor, maxCount, query, cancellationSignal);
+      page = new HashMap<>();
+      page.put("records", records);
+      count = records.size();
+    }
+    // A full page leaves the cursor on its last record.
+    if (query.limit > 0 && count == query.limit) {
+      page.put("nextPageKey", cursor.getLong(cursor.getColumnIndex(query.sortColumn)));
+      page.put("nextPageId", cursor.getLong(cursor.getColumnIndex(CallLog.Calls._ID)));
+    }
+    return page;
+  }
+
+  /**
+   * Brings the call log mirror up to date on a background thread, then runs the aggregate query of
+   * the method call on it, if any.
+   */
+  private void queryCallLogMirror(final MethodCall call, Result result) {
+    if (!hasReadCallLogPermission()) {
+      result.error("PhoneLog", "Permission is not granted", null);
+      return;
+    }
+    if (callLogMirror == null) {
+      callLogMirror = new CallLogMirror(context, numberNormalizer);
+    }
+    final CallLogMirror mirror = callLogMirror;
+    final ContentResolver contentResolver = context.getContentResolver();
+    final Map<?, ?> arguments =
+        call.arguments != null ? (Map<?, ?>) call.arguments : new HashMap<>();
+    replyInBackground(
+        result,
+        new Callable<Object>() {
+          @Override
+          public Object call() {
+            int changedCount = mirror.sync(contentResolver, new CancellationSignal());
+            Long startDate = CallLogQuery.getLong(arguments, "startDate");
+            Long endDate = CallLogQuery.getLong(arguments, "endDate");
+            switch (call.method) {
+              case "getTopNumbers":
+                Long limit = CallLogQuery.getLong(arguments, "limit");
+                return mirror.getTopNumbers(
+                    limit != null ? limit.intValue() : 10,
+                    Boolean.TRUE.equals(arguments.get("byDuration")),
+                    startDate,
+                    endDate);
+              case "getCallTotals":
+                return mirror.getTotals(startDate, endDate);
+              case "getCallHistogram":
+                return mirror.getHistogram(
+                    Boolean.TRUE.equals(arguments.get("hourly")), startDate, endDate);
+              default:
+                return changedCount;
+            }
+          }
+        });
+  }
+
+  /** Runs a task on a background thread, and replies with its result on the main thread. */
+  private void replyInBackground(final Result result, final Callable<Object> task) {
+    executor.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            Object reply = null;
+            Exception error = null;
+            try {
+              reply = task.call();
+            } catch (Exception e) {
+              Log.e("PhoneLog", "Error on querying call record mirror" + e);
+              error = e;
+            }
+            final Object finalReply = reply;
+            final Exception finalError = error;
+            handler.post(
+                new Runnable() {
+                  @Override
+                  public void run() {
+                    if (finalError != null) {
+                      result.error("PhoneLog", finalError.getMessage(), null);
+                    } else {
+                      result.success(finalReply);
+                    }
+                  }
+                });
+          }
+        });
+  }
+
+  @Override
+  public void onListen(Object arguments, EventSink events) {
+    cancelCallLogStream();
+    if (!hasReadCallLogPermission()) {
+      events.error("PhoneLog", "Permission is not granted", null);
+      events.endOfStream();
+      return;
+    }
+    Map<?, ?> argumentMap = (Map<?, ?>) arguments;
+    Object batchSize = argumentMap != null ? argumentMap.get("batchSize") : null;
+    callLogStream =
+        new CallLogStream(
+            context.getContentResolver(),
+            CallLogQuery.fromArguments(argumentMap),
+            events,
+            batchSize instanceof Number
+                ? ((Number) batchSize).intValue()
+                : DEFAULT_STREAM_BATCH_SIZE);
+    executor.execute(callLogStream);
+  }
+
+  @Override
+  public void onCancel(Object arguments) {
+    cancelCallLogStream();
+  }
+
+  private void cancelCallLogStream() {
+    if (callLogStream != null) {
+      callLogStream.cancel();
+      callLogStream = null;
+    }
+  }
+
+  /**
+   * Reads the call log on a background thread and sends its rows to a stream in batches.
+   *
+   * <p>Each batch is sent on the main thread, and the next one is only read once it has been sent,
+   * so that at most one batch is held in memory.
+   */
+  private class CallLogStream implements Runnable {
+    private final ContentResolver contentResolver;
+    private final CallLogQuery query;
+    private final EventSink events;
+    private final int batchSize;
+    private final CancellationSignal cancellationSignal = new CancellationSignal();
+    // Released on the main thread once a batch has been sent.
+    private final Semaphore batchSent = new Semaphore(0);
+
+    CallLogStream(
+        ContentResolver contentResolver, CallLogQuery query, EventSink events, int batchSize) {
+      this.contentResolver = contentResolver;
+      this.query = query;
+      this.events = events;
+      this.batchSize = batchSize;
+    }
+
+    @Override
+    public void run() {
+      Cursor cursor = null;
       try {
-        ArrayList<HashMap<String, Object>> records = getCallRecordMaps(cursor);
-        pendingResult.success(records);
-        pendingResult = null;
-      } catch (Exception e) {
+        cursor = queryCallLog(contentResolver, query, cancellationSignal);
+        while (true) {
+          final ArrayList<HashMap<String, Object>> batch =
+              getCallRecordMaps(cursor, batchSize, query, cancellationSignal);
+          if (batch.isEmpty()) {
+            break;
+          }
+          send(
+              new Runnable() {
+                @Override
+                public void run() {
+                  events.success(batch);
+                  batchSent.release();
+                }
+              });
+          batchSent.acquire();
+        }
+        send(
+            new Runnable() {
+              @Override
+              public void run() {
+                events.endOfStream();
+                callLogStream = null;
+              }
+            });
+      } catch (OperationCanceledException e) {
+        // Cancelled by the listener, so there is no one left to tell.
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (final Exception e) {
         Log.e("PhoneLog", "Error on fetching call record" + e);
-        pendingResult.error("PhoneLog", e.getMessage(), null);
-        pendingResult = null;
+        send(
+            new Runnable() {
+              @Override
+              public void run() {
+                events.error("PhoneLog", e.getMessage(), null);
+                events.endOfStream();
+                callLogStream = null;
+              }
+            });
       } finally {
         if (cursor != null) {
           cursor.close();
         }
       }
+    }
 
-    } else {
-      pendingResult.error("PhoneLog", "Permission is not granted", null);
-      pendingResult = null;
+    void cancel() {
+      cancellationSignal.cancel();
+      // Wake the reading thread if it is waiting for a batch to be sent.
+      batchSent.release();
+    }
+
+    // Runs an event on the main thread, unless the stream has been cancelled meanwhile.
+    private void send(final Runnable event) {
+      handler.post(
+          new Runnable() {
+            @Override
+            public void run() {
+              if (callLogStream == CallLogStream.this) {
+                event.run();
+              }
+            }
+          });
+    }
+  }
+
+  private final StreamHandler syncStreamHandler =
+      new StreamHandler() {
+        @Override
+        public void onListen(Object arguments, EventSink events) {
+          cancelCallLogSync();
+          if (!hasReadCallLogPermission()) {
+            events.error("PhoneLog", "Permission is not granted", null);
+            events.endOfStream();
+            return;
+          }
+          Map<?, ?> argumentMap = (Map<?, ?>) arguments;
+          CallLogQuery query = CallLogQuery.fromArguments(argumentMap);
+          query.sync = true;
+          Object batchSize = argumentMap != null ? argumentMap.get("batchSize") : null;
+          callLogSync =
+              new CallLogSync(
+                  context.getContentResolver(),
+                  query,
+                  events,
+                  batchSize instanceof Number
+                      ? ((Number) batchSize).intValue()
+                      : DEFAULT_STREAM_BATCH_SIZE);
+          callLogSync.start();
+        }
+
+        @Override
+        public void onCancel(Object arguments) {
+          cancelCallLogSync();
+        }
+      };
+
+  private void cancelCallLogSync() {
+    if (callLogSync != null) {
+      callLogSync.cancel();
+      callLogSync = null;
+    }
+  }
+
+  /**
+   * Watches the call log, and sends the rows inserted or changed since the last sync to a stream.
+   *
+   * <p>A sync runs on a background thread when the stream is listened to, and then whenever the
+   * call log changes. It queries the rows past the sync mark, i.e. the modification time and id of
+   * the last row sent, and sends them in batches, as deltas which each hold the mark after their
+   * last row. As for {@link CallLogStream}, the next batch is only read once a delta has been sent.
+   */
+  private class CallLogSync extends ContentObserver implements Runnable {
+    private final ContentResolver contentResolver;
+    // The query of the next sync, whose mark is advanced by each sync.
+    private final CallLogQuery query;
+    private final EventSink events;
+    private final int batchSize;
+    private final CancellationSignal cancellationSignal = new CancellationSignal();
+    // Released on the main thread once a delta has been sent.
+    private final Semaphore deltaSent = new Semaphore(0);
+    // Whether a sync is running, and whether the call log has changed since it started.
+    private boolean running;
+    private boolean changed;
+
+    CallLogSync(
+        ContentResolver contentResolver, CallLogQuery query, EventSink events, int batchSize) {
+      super(handler);
+      this.contentResolver = contentResolver;
+      this.query = query;
+      this.events = events;
+      this.batchSize = batchSize;
+    }
+
+    void start() {
+      contentResolver.registerContentObserver(CallLog.Calls.CONTENT_URI, true, this);
+      sync();
+    }
+
+    void cancel() {
+      contentResolver.unregisterContentObserver(this);
+      cancellationSignal.cancel();
+      // Wake the syncing thread if it is waiting for a delta to be sent.
+      deltaSent.release();
+    }
+
+    @Override
+    public void onChange(boolean selfChange) {
+      sync();
+    }
+
+    private void sync() {
+      if (running) {
+        changed = true;
+        return;
+      }
+      running = true;
+      changed = false;
+      executor.execute(this);
+    }
+
+    @Override
+    public void run() {
+      Cursor cursor = null;
+      try {
+        cursor = queryCallLog(contentResolver, query, cancellationSignal);
+        if (cursor == null) {
+          return;
+        }
+        while (true) {
+          ArrayList<HashMap<String, Object>> batch =
+              readSyncBatch(cursor, batchSize, query, cancellationSignal);
+          if (batch.isEmpty()) {
+            break;
+          }
+          final HashMap<String, Object> delta = new HashMap<>();
+          delta.put("records", batch);
+          delta.put("afterId", query.afterId);
+          delta.put("afterLastModified", query.afterLastModified);
+          send(
+              new Runnable() {
+                @Override
+                public void run() {
+                  events.success(delta);
+                  deltaSent.release();
+                }
+              });
+          deltaSent.acquire();
+        }
+      } catch (OperationCanceledException e) {
+        // Cancelled by the listener, so there is no one left to tell.
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (final Exception e) {
+        Log.e("PhoneLog", "Error on syncing call records" + e);
+        send(
+            new Runnable() {
+              @Override
+              public void run() {
+                events.error("PhoneLog", e.getMessage(), null);
+              }
+            });
+      } finally {
+        if (cursor != null) {
+          cursor.close();
+        }
+        send(
+            new Runnable() {
+              @Override
+              public void run() {
+                running = false;
+                if (changed) {
+                  sync();
+                }
+              }
+            });
+      }
+    }
+
+    // Runs an event on the main thread, unless the sync has been cancelled meanwhile.
+    private void send(final Runnable event) {
+      handler.post(
+          new Runnable() {
+            @Override
+            public void run() {
+              if (callLogSync == CallLogSync.this) {
+                event.run();
+              }
+            }
+          });
     }
   }
 
@@ -216,47 +776,162 @@ public class PhoneLogPlugin
   }
 
   /**
-   * Builds the list of call record maps from the cursor
+   * Reads the next batch of rows of a sync query, and advances the query's mark to the last of
+   * them, so that the next sync starts after it. Returns an empty batch, leaving the mark as it is,
+   * once the cursor is exhausted.
+   */
+  ArrayList<HashMap<String, Object>> readSyncBatch(
+      Cursor cursor, int batchSize, CallLogQuery query, CancellationSignal cancellationSignal) {
+    ArrayList<HashMap<String, Object>> batch =
+        getCallRecordMaps(cursor, batchSize, query, cancellationSignal);
+    if (batch.isEmpty()) {
+      return batch;
+    }
+    // A full batch leaves the cursor on its last row, but a short one ends past it.
+    if (cursor.isAfterLast()) {
+      cursor.moveToPrevious();
+    }
+    query.afterId = cursor.getLong(cursor.getColumnIndex(CallLog.Calls._ID));
+    if (CallLogQuery.hasLastModified()) {
+      query.afterLastModified =
+          cursor.getLong(cursor.getColumnIndex(CallLog.Calls.LAST_MODIFIED));
+    }
+    return batch;
+  }
+
+  /**
+   * Builds the list of call record maps from the next rows of the cursor
    *
    * @param cursor
+   * @param maxCount the maximum number of rows to read
+   * @param query the query of the cursor, which tells how to build the maps
+   * @param cancellationSignal checked between rows
    * @return the list of maps
    */
-  private ArrayList<HashMap<String, Object>> getCallRecordMaps(Cursor cursor) {
+  private ArrayList<HashMap<String, Object>> getCallRecordMaps(
+      Cursor cursor, int maxCount, CallLogQuery query, CancellationSignal cancellationSignal) {
     ArrayList<HashMap<String, Object>> records = new ArrayList<>();
+    if (cursor == null) {
+      return records;
+    }
     int formattedNumIndex = cursor.getColumnIndex(CallLog.Calls.CACHED_FORMATTED_NUMBER);
     int cachedMatchedNumIndex = cursor.getColumnIndex(CallLog.Calls.CACHED_MATCHED_NUMBER);
     int typeIndex = cursor.getColumnIndex(CallLog.Calls.TYPE);
     int dateIndex = cursor.getColumnIndex(CallLog.Calls.DATE);
     int durationIndex = cursor.getColumnIndex(CallLog.Calls.DURATION);
     int dialedNumberIndex = cursor.getColumnIndex(CallLog.Calls.NUMBER);
+    int idIndex = cursor.getColumnIndex(CallLog.Calls._ID);
+    boolean hasFormattedNumber = query.hasField(CallLogQuery.FORMATTED_NUMBER_FIELD);
+    boolean hasNumber = query.hasField(CallLogQuery.NUMBER_FIELD);
+    boolean hasNormalizedNumber = query.hasField(CallLogQuery.NORMALIZED_NUMBER_FIELD);
+    boolean hasCallType = query.hasField(CallLogQuery.CALL_TYPE_FIELD);
+    boolean hasDate = query.hasField(CallLogQuery.DATE_FIELD);
+    boolean hasDuration = query.hasField(CallLogQuery.DURATION_FIELD);
+    // Calendar.getInstance() is costly, so one calendar is reused for all rows.
+    Calendar cal = query.rawDates || !hasDate ? null : Calendar.getInstance();
 
-    while (cursor != null && cursor.moveToNext()) {
+    while (records.size() < maxCount && cursor.moveToNext()) {
+      cancellationSignal.throwIfCanceled();
       CallRecord record = new CallRecord();
-      // This field  holds the number formatted based on the country the user was in when the call
-      // was made/received.
-      record.formattedNumber = cursor.getString(formattedNumIndex);
-      // number holds the unformatted version of the actual number.
-      record.number =
-          getUnformattedNumber(
-              cursor.getString(cachedMatchedNumIndex), cursor.getString(dialedNumberIndex));
-      record.callType = getCallType(cursor.getInt(typeIndex));
-
-      Date date = new Date(cursor.getLong(dateIndex));
-      Calendar cal = Calendar.getInstance();
-      cal.setTime(date);
-      record.dateYear = cal.get(Calendar.YEAR);
-      record.dateMonth = cal.get(Calendar.MONTH);
-      record.dateDay = cal.get(Calendar.DAY_OF_MONTH);
-      record.dateHour = cal.get(Calendar.HOUR_OF_DAY);
-      record.dateMinute = cal.get(Calendar.MINUTE);
-      record.dateSecond = cal.get(Calendar.SECOND);
-      record.duration = cursor.getLong(durationIndex);
-
-      records.add(record.toMap());
+      if (query.sync) {
+        record.id = cursor.getLong(idIndex);
+      }
+      if (hasFormattedNumber) {
+        // This field  holds the number formatted based on the country the user was in when the
+        // call was made/received.
+        record.formattedNumber = cursor.getString(formattedNumIndex);
+      }
+      if (hasNumber || hasNormalizedNumber) {
+        // number holds the unformatted version of the actual number.
+        String number =
+            getUnformattedNumber(
+                cursor.getString(cachedMatchedNumIndex), cursor.getString(dialedNumberIndex));
+        record.number = number;
+        if (hasNormalizedNumber) {
+          record.normalizedNumber = numberNormalizer.normalize(number);
+        }
+      }
+      if (hasCallType) {
+        record.callType = getCallType(cursor.getInt(typeIndex));
+      }
+
+      if (hasDate) {
+        long date = cursor.getLong(dateIndex);
+        if (query.rawDates) {
+          record.date = date;
+        } else {
+          cal.setTimeInMillis(date);
+          record.dateYear = cal.get(Calendar.YEAR);
+          record.dateMonth = cal.get(Calendar.MONTH);
+          record.dateDay = cal.get(Calendar.DAY_OF_MONTH);
+          record.dateHour = cal.get(Calendar.HOUR_OF_DAY);
+          record.dateMinute = cal.get(Calendar.MINUTE);
+          record.dateSecond = cal.get(Calendar.SECOND);
+        }
+      }
+      if (hasDuration) {
+        record.duration = cursor.getLong(durationIndex);
+      }
+
+      records.add(record.toMap(query.fields));
     }
     return records;
   }
 
+  /**
+   * Builds call record columns from the next rows of the cursor
+   *
+   * @param cursor
+   * @param maxCount the maximum number of rows to read
+   * @param query the query of the cursor, which tells which columns to build
+   * @param cancellationSignal checked between rows
+   * @return the columns
+   */
+  private CallRecordColumns getCallRecordColumns(
+      Cursor cursor, int maxCount, CallLogQuery query, CancellationSignal cancellationSignal) {
+    CallRecordColumns columns = new CallRecordColumns(query.fields);
+    if (cursor == null) {
+      return columns;
+    }
+    int formattedNumIndex = cursor.getColumnIndex(CallLog.Calls.CACHED_FORMATTED_NUMBER);
+    int cachedMatchedNumIndex = cursor.getColumnIndex(CallLog.Calls.CACHED_MATCHED_NUMBER);
+    int typeIndex = cursor.getColumnIndex(CallLog.Calls.TYPE);
+    int dateIndex = cursor.getColumnIndex(CallLog.Calls.DATE);
+    int durationIndex = cursor.getColumnIndex(CallLog.Calls.DURATION);
+    int dialedNumberIndex = cursor.getColumnIndex(CallLog.Calls.NUMBER);
+    boolean hasNormalizedNumber = query.hasField(CallLogQuery.NORMALIZED_NUMBER_FIELD);
+
+    while (columns.size() < maxCount && cursor.moveToNext()) {
+      cancellationSignal.throwIfCanceled();
+      String number =
+          dialedNumberIndex >= 0
+              ? getUnformattedNumber(
+                  cursor.getString(cachedMatchedNumIndex), cursor.getString(dialedNumberIndex))
+              : null;
+      // Columns which were not read are left empty.
+      columns.add(
+          formattedNumIndex >= 0 ? cursor.getString(formattedNumIndex) : null,
+          number,
+          hasNormalizedNumber ? numberNormalizer.normalize(number) : null,
+          typeIndex >= 0 ? cursor.getInt(typeIndex) : 0,
+          dateIndex >= 0 ? cursor.getLong(dateIndex) : 0,
+          durationIndex >= 0 ? cursor.getLong(durationIndex) : 0);
+    }
+    return columns;
+  }
+
+  private static void beginTraceSection(String sectionName) {
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+      Trace.beginSection(sectionName);
+    }
+  }
+
+  private static void endTraceSection() {
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+      Trace.endSection();
+    }
+  }
+
   private String getCallType(int anInt) {
     switch (anInt) {
       case CallLog.Calls.INCOMING_TYPE:
@@ -0,0 +1,71 @@
+package com.jiajiabingcheng.phonelog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.database.MatrixCursor;
+import android.os.Build;
+import android.os.CancellationSignal;
+import android.provider.CallLog;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/** Tests that each batch of a call log sync advances the sync's mark to its last row. */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.P)
+public class CallLogSyncTest {
+  private final PhoneLogPlugin plugin = new PhoneLogPlugin();
+
+  private static MatrixCursor newCursor(int rowCount) {
+    MatrixCursor cursor =
+        new MatrixCursor(
+            new String[] {CallLog.Calls._ID, CallLog.Calls.LAST_MODIFIED, CallLog.Calls.DATE});
+    for (int i = 1; i <= rowCount; i++) {
+      cursor.addRow(new Object[] {(long) i, i * 100L, i * 1000L});
+    }
+    return cursor;
+  }
+
+  private static CallLogQuery newSyncQuery() {
+    CallLogQuery query = new CallLogQuery();
+    query.sync = true;
+    query.rawDates = true;
+    query.fields = Collections.singleton(CallLogQuery.DATE_FIELD);
+    return query;
+  }
+
+  @Test
+  public void fewerRowsThanBatchSize_markIsLastRow() {
+    MatrixCursor cursor = newCursor(3);
+    CallLogQuery query = newSyncQuery();
+    CancellationSignal cancellationSignal = new CancellationSignal();
+
+    ArrayList<HashMap<String, Object>> batch =
+        plugin.readSyncBatch(cursor, 10, query, cancellationSignal);
+    assertEquals(3, batch.size());
+    assertEquals(Long.valueOf(3), query.afterId);
+    assertEquals(Long.valueOf(300), query.afterLastModified);
+
+    assertTrue(plugin.readSyncBatch(cursor, 10, query, cancellationSignal).isEmpty());
+    assertEquals(Long.valueOf(3), query.afterId);
+  }
+
+  @Test
+  public void fullThenShortBatch_markIsLastRowOfEach() {
+    MatrixCursor cursor = newCursor(5);
+    CallLogQuery query = newSyncQuery();
+    CancellationSignal cancellationSignal = new CancellationSignal();
+
+    assertEquals(3, plugin.readSyncBatch(cursor, 3, query, cancellationSignal).size());
+    assertEquals(Long.valueOf(3), query.afterId);
+    assertEquals(2, plugin.readSyncBatch(cursor, 3, query, cancellationSignal).size());
+    assertEquals(Long.valueOf(5), query.afterId);
+    assertEquals(Long.valueOf(500), query.afterLastModified);
+    assertTrue(plugin.readSyncBatch(cursor, 3, query, cancellationSignal).isEmpty());
+  }
+}
@@ -0,0 +1,154 @@
+package com.jiajiabingcheng.phonelog;
+
+import static org.junit.Assert.assertNotNull;
+
+import android.database.MatrixCursor;
+import android.os.Build;
+import android.os.CancellationSignal;
+import android.provider.CallLog;
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.StandardMessageCodec;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+/**
+ * Measures the conversion of call log rows into the reply of a query, for each result format, and
+ * the encoding of the reply by the standard message codec.
+ *
+ * <p>Rows come from a MatrixCursor holding every column of the call log projection, so the
+ * numbers exclude the content provider query. Each result prints the median time per row, the
+ * bytes allocated per row on the converting thread, and the median time and size of the encoding.
+ *
+ * <p>Excluded from the default test run; run with {@code ./gradlew testDebugUnitTest -Pbenchmarks}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.P)
+public class CallRecordConversionBenchmark {
+  private static final int[] ROW_COUNTS = {1000, 10000, 100000};
+  private static final int WARMUP_ITERATIONS = 2;
+  private static final int ITERATIONS = 5;
+  // Fewer distinct numbers than rows, as in a real call log.
+  private static final int DISTINCT_NUMBER_COUNT = 500;
+
+  private final com.sun.management.ThreadMXBean threadBean =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+  private final PhoneLogPlugin plugin = new PhoneLogPlugin();
+
+  /** Drops all messages; the plugin only needs a messenger for its channels. */
+  private static class FakeBinaryMessenger implements BinaryMessenger {
+    @Override
+    public void send(String channel, ByteBuffer message) {}
+
+    @Override
+    public void send(String channel, ByteBuffer message, BinaryReply reply) {}
+
+    @Override
+    public void setMessageHandler(String channel, BinaryMessageHandler handler) {}
+  }
+
+  @Before
+  public void setUp() {
+    plugin.initInstance(new FakeBinaryMessenger(), RuntimeEnvironment.getApplication());
+  }
+
+  @Test
+  public void convertCallRecords() {
+    for (int rowCount : ROW_COUNTS) {
+      for (PhoneLogPlugin.ResultFormat format : PhoneLogPlugin.ResultFormat.values()) {
+        measure(rowCount, format, false);
+      }
+      // Calendar decomposition of dates only applies to the formats of call record maps.
+      measure(rowCount, PhoneLogPlugin.ResultFormat.LIST, true);
+    }
+  }
+
+  private void measure(int rowCount, PhoneLogPlugin.ResultFormat format, boolean calendarDates) {
+    CallLogQuery query = new CallLogQuery();
+    // A full page, so that the paged formats also read the cursor of the following page.
+    query.limit = rowCount;
+    query.rawDates = !calendarDates;
+    MatrixCursor cursor = newCursor(query.getProjection(), rowCount);
+    CancellationSignal cancellationSignal = new CancellationSignal();
+    long threadId = Thread.currentThread().getId();
+    long[] convertNs = new long[ITERATIONS];
+    long[] encodeNs = new long[ITERATIONS];
+    long allocatedBytes = 0;
+    int encodedBytes = 0;
+    for (int i = 0; i < WARMUP_ITERATIONS + ITERATIONS; i++) {
+      cursor.moveToPosition(-1);
+      long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+      long startNs = System.nanoTime();
+      Object reply = plugin.convertCallRecords(cursor, query, format, cancellationSignal);
+      long convertedNs = System.nanoTime();
+      long allocated = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+      ByteBuffer encoded = StandardMessageCodec.INSTANCE.encodeMessage(reply);
+      long encodedNs = System.nanoTime();
+      assertNotNull(encoded);
+      if (i >= WARMUP_ITERATIONS) {
+        convertNs[i - WARMUP_ITERATIONS] = convertedNs - startNs;
+        encodeNs[i - WARMUP_ITERATIONS] = encodedNs - convertedNs;
+        allocatedBytes += allocated;
+        // The codec leaves the position at the end of the message.
+        encodedBytes = encoded.position();
+      }
+    }
+    cursor.close();
+    Arrays.sort(convertNs);
+    Arrays.sort(encodeNs);
+    System.out.println(
+        String.format(
+            Locale.US,
+            "%6d rows %-7s %-9s %7.0f ns/row %6d B/row  encode %8.2f ms %9d B",
+            rowCount,
+            format,
+            calendarDates ? "calendar" : "raw",
+            (double) convertNs[ITERATIONS / 2] / rowCount,
+            allocatedBytes / ITERATIONS / rowCount,
+            encodeNs[ITERATIONS / 2] / 1e6,
+            encodedBytes));
+  }
+
+  private static MatrixCursor newCursor(String[] projection, int rowCount) {
+    MatrixCursor cursor = new MatrixCursor(projection, rowCount);
+    // Newest first, as sorted by the call log query.
+    long date = 1600000000000L;
+    for (int row = 0; row < rowCount; row++) {
+      Object[] values = new Object[projection.length];
+      for (int column = 0; column < projection.length; column++) {
+        values[column] = getValue(projection[column], row, date);
+      }
+      cursor.addRow(values);
+      date -= 3600000L;
+    }
+    return cursor;
+  }
+
+  private static Object getValue(String column, int row, long date) {
+    String number = String.format(Locale.US, "650555%04d", row % DISTINCT_NUMBER_COUNT);
+    if (column.equals(CallLog.Calls._ID)) {
+      return (long) (row + 1);
+    } else if (column.equals(CallLog.Calls.DATE)) {
+      return date;
+    } else if (column.equals(CallLog.Calls.CACHED_FORMATTED_NUMBER)) {
+      return "(650) 555-" + number.substring(6);
+    } else if (column.equals(CallLog.Calls.CACHED_MATCHED_NUMBER)) {
+      // Calls from numbers which are not contacts have no matched number.
+      return row % 3 == 0 ? null : number;
+    } else if (column.equals(CallLog.Calls.NUMBER)) {
+      return number;
+    } else if (column.equals(CallLog.Calls.TYPE)) {
+      return CallLog.Calls.INCOMING_TYPE + row % 3;
+    } else if (column.equals(CallLog.Calls.DURATION)) {
+      return (long) (row % 600);
+    }
+    throw new IllegalArgumentException("Unexpected column " + column);
+  }
+}
@@ -1,3 +1,5 @@
+import 'dart:typed_data';
+
 import 'package:fixnum/fixnum.dart';
 import 'package:flutter/services.dart';
 
@@ -12,6 +14,12 @@ enum PermissionStatus { granted, denied, deniedAndCannotRequest }
 const MethodChannel channel =
     MethodChannel('github.com/jiajiabingcheng/phone_log');
 
+const EventChannel streamChannel =
+    EventChannel('github.com/jiajiabingcheng/phone_log/stream');
+
+const EventChannel syncChannel =
+    EventChannel('github.com/jiajiabingcheng/phone_log/sync');
+
 /// Provide methods to access and fetch the phone log.
 class PhoneLog {
   /// Provides an instance of this class.
@@ -35,20 +43,458 @@ class PhoneLog {
   ///
   ///The unit of [startDate] is the Milliseconds of date.
   ///The unit of [duration] is second.
+  ///
+  ///The logs are fetched in the background. The request may be cancelled
+  ///with [cancellationToken], in which case the future completes with a
+  ///[PlatformException] with code 'cancelled'.
   Future<Iterable<CallRecord>?> getPhoneLogs(
-      {required Int64 startDate, required Int64 duration}) async {
+      {required Int64 startDate,
+      required Int64 duration,
+      PhoneLogCancellationToken? cancellationToken}) async {
     final String _startDate = startDate.toString();
     final String _duration = duration.toString();
-
-    final Iterable<Map<dynamic, dynamic>>? records = (await channel
-            .invokeMethod<List<dynamic>>('getPhoneLogs', <String, String>{
+    final Map<String, Object> arguments = <String, Object>{
       "startDate": _startDate,
       "duration": _duration
-    }))
+    };
+    if (cancellationToken != null) {
+      cancellationToken._checkNotCancelled();
+      arguments['requestId'] = cancellationToken._requestId;
+    }
+
+    final Iterable<Map<dynamic, dynamic>>? records = (await channel
+            .invokeMethod<List<dynamic>>('getPhoneLogs', arguments))
         ?.cast<Map<dynamic, dynamic>>();
     return records?.map((Map<dynamic, dynamic> m) =>
         new CallRecord.fromMap(m.cast<String, Object>()));
   }
+
+  ///Fetches one page of at most [pageSize] phone logs, newest first unless
+  ///[filter] sorts them otherwise.
+  ///
+  ///Pass the [PhoneLogPage.nextPageToken] of a page as [pageToken] to fetch
+  ///the following page, with the same [filter]. [startDate] and [duration]
+  ///are as for [getPhoneLogs], unless [filter] sets them.
+  ///
+  ///If [rawDates], each record has its [CallRecord.date] set instead of its
+  ///calendar fields, which is cheaper to fetch. If [fields] is given, only
+  ///those fields of each record are fetched and set, and the phone log
+  ///columns of the others are not read at all. [cancellationToken] is as for
+  ///[getPhoneLogs].
+  Future<PhoneLogPage> getPhoneLogsPage(
+      {Int64? startDate,
+      Int64? duration,
+      PhoneLogFilter? filter,
+      Set<CallRecordField>? fields,
+      int pageSize = 500,
+      PhoneLogPageToken? pageToken,
+      bool rawDates = false,
+      PhoneLogCancellationToken? cancellationToken}) async {
+    cancellationToken?._checkNotCancelled();
+    final Map<dynamic, dynamic>? page = await channel.invokeMethod<
+        Map<dynamic, dynamic>>('getPhoneLogsPage', <String, Object?>{
+      ..._queryArguments(startDate, duration, filter, fields),
+      'limit': pageSize,
+      'pageKey': pageToken?._pageKey,
+      'pageId': pageToken?._pageId,
+      'rawDates': rawDates,
+      'requestId': cancellationToken?._requestId,
+    });
+    final List<CallRecord> records =
+        (page?['records'] as List<dynamic>? ?? <dynamic>[])
+            .cast<Map<dynamic, dynamic>>()
+            .map((Map<dynamic, dynamic> m) =>
+                new CallRecord.fromMap(m.cast<String, Object>()))
+            .toList();
+    return new PhoneLogPage._(records, PhoneLogPageToken._fromMap(page));
+  }
+
+  ///Fetches phone logs as [CallRecordColumns], newest first unless [filter]
+  ///sorts them otherwise.
+  ///
+  ///This is much cheaper than [getPhoneLogs] for large numbers of records.
+  ///If [pageSize] is given, fetches one page of at most [pageSize] records,
+  ///as for [getPhoneLogsPage]. [startDate], [duration], [filter] and [fields]
+  ///are as for [getPhoneLogsPage], and [cancellationToken] as for
+  ///[getPhoneLogs]; the columns of fields which were not fetched are empty.
+  Future<CallRecordColumns> getPhoneLogColumns(
+      {Int64? startDate,
+      Int64? duration,
+      PhoneLogFilter? filter,
+      Set<CallRecordField>? fields,
+      int? pageSize,
+      PhoneLogPageToken? pageToken,
+      PhoneLogCancellationToken? cancellationToken}) async {
+    cancellationToken?._checkNotCancelled();
+    final Map<dynamic, dynamic>? columns = await channel.invokeMethod<
+        Map<dynamic, dynamic>>('getPhoneLogColumns', <String, Object?>{
+      ..._queryArguments(startDate, duration, filter, fields),
+      'limit': pageSize,
+      'pageKey': pageToken?._pageKey,
+      'pageId': pageToken?._pageId,
+      'requestId': cancellationToken?._requestId,
+    });
+    return new CallRecordColumns._fromMap(columns ?? <dynamic, dynamic>{});
+  }
+
+  ///Streams phone logs, newest first unless [filter] sorts them otherwise.
+  ///
+  ///The records are read from the device in batches of [batchSize] as the
+  ///stream is listened to, rather than all at once. [startDate], [duration],
+  ///[filter], [fields] and [rawDates] are as for [getPhoneLogsPage]. Only one
+  ///stream
+  ///may be listened to at a time; cancel the subscription to stop reading the
+  ///logs.
+  Stream<CallRecord> streamPhoneLogs(
+      {Int64? startDate,
+      Int64? duration,
+      PhoneLogFilter? filter,
+      Set<CallRecordField>? fields,
+      int batchSize = 500,
+      bool rawDates = false}) {
+    return streamChannel.receiveBroadcastStream(<String, Object?>{
+      ..._queryArguments(startDate, duration, filter, fields),
+      'batchSize': batchSize,
+      'rawDates': rawDates,
+    }).expand((dynamic batch) => (batch as List<dynamic>)
+        .cast<Map<dynamic, dynamic>>()
+        .map((Map<dynamic, dynamic> m) =>
+            new CallRecord.fromMap(m.cast<String, Object>())));
+  }
+
+  static Map<String, Object?> _queryArguments(Int64? startDate,
+      Int64? duration, PhoneLogFilter? filter, Set<CallRecordField>? fields) {
+    return <String, Object?>{
+      'startDate': (filter?.startDate ?? startDate)?.toInt(),
+      'duration': (filter?.minDuration ?? duration)?.toInt(),
+      if (filter != null) ...filter._toArguments(),
+      if (fields != null)
+        'fields': fields
+            .map((CallRecordField field) => _fieldNames[field])
+            .toList(),
+    };
+  }
+
+  static const Map<CallRecordField, String> _fieldNames =
+      <CallRecordField, String>{
+    CallRecordField.formattedNumber: 'formattedNumber',
+    CallRecordField.number: 'number',
+    CallRecordField.normalizedNumber: 'normalizedNumber',
+    CallRecordField.callType: 'callType',
+    CallRecordField.date: 'date',
+    CallRecordField.duration: 'duration',
+  };
+
+  ///Syncs phone logs incrementally.
+  ///
+  ///Emits the records inserted or changed since [since], oldest change
+  ///first, in deltas of at most [batchSize] records; then keeps watching the
+  ///phone log and emits further changes as they happen. If [since] is null,
+  ///the first deltas hold the whole phone log. Each record has its
+  ///[CallRecord.id] set, so that changed records can replace earlier ones.
+  ///
+  ///Store the [PhoneLogDelta.syncToken] of the last delta handled to resume
+  ///syncing from there later. Before Android N, only inserted records are
+  ///synced. [rawDates] is as for [getPhoneLogsPage]. Only one sync may be
+  ///listened to at a time; cancel the subscription to stop watching.
+  Stream<PhoneLogDelta> syncPhoneLogs(
+      {PhoneLogSyncToken? since, int batchSize = 500, bool rawDates = false}) {
+    return syncChannel.receiveBroadcastStream(<String, Object?>{
+      'afterId': since?.afterId,
+      'afterLastModified': since?.afterLastModified,
+      'batchSize': batchSize,
+      'rawDates': rawDates,
+    }).map((dynamic delta) =>
+        new PhoneLogDelta._fromMap(delta as Map<dynamic, dynamic>));
+  }
+
+  ///Brings the local mirror of the phone log up to date.
+  ///
+  ///The mirror is a copy of the phone log in a local database, indexed for
+  ///the aggregate queries [getTopNumbers], [getCallTotals] and
+  ///[getCallHistogram], so that only their small results are fetched. It is
+  ///created on first use, and brought up to date incrementally before each
+  ///aggregate query. Returns the number of records copied or deleted.
+  Future<int> syncPhoneLogMirror() async {
+    return await channel.invokeMethod<int>('syncPhoneLogMirror') ?? 0;
+  }
+
+  ///Deletes the local mirror of the phone log.
+  Future<void> deletePhoneLogMirror() async {
+    await channel.invokeMethod<bool>('deletePhoneLogMirror');
+  }
+
+  ///Fetches the [limit] numbers called most often, or the longest if
+  ///[byDuration], between [startDate] and [endDate].
+  ///
+  ///Numbers are grouped by their normalized form. The dates are in
+  ///milliseconds since the epoch.
+  Future<List<NumberCallStats>> getTopNumbers(
+      {int limit = 10,
+      bool byDuration = false,
+      Int64? startDate,
+      Int64? endDate}) async {
+    final List<dynamic>? numbers = await channel
+        .invokeMethod<List<dynamic>>('getTopNumbers', <String, Object?>{
+      'limit': limit,
+      'byDuration': byDuration,
+      'startDate': startDate?.toInt(),
+      'endDate': endDate?.toInt(),
+    });
+    return (numbers ?? <dynamic>[])
+        .cast<Map<dynamic, dynamic>>()
+        .map((Map<dynamic, dynamic> m) => new NumberCallStats._fromMap(m))
+        .toList();
+  }
+
+  ///Fetches the call count and total duration of each call type, keyed by
+  ///Android's `CallLog.Calls` type constants, between [startDate] and
+  ///[endDate].
+  Future<Map<int, CallStats>> getCallTotals(
+      {Int64? startDate, Int64? endDate}) async {
+    final Map<dynamic, dynamic>? totals = await channel
+        .invokeMethod<Map<dynamic, dynamic>>('getCallTotals', <String, int?>{
+      'startDate': startDate?.toInt(),
+      'endDate': endDate?.toInt(),
+    });
+    final Int32List types = totals?['types'] as Int32List? ?? new Int32List(0);
+    final Int64List counts =
+        totals?['counts'] as Int64List? ?? new Int64List(0);
+    final Int64List durations =
+        totals?['durations'] as Int64List? ?? new Int64List(0);
+    return <int, CallStats>{
+      for (int i = 0; i < types.length; i++)
+        types[i]: new CallStats._(counts[i], durations[i]),
+    };
+  }
+
+  ///Fetches the call count and total duration per day, or per hour if
+  ///[hourly], in local time, between [startDate] and [endDate].
+  ///
+  ///Days or hours without calls are left out.
+  Future<List<CallHistogramBucket>> getCallHistogram(
+      {bool hourly = false, Int64? startDate, Int64? endDate}) async {
+    final Map<dynamic, dynamic>? histogram = await channel.invokeMethod<
+        Map<dynamic, dynamic>>('getCallHistogram', <String, Object?>{
+      'hourly': hourly,
+      'startDate': startDate?.toInt(),
+      'endDate': endDate?.toInt(),
+    });
+    final Int64List starts =
+        histogram?['bucketStarts'] as Int64List? ?? new Int64List(0);
+    final Int64List counts =
+        histogram?['counts'] as Int64List? ?? new Int64List(0);
+    final Int64List durations =
+        histogram?['durations'] as Int64List? ?? new Int64List(0);
+    return <CallHistogramBucket>[
+      for (int i = 0; i < starts.length; i++)
+        new CallHistogramBucket._(
+            new DateTime.fromMillisecondsSinceEpoch(starts[i]),
+            counts[i],
+            durations[i]),
+    ];
+  }
+}
+
+/// The number and total duration of a set of calls.
+class CallStats {
+  CallStats._(this.count, this.totalDuration);
+
+  final int count;
+
+  /// In seconds.
+  final int totalDuration;
+}
+
+/// The calls with one number, as fetched by [PhoneLog.getTopNumbers].
+class NumberCallStats extends CallStats {
+  NumberCallStats._fromMap(Map<dynamic, dynamic> m)
+      : number = m['number'] as String,
+        lastDate = m['lastDate'] as int,
+        super._(m['count'] as int, m['totalDuration'] as int);
+
+  /// The normalized number.
+  final String number;
+
+  /// The date of the latest call, in milliseconds since the epoch.
+  final int lastDate;
+}
+
+/// The calls of one hour or day, as fetched by [PhoneLog.getCallHistogram].
+class CallHistogramBucket extends CallStats {
+  CallHistogramBucket._(this.start, int count, int totalDuration)
+      : super._(count, totalDuration);
+
+  final DateTime start;
+}
+
+/// The records inserted or changed in the phone log since a sync token, as
+/// emitted by [PhoneLog.syncPhoneLogs].
+class PhoneLogDelta {
+  PhoneLogDelta._fromMap(Map<dynamic, dynamic> m)
+      : records = (m['records'] as List<dynamic>)
+            .cast<Map<dynamic, dynamic>>()
+            .map((Map<dynamic, dynamic> r) =>
+                new CallRecord.fromMap(r.cast<String, Object>()))
+            .toList(),
+        syncToken = new PhoneLogSyncToken(
+            afterId: m['afterId'] as int,
+            afterLastModified: m['afterLastModified'] as int?);
+
+  final List<CallRecord> records;
+
+  /// The token to resume syncing after this delta.
+  final PhoneLogSyncToken syncToken;
+}
+
+/// Marks how far the phone log has been synced.
+///
+/// This is the id and modification time of the last record synced, which
+/// may be stored to resume syncing later.
+class PhoneLogSyncToken {
+  const PhoneLogSyncToken({required this.afterId, this.afterLastModified});
+
+  final int afterId;
+
+  /// Null before Android N, which does not record modification times.
+  final int? afterLastModified;
+}
+
+/// The types of calls, as Android's `CallLog.Calls` type constants.
+class CallType {
+  static const int incoming = 1;
+  static const int outgoing = 2;
+  static const int missed = 3;
+  static const int voicemail = 4;
+  static const int rejected = 5;
+  static const int blocked = 6;
+}
+
+/// The fields phone logs may be sorted by.
+enum PhoneLogSortField { date, duration }
+
+/// The fields of a [CallRecord] which may be fetched.
+///
+/// [date] stands for [CallRecord.date] and the calendar fields alike.
+enum CallRecordField {
+  formattedNumber,
+  number,
+  normalizedNumber,
+  callType,
+  date,
+  duration,
+}
+
+/// Which phone logs to fetch, and in which order.
+///
+/// The filter is applied by the phone log provider, so that only matching
+/// records are read and sent. All bounds are exclusive.
+class PhoneLogFilter {
+  const PhoneLogFilter({
+    this.callTypes,
+    this.startDate,
+    this.endDate,
+    this.minDuration,
+    this.maxDuration,
+    this.number,
+    this.numberPrefix = false,
+    this.sortBy = PhoneLogSortField.date,
+    this.ascending = false,
+  });
+
+  /// Only calls of these [CallType]s, if set.
+  final Set<int>? callTypes;
+
+  /// Only calls after this date, in milliseconds since the epoch.
+  final Int64? startDate;
+
+  /// Only calls before this date, in milliseconds since the epoch.
+  final Int64? endDate;
+
+  /// Only calls longer than this, in seconds.
+  final Int64? minDuration;
+
+  /// Only calls shorter than this, in seconds.
+  final Int64? maxDuration;
+
+  /// Only calls with this number as dialed or received, or starting with it
+  /// if [numberPrefix].
+  final String? number;
+
+  final bool numberPrefix;
+
+  /// The field to sort by, from the largest value down unless [ascending].
+  final PhoneLogSortField sortBy;
+
+  final bool ascending;
+
+  Map<String, Object?> _toArguments() => <String, Object?>{
+        'endDate': endDate?.toInt(),
+        'maxDuration': maxDuration?.toInt(),
+        'types': callTypes?.toList(),
+        'number': number,
+        'numberPrefix': numberPrefix,
+        'sortBy': sortBy == PhoneLogSortField.duration ? 'duration' : 'date',
+        'ascending': ascending,
+      };
+}
+
+/// Cancels the phone log requests it is passed to.
+class PhoneLogCancellationToken {
+  PhoneLogCancellationToken() : _requestId = _nextRequestId++;
+
+  static int _nextRequestId = 0;
+
+  final int _requestId;
+  bool _isCancelled = false;
+
+  bool get isCancelled => _isCancelled;
+
+  /// Cancels the request which is running with this token, and any later
+  /// request passed this token.
+  Future<void> cancel() async {
+    _isCancelled = true;
+    await channel.invokeMethod<void>(
+        'cancelPhoneLogs', <String, int>{'requestId': _requestId});
+  }
+
+  void _checkNotCancelled() {
+    if (_isCancelled) {
+      throw new PlatformException(
+          code: 'cancelled', message: 'Cancelled by cancelPhoneLogs.');
+    }
+  }
+}
+
+/// One page of phone logs, as fetched by [PhoneLog.getPhoneLogsPage].
+class PhoneLogPage {
+  PhoneLogPage._(this.records, this.nextPageToken);
+
+  final List<CallRecord> records;
+
+  /// The token to fetch the following page with, or null if this is the last
+  /// page.
+  final PhoneLogPageToken? nextPageToken;
+}
+
+/// Marks the position of a page within the phone log.
+///
+/// The token holds the sort key (date or duration) and id of the last record
+/// of a page, so that the following page starts right after it even if calls
+/// are logged meanwhile.
+class PhoneLogPageToken {
+  const PhoneLogPageToken._(this._pageKey, this._pageId);
+
+  static PhoneLogPageToken? _fromMap(Map<dynamic, dynamic>? page) {
+    final int? nextPageKey = page?['nextPageKey'] as int?;
+    final int? nextPageId = page?['nextPageId'] as int?;
+    return nextPageKey == null || nextPageId == null
+        ? null
+        : new PhoneLogPageToken._(nextPageKey, nextPageId);
+  }
+
+  final int _pageKey;
+  final int _pageId;
 }
 
 final permissionMap = <String, PermissionStatus>{
@@ -60,9 +506,12 @@ final permissionMap = <String, PermissionStatus>{
 /// The class that carries all the data for one call history entry.
 class CallRecord {
   CallRecord({
+    this.id,
     this.formattedNumber,
     this.number,
+    this.normalizedNumber,
     this.callType,
+    this.date,
     this.dateYear,
     this.dateMonth,
     this.dateDay,
@@ -73,9 +522,12 @@ class CallRecord {
   });
 
   CallRecord.fromMap(Map<String, Object> m) {
+    id = m['id'] as int?;
     formattedNumber = m['formattedNumber'] as String?;
     number = m['number'] as String?;
+    normalizedNumber = m['normalizedNumber'] as String?;
     callType = m['callType'] as String?;
+    date = m['date'] as int?;
     dateYear = m['dateYear'] as int?;
     dateMonth = m['dateMonth'] as int?;
     dateDay = m['dateDay'] as int?;
@@ -85,6 +537,120 @@ class CallRecord {
     duration = m['duration'] as int?;
   }
 
+  /// The id of the call in the phone log, only set by [PhoneLog.syncPhoneLogs].
+  int? id;
+
   String? formattedNumber, number, callType;
+
+  /// The number in a canonical form, E.164 where it is valid for the country
+  /// of the device, so that calls from the same number may be grouped.
+  String? normalizedNumber;
+
+  /// The date of the call in milliseconds since the epoch.
+  ///
+  /// This is only set if the record was fetched with raw dates, or from
+  /// [CallRecordColumns]; otherwise the date is given by the calendar fields,
+  /// in local time and with months counted from 0.
+  int? date;
+
   int? dateYear, dateMonth, dateDay, dateHour, dateMinute, dateSecond, duration;
 }
+
+/// Call records stored column by column, as fetched by
+/// [PhoneLog.getPhoneLogColumns].
+///
+/// Dates, durations and types are typed data, and each distinct number is
+/// stored once in [numbers] and referenced from [numberIndexes], with -1
+/// standing for no number.
+class CallRecordColumns {
+  CallRecordColumns._fromMap(Map<dynamic, dynamic> m)
+      : dates = m['dates'] as Int64List? ?? new Int64List(0),
+        durations = m['durations'] as Int64List? ?? new Int64List(0),
+        types = m['types'] as Int32List? ?? new Int32List(0),
+        numbers = (m['numbers'] as List<dynamic>? ?? <dynamic>[])
+            .cast<String>(),
+        numberIndexes = m['numberIndexes'] as Int32List? ?? new Int32List(0),
+        normalizedNumbers =
+            (m['normalizedNumbers'] as List<dynamic>? ?? <dynamic>[])
+                .cast<String>(),
+        normalizedNumberIndexes =
+            m['normalizedNumberIndexes'] as Int32List? ?? new Int32List(0),
+        formattedNumbers =
+            (m['formattedNumbers'] as List<dynamic>? ?? <dynamic>[])
+                .cast<String>(),
+        formattedNumberIndexes =
+            m['formattedNumberIndexes'] as Int32List? ?? new Int32List(0),
+        length = m['size'] as int? ?? (m['dates'] as Int64List?)?.length ?? 0,
+        nextPageToken = PhoneLogPageToken._fromMap(m);
+
+  /// The dates of the calls, in milliseconds since the epoch.
+  final Int64List dates;
+
+  /// The durations of the calls, in seconds.
+  final Int64List durations;
+
+  /// The types of the calls, as Android's `CallLog.Calls` type constants.
+  final Int32List types;
+
+  final List<String> numbers;
+  final Int32List numberIndexes;
+  final List<String> normalizedNumbers;
+  final Int32List normalizedNumberIndexes;
+  final List<String> formattedNumbers;
+  final Int32List formattedNumberIndexes;
+
+  /// The token to fetch the following page with, or null if this is the last
+  /// page or the records were not fetched by page.
+  final PhoneLogPageToken? nextPageToken;
+
+  /// The number of calls.
+  final int length;
+
+  String? numberAt(int index) => _lookUp(numbers, numberIndexes, index);
+
+  String? normalizedNumberAt(int index) =>
+      _lookUp(normalizedNumbers, normalizedNumberIndexes, index);
+
+  String? formattedNumberAt(int index) =>
+      _lookUp(formattedNumbers, formattedNumberIndexes, index);
+
+  String? callTypeAt(int index) =>
+      types.isEmpty ? null : _callTypes[types[index]];
+
+  /// Builds the [CallRecord] of one call, with its date in local time.
+  ///
+  /// Fields which were not fetched are null.
+  CallRecord operator [](int index) {
+    final DateTime? date = dates.isEmpty
+        ? null
+        : new DateTime.fromMillisecondsSinceEpoch(dates[index]);
+    return new CallRecord(
+      formattedNumber: formattedNumberAt(index),
+      number: numberAt(index),
+      normalizedNumber: normalizedNumberAt(index),
+      callType: callTypeAt(index),
+      date: date?.millisecondsSinceEpoch,
+      dateYear: date?.year,
+      // Months are counted from 0, as by the Java Calendar.
+      dateMonth: date == null ? null : date.month - 1,
+      dateDay: date?.day,
+      dateHour: date?.hour,
+      dateMinute: date?.minute,
+      dateSecond: date?.second,
+      duration: durations.isEmpty ? null : durations[index],
+    );
+  }
+
+  static String? _lookUp(List<String> strings, Int32List indexes, int index) {
+    if (indexes.isEmpty || indexes[index] < 0) {
+      return null;
+    }
+    return strings[indexes[index]];
+  }
+
+  static const Map<int, String> _callTypes = <int, String>{
+    1: 'INCOMING_TYPE',
+    2: 'OUTGOING_TYPE',
+    3: 'MISSED_TYPE',
+  };
+}
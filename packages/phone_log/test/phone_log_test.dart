@@ -1,3 +1,6 @@
+import 'dart:async';
+import 'dart:typed_data';
+
 import 'package:fixnum/fixnum.dart';
 import 'package:flutter/services.dart';
 import 'package:flutter_test/flutter_test.dart';
@@ -84,6 +87,238 @@ void main() {
       }
     });
 
+    testWidgets('fetch phone log pages', (WidgetTester tester) async {
+      final List<dynamic> pageArguments = <dynamic>[];
+      channel.setMockMethodCallHandler((MethodCall call) async {
+        pageArguments.add(call.arguments);
+        if (pageArguments.length == 1) {
+          return <String, Object>{
+            'records': <Map<String, Object>>[
+              <String, Object>{'number': '1231231234', 'duration': 123},
+            ],
+            'nextPageKey': 1529032583000,
+            'nextPageId': 42,
+          };
+        }
+        return <String, Object>{'records': <Map<String, Object>>[]};
+      });
+
+      final PhoneLogPage firstPage = await phoneLog.getPhoneLogsPage(
+          startDate: new Int64(123456789), pageSize: 1);
+      expect(firstPage.records.single.number, '1231231234');
+      expect(firstPage.nextPageToken, isNotNull);
+      expect(pageArguments.last, <String, Object?>{
+        'startDate': 123456789,
+        'duration': null,
+        'limit': 1,
+        'pageKey': null,
+        'pageId': null,
+        'rawDates': false,
+        'requestId': null,
+      });
+
+      final PhoneLogPage secondPage = await phoneLog.getPhoneLogsPage(
+          filter: new PhoneLogFilter(
+              callTypes: <int>{CallType.missed},
+              endDate: new Int64(1529032583001),
+              number: '123',
+              numberPrefix: true,
+              sortBy: PhoneLogSortField.duration),
+          pageSize: 1,
+          pageToken: firstPage.nextPageToken,
+          rawDates: true);
+      expect(secondPage.records, isEmpty);
+      expect(secondPage.nextPageToken, isNull);
+      final Map<dynamic, dynamic> lastArguments =
+          pageArguments.last as Map<dynamic, dynamic>;
+      expect(lastArguments['pageKey'], 1529032583000);
+      expect(lastArguments['pageId'], 42);
+      expect(lastArguments['rawDates'], true);
+      expect(lastArguments['types'], <int>[CallType.missed]);
+      expect(lastArguments['endDate'], 1529032583001);
+      expect(lastArguments['number'], '123');
+      expect(lastArguments['numberPrefix'], true);
+      expect(lastArguments['sortBy'], 'duration');
+      expect(lastArguments['ascending'], false);
+    });
+
+    testWidgets('fetch phone log columns', (WidgetTester tester) async {
+      channel.setMockMethodCallHandler((MethodCall call) async {
+        invokedMethod = call.method;
+        return <String, Object>{
+          'dates': new Int64List.fromList(<int>[1529032583000, 1529032000000]),
+          'durations': new Int64List.fromList(<int>[123, 0]),
+          'types': new Int32List.fromList(<int>[1, 3]),
+          'numbers': <String>['1231231234'],
+          'numberIndexes': new Int32List.fromList(<int>[0, 0]),
+          'normalizedNumbers': <String>['+11231231234'],
+          'normalizedNumberIndexes': new Int32List.fromList(<int>[0, 0]),
+          'formattedNumbers': <String>['123 123 1234'],
+          'formattedNumberIndexes': new Int32List.fromList(<int>[0, -1]),
+        };
+      });
+
+      final CallRecordColumns columns = await phoneLog.getPhoneLogColumns();
+      expect(invokedMethod, 'getPhoneLogColumns');
+      expect(columns.length, 2);
+      expect(columns.nextPageToken, isNull);
+      expect(columns.numberAt(1), '1231231234');
+      expect(columns.normalizedNumberAt(1), '+11231231234');
+      expect(columns.formattedNumberAt(1), isNull);
+      expect(columns.callTypeAt(1), 'MISSED_TYPE');
+
+      final CallRecord record = columns[0];
+      final DateTime date =
+          new DateTime.fromMillisecondsSinceEpoch(1529032583000);
+      expect(record.formattedNumber, '123 123 1234');
+      expect(record.callType, 'INCOMING_TYPE');
+      expect(record.dateYear, date.year);
+      expect(record.date, 1529032583000);
+      expect(record.dateMonth, date.month - 1);
+      expect(record.duration, 123);
+    });
+
+    testWidgets('fetch selected phone log fields', (WidgetTester tester) async {
+      late Map<dynamic, dynamic> arguments;
+      channel.setMockMethodCallHandler((MethodCall call) async {
+        arguments = call.arguments as Map<dynamic, dynamic>;
+        return <String, Object>{
+          'size': 2,
+          'numbers': <String>['1231231234'],
+          'numberIndexes': new Int32List.fromList(<int>[0, -1]),
+        };
+      });
+
+      final CallRecordColumns columns = await phoneLog.getPhoneLogColumns(
+          fields: <CallRecordField>{CallRecordField.number});
+      expect(arguments['fields'], <String>['number']);
+      expect(columns.length, 2);
+      expect(columns.numberAt(0), '1231231234');
+      expect(columns.numberAt(1), isNull);
+      expect(columns.callTypeAt(0), isNull);
+
+      final CallRecord record = columns[0];
+      expect(record.number, '1231231234');
+      expect(record.formattedNumber, isNull);
+      expect(record.date, isNull);
+      expect(record.dateYear, isNull);
+      expect(record.duration, isNull);
+    });
+
+    testWidgets('cancel phone log request', (WidgetTester tester) async {
+      final List<MethodCall> calls = <MethodCall>[];
+      final Completer<void> cancelled = new Completer<void>();
+      channel.setMockMethodCallHandler((MethodCall call) async {
+        calls.add(call);
+        if (call.method == 'cancelPhoneLogs') {
+          cancelled.complete();
+        } else if (call.method == 'getPhoneLogsPage') {
+          await cancelled.future;
+          throw new PlatformException(code: 'cancelled');
+        }
+        return null;
+      });
+
+      final PhoneLogCancellationToken token = new PhoneLogCancellationToken();
+      final Future<PhoneLogPage> page =
+          phoneLog.getPhoneLogsPage(cancellationToken: token);
+      await token.cancel();
+      await expectLater(page, throwsA(isA<PlatformException>()));
+
+      final int requestId = calls.first.arguments['requestId'] as int;
+      expect(calls[1].method, 'cancelPhoneLogs');
+      expect(calls[1].arguments, <String, int>{'requestId': requestId});
+      expect(token.isCancelled, true);
+      await expectLater(phoneLog.getPhoneLogColumns(cancellationToken: token),
+          throwsA(isA<PlatformException>()));
+    });
+
+    testWidgets('sync phone logs', (WidgetTester tester) async {
+      const StandardMethodCodec codec = StandardMethodCodec();
+      dynamic listenArguments;
+      ServicesBinding.instance!.defaultBinaryMessenger
+          .setMockMessageHandler(syncChannel.name, (ByteData? message) async {
+        final MethodCall call = codec.decodeMethodCall(message);
+        if (call.method == 'listen') {
+          listenArguments = call.arguments;
+          await ServicesBinding.instance!.defaultBinaryMessenger
+              .handlePlatformMessage(
+                  syncChannel.name,
+                  codec.encodeSuccessEnvelope(<String, Object>{
+                    'records': <Map<String, Object>>[
+                      <String, Object>{'id': 7, 'number': '1231231234'},
+                    ],
+                    'afterId': 7,
+                    'afterLastModified': 1529032583000,
+                  }),
+                  (ByteData? reply) {});
+        }
+        return codec.encodeSuccessEnvelope(null);
+      });
+
+      final PhoneLogDelta delta = await phoneLog
+          .syncPhoneLogs(
+              since: const PhoneLogSyncToken(
+                  afterId: 3, afterLastModified: 1529032000000))
+          .first;
+      expect(listenArguments['afterId'], 3);
+      expect(listenArguments['afterLastModified'], 1529032000000);
+      expect(delta.records.single.id, 7);
+      expect(delta.records.single.number, '1231231234');
+      expect(delta.syncToken.afterId, 7);
+      expect(delta.syncToken.afterLastModified, 1529032583000);
+
+      ServicesBinding.instance!.defaultBinaryMessenger
+          .setMockMessageHandler(syncChannel.name, null);
+    });
+
+    testWidgets('query phone log mirror', (WidgetTester tester) async {
+      channel.setMockMethodCallHandler((MethodCall call) async {
+        switch (call.method) {
+          case 'getTopNumbers':
+            expect(call.arguments['limit'], 1);
+            return <Map<String, Object>>[
+              <String, Object>{
+                'number': '+11231231234',
+                'count': 3,
+                'totalDuration': 300,
+                'lastDate': 1529032583000,
+              },
+            ];
+          case 'getCallTotals':
+            return <String, Object>{
+              'types': new Int32List.fromList(<int>[1, 3]),
+              'counts': new Int64List.fromList(<int>[4, 2]),
+              'durations': new Int64List.fromList(<int>[400, 0]),
+            };
+          case 'getCallHistogram':
+            expect(call.arguments['hourly'], true);
+            return <String, Object>{
+              'bucketStarts': new Int64List.fromList(<int>[1529031600000]),
+              'counts': new Int64List.fromList(<int>[6]),
+              'durations': new Int64List.fromList(<int>[400]),
+            };
+        }
+        return null;
+      });
+
+      final List<NumberCallStats> topNumbers =
+          await phoneLog.getTopNumbers(limit: 1);
+      expect(topNumbers.single.number, '+11231231234');
+      expect(topNumbers.single.count, 3);
+      expect(topNumbers.single.totalDuration, 300);
+
+      final Map<int, CallStats> totals = await phoneLog.getCallTotals();
+      expect(totals[1]!.count, 4);
+      expect(totals[3]!.totalDuration, 0);
+
+      final List<CallHistogramBucket> histogram =
+          await phoneLog.getCallHistogram(hourly: true);
+      expect(histogram.single.start,
+          new DateTime.fromMillisecondsSinceEpoch(1529031600000));
+      expect(histogram.single.count, 6);
+    });
+
     testWidgets('check permission', (WidgetTester tester) async {
       channel.setMockMethodCallHandler(mockChannel);
 